@@ -7,6 +7,7 @@ import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 
 import mainEditor.GIFInputOutput.GIFDefaultMetadata;
+import mainEditor.frameStore.CompositeFrameSource;
 import mainEditor.history.ImageHistory;
 
 /**
@@ -36,6 +37,8 @@ public class AnimationDisplayHelper {
 	 * (drawing over other frames), this function will first plot an independent ith frame using an 
 	 * "active" method, and then apply changes to that ith frame.
 	 * The active method consists of drawing frames 0 to i in quick succession onto one buffered image.
+	 * The independent frames are only drawn when they are first needed (see {@link CompositeFrameSource}),
+	 * unless the frame has changes to apply.
 	 * Returns an array with the changes applied to all frames.
 	 * 
 	 * This is needed if one wants to apply filters/resizings to a GIF on a frame-to-frame basis, 
@@ -57,6 +60,36 @@ public class AnimationDisplayHelper {
 	public static ArrayList<ImageFrameData> baseLineFlatten(ArrayList<ImageFrameData> imageData,
 															ArrayList<ImageFrameData> changedImageData,
 															String disposalMethod, boolean isAdd) {
+		ImagePool.Lease lease = ImagePool.getDefault().lease();
+		try {
+			return baseLineFlatten(imageData, changedImageData, disposalMethod, isAdd, lease);
+		}
+		finally {
+			lease.close();
+		}
+	}
+	
+	/**
+	 * Applies changes in each frame's history to a copy of the base frame image, as
+	 * {@link #baseLineFlatten(ArrayList, ArrayList, String, boolean)} does, giving the images that
+	 * later changes replace back to the image pool. The images the returned frames hold, if made
+	 * by the flatten, are left recorded by the lease, so the caller can give them back once it
+	 * no longer needs them (say, once their pixels are stored elsewhere).
+	 * 
+	 * @param imageData The original image frame data in an array list, which also contains the 
+	 * 				history of changes of each frame.
+	 * @param changedImageData The changed image frame data in an array list.
+	 * @param disposalMethod The disposal method of frames in the animation.
+	 * @param isAdd Notes if the change was a simply addition, (so we do less work),
+	 * 				or if it was a retraction (all histories in each frame must be applied to itself).
+	 * @param lease The lease recording the images made for the frames.
+	 * 
+	 * @return The array list of final frames after all frames are rendered.
+	 */
+	public static ArrayList<ImageFrameData> baseLineFlatten(ArrayList<ImageFrameData> imageData,
+															ArrayList<ImageFrameData> changedImageData,
+															String disposalMethod, boolean isAdd,
+															ImagePool.Lease lease) {
 	
 		//obtains the frame drawing setting for the given disposal method
 		FrameDrawSetting fds = disposalType(disposalMethod);
@@ -86,16 +119,22 @@ public class AnimationDisplayHelper {
 		int width = (int)dimens.getWidth();
 		int height = (int)dimens.getHeight();
 		
+		// the source of independent frames, for disposal methods that have frames lying on top of each other
+		CompositeFrameSource independentFrames = null;
+		if (fds == FrameDrawSetting.IGNORE) {
+			independentFrames = new CompositeFrameSource(renderData);
+		}
+		
 		// iterates over all frames in the image frame data
 		for(int i=0; i<len; i++) {
 			frameTracked = renderData.get(i);
-			baseFrame = frameTracked.noHistoryDeepCopy();
+			baseFrame = frameTracked.noHistoryCopy();	// shares the image, which is copied only by a change that draws on it
 			
 			//**** first point where the disposal method matters ****//
 			switch (fds) {
 				case IGNORE:
 					// apply all the historical record changes to the independent ith frame
-					baseFrame.setImage(getIndependentFrame(renderData, fds, i));
+					baseFrame.setFrameSource(independentFrames, i);
 					break;
 				case OVERWRITE: // default case is lumped with when overwrite is true
 				default:		// do not do anything (base frame needs no change)
@@ -107,7 +146,7 @@ public class AnimationDisplayHelper {
 				// get current history and apply its recorded change
 				// to the image frame data copy
 				imgHist = imageData.get(i).getCurrHistory();
-				baseFrame = imgHist.apply(baseFrame);
+				baseFrame = applyLeased(imgHist, baseFrame, lease);
 			}
 			else { //if the change isn't an addition
 				// get first history (recorded change is applied later)
@@ -117,7 +156,7 @@ public class AnimationDisplayHelper {
 			while(imgHist.hasNext()) { // while there are still historical records
 				imgHist = ImageFrameData.castToImageHistory(imgHist.next());
 				if (!imgHist.isEmpty()) {
-					baseFrame = imgHist.apply(baseFrame);		// applies historical record
+					baseFrame = applyLeased(imgHist, baseFrame, lease);		// applies historical record
 					//System.err.print(i +" ");
 				}
 			}
@@ -148,6 +187,22 @@ public class AnimationDisplayHelper {
 		return finalFrames;		// returns processed array list of frames
 	}
 
+	/**
+	 * Applies a historical record to a frame. An image made by the record is recorded by the lease,
+	 * and the image it replaces is given back to the pool, if the lease recorded it (that is, if an
+	 * earlier record made it during the same flatten, so nothing else holds it).
+	 */
+	private static ImageFrameData applyLeased(ImageHistory imgHist, ImageFrameData frame, ImagePool.Lease lease) {
+		BufferedImage before = frame.isLazy() ? null : frame.getImage();
+		ImageFrameData applied = imgHist.apply(frame);
+		BufferedImage after = applied.isLazy() ? null : applied.getImage();
+		if (after != before) {
+			lease.release(before);
+			lease.add(after);
+		}
+		return applied;
+	}
+
 	/**
 	 * Applies changes in each frame's history to a copy of the base frame image, depending
 	 * on whether the change was an addition or a retraction.
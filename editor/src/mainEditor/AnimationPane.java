@@ -11,6 +11,7 @@ import java.util.Observable;
 import java.util.Observer;
 
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 
 import mainEditor.observerObject.ObservedState;
@@ -210,12 +211,24 @@ public class AnimationPane extends JPanel implements Observer, ActionListener{
      * Receives notification when a portion of the image has been changed.
      */
 	@Override
-	public void update(Observable o, Object arg) {
+	public void update(final Observable o, final Object arg) {
 		if (arg instanceof ObserverNotice) {
 			ObserverNotice obsInfo = (ObserverNotice) arg;
 			ObservedState os = obsInfo.getObservedState();
 			Window win = obsInfo.getActiveWindow();
 			
+			// opens run in the background, but the pane is only ever touched on the event dispatch thread
+			boolean handled = os == ObservedState.OPEN || os == ObservedState.CHANGED_ADD || os == ObservedState.CHANGED_UNDO;
+			if (handled && !SwingUtilities.isEventDispatchThread()) {
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						update(o, arg);
+					}
+				});
+				return;
+			}
+			
 			// finds out what needs to be updated based on the observed state
 			switch (os) {
 			case OPEN:
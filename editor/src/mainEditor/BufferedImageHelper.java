@@ -3,11 +3,16 @@ package mainEditor;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
 import java.awt.image.WritableRaster;
 
 /**
  * A helper class that contains some operations on buffered images.
  * <p>
+ * New images and copies are made from the default {@link ImagePool}, so they may reuse the raster
+ * of an image given back to it.
+ * <p>
  * Copyright 2017-2018 Joey Sun.<p>
  *  This work is licensed under the Creative Commons Attribution 3.0 Unported
  *  License. To view a copy of this license, visit
@@ -28,7 +33,7 @@ public final class BufferedImageHelper {
 	 * @return A clean buffered image with the same dimensions and type as given image.
 	 */
 	public static BufferedImage getNewImage(BufferedImage img) {
-		return new BufferedImage(img.getWidth(), img.getHeight(), img.getType());
+		return getNewImage(img.getWidth(), img.getHeight(), img.getType());
 	}
 	
 	/**
@@ -39,7 +44,7 @@ public final class BufferedImageHelper {
 	 * @return A clean buffered image with the same dimensions and type as given image.
 	 */
 	public static BufferedImage getNewImage(int width, int height, int imgType) {
-		return new BufferedImage(width, height, imgType);
+		return ImagePool.getDefault().acquire(width, height, imgType, true);
 	}
 	
     //================================================================================
@@ -51,7 +56,7 @@ public final class BufferedImageHelper {
 	 * @return A clean buffered image with the same dimensions and type as given image.
 	 */
 	public static BufferedImage getNewImageRGB(BufferedImage img) {
-		return new BufferedImage(img.getWidth(), img.getHeight(), RGB);
+		return getNewImage(img.getWidth(), img.getHeight(), RGB);
 	}	
 	
 	/**
@@ -60,7 +65,7 @@ public final class BufferedImageHelper {
 	 * @return A clean buffered image with the same dimensions and type as given image.
 	 */
 	public static BufferedImage getNewImageARGB(BufferedImage img) {
-		return new BufferedImage(img.getWidth(), img.getHeight(), ARGB);
+		return getNewImage(img.getWidth(), img.getHeight(), ARGB);
 	}
 	
 	/**
@@ -70,7 +75,7 @@ public final class BufferedImageHelper {
 	 * @return A clean buffered image with the same dimensions and type as given image.
 	 */
 	public static BufferedImage getNewImageARGB(int width, int height) {
-		return new BufferedImage(width, height, ARGB);
+		return getNewImage(width, height, ARGB);
 	}
 	
 	
@@ -84,6 +89,13 @@ public final class BufferedImageHelper {
 	 * @see also https://stackoverflow.com/questions/3514158/how-do-you-clone-a-bufferedimage
 	 */
 	public static BufferedImage deepCopy(BufferedImage img) {
+		 int type = img.getType();
+		 if (type != BufferedImage.TYPE_CUSTOM && !(img.getColorModel() instanceof IndexColorModel)) {
+			 // an image of a predefined type has the same color model and raster layout as any other of the type
+			 BufferedImage image = ImagePool.getDefault().acquire(img.getWidth(), img.getHeight(), type, false);
+			 img.copyData(image.getRaster());
+			 return image;
+		 }
 		 ColorModel cm = img.getColorModel();
 		 boolean isAlphaPremultiplied = cm.isAlphaPremultiplied();
 		 WritableRaster raster = img.copyData(null);
@@ -97,7 +109,7 @@ public final class BufferedImageHelper {
 	 * @see also https://stackoverflow.com/questions/3514158/how-do-you-clone-a-bufferedimage
 	 */
 	public static BufferedImage deepCopyARGB(BufferedImage img) {
-		BufferedImage image = new BufferedImage(img.getWidth(), img.getHeight(), ARGB);
+		BufferedImage image = getNewImageARGB(img);
 		
 		Graphics g = image.getGraphics();
 		g.drawImage(img, 0, 0, null);
@@ -106,6 +118,18 @@ public final class BufferedImageHelper {
 		return image;
 	}
 	
+	/**
+	 * Returns a deep copy of a buffered image that can be drawn on without losing colors:
+	 * indexed images are copied into the ARGB color model, and other images keep their own.
+	 * @return A deep copy of a buffered image, in true color.
+	 */
+	public static BufferedImage deepCopyTrueColor(BufferedImage img) {
+		if (img.getColorModel() instanceof IndexColorModel) {
+			return deepCopyARGB(img);
+		}
+		return deepCopy(img);
+	}
+	
 	/**
 	 * Returns a deep copy of a buffered image with RGB color model.
 	 * @return A deep copy of a buffered image with RGB color model.
@@ -113,7 +137,7 @@ public final class BufferedImageHelper {
 	 * @see also https://stackoverflow.com/questions/3514158/how-do-you-clone-a-bufferedimage
 	 */
 	public static BufferedImage deepCopyRGB(BufferedImage img) {
-		BufferedImage image = new BufferedImage(img.getWidth(), img.getHeight(), RGB);
+		BufferedImage image = ImagePool.getDefault().acquire(img.getWidth(), img.getHeight(), RGB, false);	// filled below
 		
 		Graphics g = image.getGraphics();
 		g.fillRect(0, 0, image.getWidth(), image.getHeight());
@@ -122,4 +146,17 @@ public final class BufferedImageHelper {
 		
 		return image;
 	}
+	
+    //================================================================================
+    // Region: Size of Images
+    //================================================================================
+	/**
+	 * Returns the number of bytes the pixels of a buffered image take up.
+	 * @param img The buffered image.
+	 * @return The bytes of every bank of the image's data buffer.
+	 */
+	public static long getByteSize(BufferedImage img) {
+		DataBuffer db = img.getRaster().getDataBuffer();
+		return (long) db.getSize() * db.getNumBanks() * DataBuffer.getDataTypeSize(db.getDataType()) / 8;
+	}
 }
@@ -0,0 +1,237 @@
+package mainEditor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An input stream of bytes that are written, as they are read, by a producer on a thread of its own.
+ * The producer writes into a bounded pipe of fixed size chunks, and blocks while the pipe is full,
+ * so no more than a few chunks are ever held however many bytes are produced.
+ * <p>
+ * If the producer fails, the reader gets its exception once it has read every byte written before
+ * the failure, rather than a normal end of stream. Closing the stream early stops the producer at
+ * its next write.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+class ContentsInputStream extends InputStream {
+	private static final int CHUNK_SIZE = 1 << 16;	// the bytes in a full chunk
+	private static final int MAX_CHUNKS = 4;		// the chunks the pipe holds before the producer waits
+	private static final long POLL_MILLIS = 50;		// how often a waiting producer checks if the stream was closed
+	private static final byte[] END = new byte[0];	// put in the pipe after the last chunk
+
+	/**
+	 * Writes the bytes read from the stream.
+	 */
+	interface Producer {
+		/**
+		 * Writes every byte of the stream, on the producer thread.
+		 * @param out Where to write the bytes, which needn't be closed.
+		 * @throws IOException if the bytes can't be produced, or the stream was closed.
+		 */
+		void writeTo(OutputStream out) throws IOException;
+	}
+
+	private final ArrayBlockingQueue<byte[]> pipe = new ArrayBlockingQueue<byte[]>(MAX_CHUNKS);	// chunks written and not yet read
+	private final ConcurrentLinkedQueue<byte[]> spareChunks = new ConcurrentLinkedQueue<byte[]>();	// read chunks to write into again
+	private volatile boolean closed;		// whether the reader closed the stream
+	private volatile IOException failure;	// why the producer stopped early, or null
+	private byte[] chunk;					// the chunk being read (null before the first)
+	private int position;					// the next byte of the chunk to read
+	private boolean ended;					// whether the last chunk has been read
+
+	/**
+	 * Constructs a stream, and starts its producer.
+	 * @param producer The producer of the bytes of the stream.
+	 * @param name The name of the producer thread.
+	 */
+	ContentsInputStream(final Producer producer, String name) {
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				produce(producer);
+			}
+		}, name);
+		t.setDaemon(true);
+		t.start();
+	}
+
+	//================================================================================
+	// Region: Producer
+	//================================================================================
+	/**
+	 * Runs the producer, then marks the end of the stream.
+	 */
+	private void produce(Producer producer) {
+		try {
+			PipeOutputStream out = new PipeOutputStream();
+			producer.writeTo(out);
+			out.finish();
+		}
+		catch (IOException e) {
+			this.failure = e;
+		}
+		catch (RuntimeException e) {
+			this.failure = new IOException(e.getLocalizedMessage(), e);
+		}
+		try {
+			put(END);
+		}
+		catch (InterruptedIOException e) { // closed, so nobody is left to see the end
+		}
+	}
+
+	/**
+	 * Puts a chunk in the pipe, waiting while it is full.
+	 * @throws InterruptedIOException if the stream was closed.
+	 */
+	private void put(byte[] c) throws InterruptedIOException {
+		try {
+			while (!this.pipe.offer(c, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+				if (this.closed) {
+					throw new InterruptedIOException("The stream was closed.");
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted while writing to the stream.");
+		}
+		if (this.closed) { // the reader has gone, so the chunk is never read
+			this.pipe.clear();
+			throw new InterruptedIOException("The stream was closed.");
+		}
+	}
+
+	/**
+	 * Gathers written bytes into chunks, putting each chunk in the pipe when it is full.
+	 */
+	private class PipeOutputStream extends OutputStream {
+		private byte[] buffer = newChunk();	// the chunk being filled
+		private int count;					// the bytes in it
+
+		@Override
+		public void write(int b) throws IOException {
+			if (this.count == CHUNK_SIZE) {
+				send();
+			}
+			this.buffer[this.count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (this.count == CHUNK_SIZE) {
+					send();
+				}
+				int n = Math.min(len, CHUNK_SIZE - this.count);
+				System.arraycopy(b, off, this.buffer, this.count, n);
+				this.count += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		/**
+		 * Puts the last, partly filled chunk in the pipe.
+		 */
+		void finish() throws IOException {
+			if (this.count > 0) {
+				put(Arrays.copyOf(this.buffer, this.count));
+				this.count = 0;
+			}
+		}
+
+		private void send() throws IOException {
+			put(this.buffer);
+			this.buffer = newChunk();
+			this.count = 0;
+		}
+
+		private byte[] newChunk() {
+			byte[] c = spareChunks.poll();
+			return c != null ? c : new byte[CHUNK_SIZE];
+		}
+	}
+
+	//================================================================================
+	// Region: Reader
+	//================================================================================
+	@Override
+	public int read() throws IOException {
+		if (!nextChunk()) {
+			return -1;
+		}
+		return this.chunk[this.position++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!nextChunk()) {
+			return -1;
+		}
+		int n = Math.min(len, this.chunk.length - this.position);
+		System.arraycopy(this.chunk, this.position, b, off, n);
+		this.position += n;
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return this.chunk == null ? 0 : this.chunk.length - this.position;
+	}
+
+	@Override
+	public void close() {
+		this.closed = true;
+		this.pipe.clear();
+		this.chunk = null;
+		this.ended = true;
+	}
+
+	/**
+	 * Makes sure there is a byte left in the chunk being read, waiting for the producer if needed.
+	 * @return False at the end of the stream.
+	 * @throws IOException if the producer failed, or the stream was closed.
+	 */
+	private boolean nextChunk() throws IOException {
+		if (this.closed) {
+			throw new IOException("The stream is closed.");
+		}
+		while (!this.ended && (this.chunk == null || this.position == this.chunk.length)) {
+			if (this.chunk != null && this.chunk.length == CHUNK_SIZE) {
+				this.spareChunks.add(this.chunk);
+			}
+			try {
+				this.chunk = this.pipe.take();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while reading the stream.");
+			}
+			this.position = 0;
+			if (this.chunk == END) {
+				this.ended = true;
+			}
+		}
+		if (this.ended) {
+			if (this.failure != null) {
+				throw new IOException("Could not produce the stream: " + this.failure.getLocalizedMessage(), this.failure);
+			}
+			return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,66 @@
+package mainEditor.GIFInputOutput;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * An image input stream that reads straight from a byte buffer, such as a file mapped into memory.
+ * Unlike the streams made by {@link javax.imageio.ImageIO#createImageInputStream}, nothing is copied
+ * or cached: seeking just moves the position in the buffer.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class ByteBufferImageInputStream extends ImageInputStreamImpl {
+	private final ByteBuffer data;		// the bytes of the stream, from 0 to the limit
+
+	/**
+	 * Constructs an image input stream over the bytes of a buffer.
+	 * The buffer is not copied, and must not be changed while the stream is in use.
+	 * @param buffer The bytes of the stream, from the buffer's position to its limit.
+	 */
+	public ByteBufferImageInputStream(ByteBuffer buffer) {
+		this.data = buffer.slice();
+	}
+
+	@Override
+	public int read() throws IOException {
+		checkClosed();
+		this.bitOffset = 0;
+		if (this.streamPos >= this.data.limit()) {
+			return -1;
+		}
+		return this.data.get((int) this.streamPos++) & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		checkClosed();
+		if (off < 0 || len < 0 || off + len > b.length) {
+			throw new IndexOutOfBoundsException("Invalid range " + off + " to " + (off + len) + ".");
+		}
+		this.bitOffset = 0;
+		if (len == 0) {
+			return 0;
+		}
+		if (this.streamPos >= this.data.limit()) {
+			return -1;
+		}
+		int n = (int) Math.min(len, this.data.limit() - this.streamPos);
+		ByteBuffer d = this.data.duplicate();
+		d.position((int) this.streamPos);
+		d.get(b, off, n);
+		this.streamPos += n;
+		return n;
+	}
+
+	@Override
+	public long length() {
+		return this.data.limit();
+	}
+}
@@ -0,0 +1,360 @@
+package mainEditor.GIFInputOutput;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An index of the frames of a GIF file, built by walking its blocks once.
+ * For every frame it records where the frame is in the file, along with the metadata from its
+ * image descriptor and graphic control extension, in arrays of primitives. Metadata can then be
+ * looked up for any frame without parsing anything again.
+ * <p>
+ * An index can also be written out and read back (see {@link GIFIndexStore}), so that a file
+ * opened before doesn't need its blocks walked again.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class GIFBlockIndex {
+	public static final int NONE = -1;	// stands for a missing value (no graphic control extension, no local color table, ...)
+	private static final int FORMAT = 0x4D414831;	// marks a written index ("MAH1")
+
+	private int numFrames;					// the number of frames found
+	private int[] descriptorOffsets;		// the offset of each image descriptor (its image separator byte)
+	private int[] dataOffsets;				// the offset of each frame's LZW minimum code size byte
+	private int[] paletteOffsets;			// the offset of each local color table (NONE if none)
+	private short[] paletteSizes;			// the number of colors in each local color table (0 if none)
+	private int[] lefts, tops;				// the position of each frame
+	private int[] widths, heights;			// the size of each frame
+	private boolean[] interlaced;			// whether each frame is interlaced
+	private int[] delayTimes;				// the delay time of each frame in 1/100 s (NONE if no graphic control extension)
+	private byte[] disposalCodes;			// the disposal method code of each frame (NONE if no graphic control extension)
+	private short[] transparentIndices;		// the transparent index of each frame (NONE if none)
+
+	/**
+	 * Builds the index of a GIF file by walking its blocks, up to the trailer or the first
+	 * block that makes no sense. The buffer's position is moved past the blocks walked.
+	 * @param b The bytes of the GIF file (little endian), positioned after the logical screen
+	 * descriptor and global color table.
+	 */
+	public GIFBlockIndex(ByteBuffer b) {
+		allocate(16);
+
+		// the graphic control extension that applies to the next frame
+		int delayTime = NONE, disposalCode = NONE, transparentIndex = NONE;
+
+		while (b.hasRemaining()) {
+			int blockStart = b.position();
+			int introducer = b.get() & 0xff;
+
+			if (introducer == GIFDecoder.EXTENSION_INTRODUCER) {
+				if (!b.hasRemaining()) {
+					break;
+				}
+				int label = b.get() & 0xff;
+				if (label == GIFDecoder.GRAPHIC_CONTROL_LABEL && b.remaining() >= 6) {
+					int blockSize = b.get() & 0xff;
+					int next = b.position() + blockSize;
+					int packed = b.get() & 0xff;
+					delayTime = b.getShort() & 0xffff;
+					int index = b.get() & 0xff;
+					disposalCode = (packed >> 2) & 0x07;
+					transparentIndex = ((packed & 0x01) != 0) ? index : NONE;
+					b.position(Math.min(b.limit(), next));
+				}
+				GIFDecoder.skipSubBlocks(b);
+			}
+			else if (introducer == GIFDecoder.IMAGE_SEPARATOR) {
+				if (b.remaining() < 10) {
+					break;
+				}
+				int left = b.getShort() & 0xffff;
+				int top = b.getShort() & 0xffff;
+				int width = b.getShort() & 0xffff;
+				int height = b.getShort() & 0xffff;
+				int packed = b.get() & 0xff;
+
+				int paletteOffset = NONE, paletteSize = 0;
+				if ((packed & 0x80) != 0) { // skips the local color table
+					paletteOffset = b.position();
+					paletteSize = 2 << (packed & 0x07);
+					b.position(Math.min(b.limit(), b.position() + 3 * paletteSize));
+				}
+				if (!b.hasRemaining()) {
+					break;
+				}
+				int dataOffset = b.position();
+				b.get();	// LZW minimum code size
+				GIFDecoder.skipSubBlocks(b);
+
+				if (this.numFrames == this.descriptorOffsets.length) {
+					allocate(2 * this.numFrames);
+				}
+				int i = this.numFrames++;
+				this.descriptorOffsets[i] = blockStart;
+				this.dataOffsets[i] = dataOffset;
+				this.paletteOffsets[i] = paletteOffset;
+				this.paletteSizes[i] = (short) paletteSize;
+				this.lefts[i] = left;
+				this.tops[i] = top;
+				this.widths[i] = width;
+				this.heights[i] = height;
+				this.interlaced[i] = (packed & 0x40) != 0;
+				this.delayTimes[i] = delayTime;
+				this.disposalCodes[i] = (byte) disposalCode;
+				this.transparentIndices[i] = (short) transparentIndex;
+
+				// a graphic control extension only applies to the next frame
+				delayTime = NONE;
+				disposalCode = NONE;
+				transparentIndex = NONE;
+			}
+			else { // the trailer, or something unexpected
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Constructs an empty index, to be filled in by {@link #readFrom}.
+	 */
+	private GIFBlockIndex() {
+	}
+
+	/**
+	 * Grows (or creates) the arrays of the index so that they hold the given number of frames.
+	 */
+	private void allocate(int capacity) {
+		if (this.descriptorOffsets == null) {
+			this.descriptorOffsets = new int[capacity];
+			this.dataOffsets = new int[capacity];
+			this.paletteOffsets = new int[capacity];
+			this.paletteSizes = new short[capacity];
+			this.lefts = new int[capacity];
+			this.tops = new int[capacity];
+			this.widths = new int[capacity];
+			this.heights = new int[capacity];
+			this.interlaced = new boolean[capacity];
+			this.delayTimes = new int[capacity];
+			this.disposalCodes = new byte[capacity];
+			this.transparentIndices = new short[capacity];
+			return;
+		}
+		this.descriptorOffsets = Arrays.copyOf(this.descriptorOffsets, capacity);
+		this.dataOffsets = Arrays.copyOf(this.dataOffsets, capacity);
+		this.paletteOffsets = Arrays.copyOf(this.paletteOffsets, capacity);
+		this.paletteSizes = Arrays.copyOf(this.paletteSizes, capacity);
+		this.lefts = Arrays.copyOf(this.lefts, capacity);
+		this.tops = Arrays.copyOf(this.tops, capacity);
+		this.widths = Arrays.copyOf(this.widths, capacity);
+		this.heights = Arrays.copyOf(this.heights, capacity);
+		this.interlaced = Arrays.copyOf(this.interlaced, capacity);
+		this.delayTimes = Arrays.copyOf(this.delayTimes, capacity);
+		this.disposalCodes = Arrays.copyOf(this.disposalCodes, capacity);
+		this.transparentIndices = Arrays.copyOf(this.transparentIndices, capacity);
+	}
+
+	//================================================================================
+	// Region: Persistence
+	//================================================================================
+	/**
+	 * Writes the index out, so that it can be read back by {@link #readFrom}.
+	 * @param out Where to write the index.
+	 * @throws IOException if the index can't be written.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(FORMAT);
+		out.writeInt(this.numFrames);
+		for (int i = 0; i < this.numFrames; i++) {
+			out.writeInt(this.descriptorOffsets[i]);
+			out.writeInt(this.dataOffsets[i]);
+			out.writeInt(this.paletteOffsets[i]);
+			out.writeShort(this.paletteSizes[i]);
+			out.writeShort(this.lefts[i]);
+			out.writeShort(this.tops[i]);
+			out.writeShort(this.widths[i]);
+			out.writeShort(this.heights[i]);
+			out.writeBoolean(this.interlaced[i]);
+			out.writeInt(this.delayTimes[i]);
+			out.writeByte(this.disposalCodes[i]);
+			out.writeShort(this.transparentIndices[i]);
+		}
+	}
+
+	/**
+	 * Reads an index written by {@link #writeTo}, and checks it against the GIF file it is for:
+	 * every frame must start with an image descriptor of the recorded size, where it was recorded.
+	 * @param in Where to read the index from.
+	 * @param data The bytes of the GIF file (little endian) the index is for.
+	 * @return The index.
+	 * @throws IOException if the index can't be read, or doesn't match the file.
+	 */
+	public static GIFBlockIndex readFrom(DataInput in, ByteBuffer data) throws IOException {
+		if (in.readInt() != FORMAT) {
+			throw new IOException("Not a GIF block index.");
+		}
+		int numFrames = in.readInt();
+		if (numFrames < 0 || numFrames > data.limit() / 10) {
+			throw new IOException("Invalid number of frames in the GIF block index: " + numFrames);
+		}
+
+		GIFBlockIndex index = new GIFBlockIndex();
+		index.allocate(Math.max(1, numFrames));
+		for (int i = 0; i < numFrames; i++) {
+			index.descriptorOffsets[i] = in.readInt();
+			index.dataOffsets[i] = in.readInt();
+			index.paletteOffsets[i] = in.readInt();
+			index.paletteSizes[i] = in.readShort();
+			index.lefts[i] = in.readShort() & 0xffff;
+			index.tops[i] = in.readShort() & 0xffff;
+			index.widths[i] = in.readShort() & 0xffff;
+			index.heights[i] = in.readShort() & 0xffff;
+			index.interlaced[i] = in.readBoolean();
+			index.delayTimes[i] = in.readInt();
+			index.disposalCodes[i] = in.readByte();
+			index.transparentIndices[i] = in.readShort();
+
+			int descriptor = index.descriptorOffsets[i];
+			if (descriptor < 0 || descriptor + 10 > data.limit() || index.dataOffsets[i] <= descriptor
+					|| index.dataOffsets[i] >= data.limit() || (data.get(descriptor) & 0xff) != GIFDecoder.IMAGE_SEPARATOR
+					|| (data.getShort(descriptor + 5) & 0xffff) != index.widths[i]
+					|| (data.getShort(descriptor + 7) & 0xffff) != index.heights[i]) {
+				throw new IOException("The GIF block index does not match the file at frame " + i + ".");
+			}
+		}
+		index.numFrames = numFrames;
+		return index;
+	}
+
+	//================================================================================
+	// Region: Getters
+	//================================================================================
+	/**
+	 * Returns the number of frames found in the GIF.
+	 * @return The number of frames.
+	 */
+	public int getNumberOfFrames() {
+		return this.numFrames;
+	}
+
+	/**
+	 * Returns the offset of a frame's image descriptor in the file.
+	 * @param frame The index of the frame.
+	 * @return The offset of the frame's image separator byte.
+	 */
+	public int getDescriptorOffset(int frame) {
+		return this.descriptorOffsets[check(frame)];
+	}
+
+	/**
+	 * Returns the offset of a frame's image data in the file.
+	 * @param frame The index of the frame.
+	 * @return The offset of the frame's LZW minimum code size byte.
+	 */
+	public int getDataOffset(int frame) {
+		return this.dataOffsets[check(frame)];
+	}
+
+	/**
+	 * Returns the offset of a frame's local color table in the file.
+	 * @param frame The index of the frame.
+	 * @return The offset of the local color table, or {@link #NONE} if the frame has none.
+	 */
+	public int getPaletteOffset(int frame) {
+		return this.paletteOffsets[check(frame)];
+	}
+
+	/**
+	 * Returns the number of colors in a frame's local color table.
+	 * @param frame The index of the frame.
+	 * @return The number of colors, or 0 if the frame has no local color table.
+	 */
+	public int getPaletteSize(int frame) {
+		return this.paletteSizes[check(frame)];
+	}
+
+	/**
+	 * Returns the x position of a frame on the logical screen.
+	 * @param frame The index of the frame.
+	 * @return The frame's left position.
+	 */
+	public int getLeft(int frame) {
+		return this.lefts[check(frame)];
+	}
+
+	/**
+	 * Returns the y position of a frame on the logical screen.
+	 * @param frame The index of the frame.
+	 * @return The frame's top position.
+	 */
+	public int getTop(int frame) {
+		return this.tops[check(frame)];
+	}
+
+	/**
+	 * Returns the width of a frame, as stored in its image descriptor.
+	 * @param frame The index of the frame.
+	 * @return The frame's width.
+	 */
+	public int getWidth(int frame) {
+		return this.widths[check(frame)];
+	}
+
+	/**
+	 * Returns the height of a frame, as stored in its image descriptor.
+	 * @param frame The index of the frame.
+	 * @return The frame's height.
+	 */
+	public int getHeight(int frame) {
+		return this.heights[check(frame)];
+	}
+
+	/**
+	 * Returns whether a frame's rows are stored interlaced.
+	 * @param frame The index of the frame.
+	 * @return true if the frame is interlaced.
+	 */
+	public boolean isInterlaced(int frame) {
+		return this.interlaced[check(frame)];
+	}
+
+	/**
+	 * Returns the delay time of a frame, as stored in its graphic control extension.
+	 * @param frame The index of the frame.
+	 * @return The delay time in 1/100 s, or {@link #NONE} if the frame has no graphic control extension.
+	 */
+	public int getDelayTime(int frame) {
+		return this.delayTimes[check(frame)];
+	}
+
+	/**
+	 * Returns the disposal method code of a frame, as stored in its graphic control extension.
+	 * @param frame The index of the frame.
+	 * @return The disposal method code, or {@link #NONE} if the frame has no graphic control extension.
+	 */
+	public int getDisposalCode(int frame) {
+		return this.disposalCodes[check(frame)];
+	}
+
+	/**
+	 * Returns the transparent palette index of a frame.
+	 * @param frame The index of the frame.
+	 * @return The transparent index, or {@link #NONE} if the frame has none.
+	 */
+	public int getTransparentIndex(int frame) {
+		return this.transparentIndices[check(frame)];
+	}
+
+	private int check(int frame) {
+		if (frame < 0 || frame >= this.numFrames) {
+			throw new IndexOutOfBoundsException("There is no frame " + frame + " in the GIF.");
+		}
+		return frame;
+	}
+}
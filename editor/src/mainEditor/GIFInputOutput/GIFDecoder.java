@@ -0,0 +1,369 @@
+package mainEditor.GIFInputOutput;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A GIF decoder which reads frames straight out of the bytes of a GIF file, without going
+ * through the image I/O plugins. The blocks of the file are walked once when the decoder is
+ * created, to index where each frame starts and what its metadata is (see {@link GIFBlockIndex});
+ * after that, any frame can be decoded on its own.
+ * Frames are decoded into either ARGB buffered images (backed by an <tt>int[]</tt>), 8-bit indexed
+ * buffered images (backed by a <tt>byte[]</tt>, a quarter of the size), or into arrays of 8-bit
+ * palette indices.
+ * <p>
+ * Like the image I/O GIF reader, each frame is decoded as it is stored (with its own dimensions),
+ * and is not drawn over earlier frames.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class GIFDecoder {
+	static final int EXTENSION_INTRODUCER = 0x21;		// introduces an extension block
+	static final int IMAGE_SEPARATOR = 0x2C;			// introduces an image descriptor
+	static final int TRAILER = 0x3B;					// ends the GIF file
+	static final int GRAPHIC_CONTROL_LABEL = 0xF9;		// labels a graphic control extension
+	static final int[] INTERLACE_START = {0, 4, 2, 1};	// first row of each interlace pass
+	static final int[] INTERLACE_STEP = {8, 8, 4, 2};	// rows between rows of each interlace pass
+	static final long MAX_PIXELS = 1L << 26;			// the most pixels a frame may have to be decoded (256 MB as ARGB)
+
+	private final ByteBuffer data;			// the bytes of the GIF file (little endian)
+	private final int screenWidth;			// the width of the logical screen
+	private final int screenHeight;			// the height of the logical screen
+	private final int[] globalPalette;		// the global color table as opaque ARGB colors (null if none)
+	private final GIFBlockIndex blockIndex;	// where each frame starts, and its metadata
+
+	private final GIFLZWDecoder lzw = new GIFLZWDecoder();	// decodes the image data of frames
+	private byte[] indices = new byte[0];					// scratch array for decoded indices
+	private final HashMap<Long, IndexColorModel> colorModels = new HashMap<Long, IndexColorModel>();	// by color table and transparent index
+
+	/**
+	 * Creates a new GIF decoder over the bytes of a GIF file, and indexes its frames.
+	 * The buffer is not copied, and must not be changed while the decoder is in use.
+	 * @param buffer The bytes of the GIF file, from its position to its limit.
+	 * @throws IOException if the bytes are not those of a GIF file.
+	 */
+	public GIFDecoder(ByteBuffer buffer) throws IOException {
+		this(buffer, null);
+	}
+
+	/**
+	 * Creates a new GIF decoder over the bytes of a GIF file, with an index of its frames that was
+	 * built before, so the blocks of the file are not walked again.
+	 * The buffer is not copied, and must not be changed while the decoder is in use.
+	 * @param buffer The bytes of the GIF file, from its position to its limit.
+	 * @param blockIndex The index of the file's frames, or null to build it.
+	 * @throws IOException if the bytes are not those of a GIF file, or a frame is too large to decode.
+	 */
+	public GIFDecoder(ByteBuffer buffer, GIFBlockIndex blockIndex) throws IOException {
+		this.data = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+		ByteBuffer b = this.data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		if (b.remaining() < 13 || b.get() != 'G' || b.get() != 'I' || b.get() != 'F') {
+			throw new IOException("Not a GIF file.");
+		}
+		b.position(6);	// skips the version ("87a" or "89a")
+
+		// logical screen descriptor
+		this.screenWidth = b.getShort() & 0xffff;
+		this.screenHeight = b.getShort() & 0xffff;
+		int packed = b.get() & 0xff;
+		b.position(b.position() + 2);	// skips the background color index and pixel aspect ratio
+
+		if ((packed & 0x80) != 0) { // there is a global color table
+			this.globalPalette = readPalette(b, 2 << (packed & 0x07));
+		}
+		else {
+			this.globalPalette = null;
+		}
+
+		this.blockIndex = blockIndex != null ? blockIndex : new GIFBlockIndex(b);
+
+		// rejects oversized frames now, so the caller can fall back on another reader
+		for (int i = 0; i < this.blockIndex.getNumberOfFrames(); i++) {
+			pixelCount(this.blockIndex.getWidth(i), this.blockIndex.getHeight(i));
+		}
+	}
+
+	//================================================================================
+	// Region: Block Parsing
+	//================================================================================
+	/**
+	 * Skips a sequence of data sub-blocks, up to and including the block terminator.
+	 * @param b The buffer, positioned at the size of the first sub-block.
+	 */
+	static void skipSubBlocks(ByteBuffer b) {
+		while (b.hasRemaining()) {
+			int size = b.get() & 0xff;
+			if (size == 0) {
+				return;
+			}
+			b.position(Math.min(b.limit(), b.position() + size));
+		}
+	}
+
+	/**
+	 * Reads a color table as opaque ARGB colors. The returned palette always has 256
+	 * entries, so that any index can be looked up; unused entries are opaque black.
+	 * @param b The buffer, positioned at the color table.
+	 * @param numColors The number of colors in the color table.
+	 * @return The palette.
+	 */
+	private static int[] readPalette(ByteBuffer b, int numColors) {
+		int[] palette = new int[256];
+		int n = Math.min(numColors, b.remaining() / 3);
+		for (int i = 0; i < n; i++) {
+			int r = b.get() & 0xff;
+			int g = b.get() & 0xff;
+			int bl = b.get() & 0xff;
+			palette[i] = 0xff000000 | (r << 16) | (g << 8) | bl;
+		}
+		for (int i = n; i < 256; i++) {
+			palette[i] = 0xff000000;
+		}
+		b.position(Math.min(b.limit(), b.position() + 3 * (numColors - n)));
+		return palette;
+	}
+
+	/**
+	 * Returns a grey scale palette, which is used for frames that have no color table at all.
+	 * @return The palette.
+	 */
+	private static int[] defaultPalette() {
+		int[] palette = new int[256];
+		for (int i = 0; i < 256; i++) {
+			palette[i] = 0xff000000 | (i << 16) | (i << 8) | i;
+		}
+		return palette;
+	}
+
+	//================================================================================
+	// Region: Frame Decoding
+	//================================================================================
+	/**
+	 * Decodes a frame into an ARGB buffered image with the frame's own dimensions.
+	 * Transparent pixels are set to 0.
+	 * @param index The index of the frame.
+	 * @return The frame as an ARGB buffered image.
+	 * @throws IOException if the frame does not exist, or is too large to decode.
+	 */
+	public synchronized BufferedImage readFrame(int index) throws IOException {
+		checkFrame(index);
+		int width = Math.max(1, this.blockIndex.getWidth(index));
+		int height = Math.max(1, this.blockIndex.getHeight(index));
+		int n = pixelCount(width, height);
+		int[] palette = getFramePalette(index);
+
+		decodeIndices(index, width, height);
+
+		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		int[] argb = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+
+		if (this.blockIndex.isInterlaced(index)) {
+			int src = 0;
+			for (int pass = 0; pass < 4; pass++) {
+				for (int y = INTERLACE_START[pass]; y < height; y += INTERLACE_STEP[pass]) {
+					int dest = y * width;
+					for (int x = 0; x < width; x++) {
+						argb[dest++] = palette[this.indices[src++] & 0xff];
+					}
+				}
+			}
+		}
+		else {
+			for (int i = 0; i < n; i++) {
+				argb[i] = palette[this.indices[i] & 0xff];
+			}
+		}
+		return img;
+	}
+
+	/**
+	 * Decodes a frame into an 8-bit indexed buffered image with the frame's own dimensions, which
+	 * takes a quarter of the memory of an ARGB image. Frames with the same color table and
+	 * transparent index share one color model. The colors of the pixels are the same as those
+	 * of {@link #readFrame}: transparent pixels are 0.
+	 * @param index The index of the frame.
+	 * @return The frame as an indexed buffered image.
+	 * @throws IOException if the frame does not exist, or is too large to decode.
+	 */
+	public synchronized BufferedImage readIndexedFrame(int index) throws IOException {
+		checkFrame(index);
+		int width = Math.max(1, this.blockIndex.getWidth(index));
+		int height = Math.max(1, this.blockIndex.getHeight(index));
+		pixelCount(width, height);
+
+		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, getColorModel(index));
+		readFrameIndices(index, ((DataBufferByte) img.getRaster().getDataBuffer()).getData());
+		return img;
+	}
+
+	/**
+	 * Returns the color model of a frame, made from its palette the first time a frame with the
+	 * same color table and transparent index is read.
+	 */
+	private IndexColorModel getColorModel(int index) throws IOException {
+		long key = ((long) this.blockIndex.getPaletteOffset(index) << 32) | (this.blockIndex.getTransparentIndex(index) & 0xffffffffL);
+		IndexColorModel cm = this.colorModels.get(key);
+		if (cm == null) {
+			cm = new IndexColorModel(8, 256, getFramePalette(index), 0, true, -1, DataBuffer.TYPE_BYTE);
+			this.colorModels.put(key, cm);
+		}
+		return cm;
+	}
+
+	/**
+	 * Decodes a frame into an array of 8-bit palette indices, one per pixel, in row order.
+	 * The palette the indices refer to is given by {@link #getFramePalette}.
+	 * @param index The index of the frame.
+	 * @param dest The array to decode into; if null or too small, a new array is created.
+	 * @return The array of indices.
+	 * @throws IOException if the frame does not exist, or is too large to decode.
+	 */
+	public synchronized byte[] readFrameIndices(int index, byte[] dest) throws IOException {
+		checkFrame(index);
+		int width = Math.max(1, this.blockIndex.getWidth(index));
+		int height = Math.max(1, this.blockIndex.getHeight(index));
+		int n = pixelCount(width, height);
+		if (dest == null || dest.length < n) {
+			dest = new byte[n];
+		}
+
+		decodeIndices(index, width, height);
+
+		if (this.blockIndex.isInterlaced(index)) {
+			int src = 0;
+			for (int pass = 0; pass < 4; pass++) {
+				for (int y = INTERLACE_START[pass]; y < height; y += INTERLACE_STEP[pass]) {
+					System.arraycopy(this.indices, src, dest, y * width, width);
+					src += width;
+				}
+			}
+		}
+		else {
+			System.arraycopy(this.indices, 0, dest, 0, n);
+		}
+		return dest;
+	}
+
+	/**
+	 * Returns the palette a frame's indices refer to, as ARGB colors. The palette always
+	 * has 256 entries, and the frame's transparent index (if any) is set to 0.
+	 * @param index The index of the frame.
+	 * @return The palette of the frame.
+	 * @throws IOException if the frame does not exist.
+	 */
+	public int[] getFramePalette(int index) throws IOException {
+		checkFrame(index);
+		int paletteOffset = this.blockIndex.getPaletteOffset(index);
+
+		int[] palette;
+		if (paletteOffset != GIFBlockIndex.NONE) { // local color table
+			ByteBuffer lct = this.data.duplicate();
+			lct.position(paletteOffset);
+			palette = readPalette(lct, this.blockIndex.getPaletteSize(index));
+		}
+		else if (this.globalPalette != null) {
+			palette = this.globalPalette.clone();
+		}
+		else {
+			palette = defaultPalette();
+		}
+
+		int transparentIndex = this.blockIndex.getTransparentIndex(index);
+		if (transparentIndex != GIFBlockIndex.NONE) {
+			palette[transparentIndex] = 0;
+		}
+		return palette;
+	}
+
+	/**
+	 * Returns the number of pixels of a frame of the given size, computed so it can't overflow.
+	 * @throws IOException if the frame has more than {@link #MAX_PIXELS} pixels.
+	 */
+	private static int pixelCount(int width, int height) throws IOException {
+		long n = (long) width * height;
+		if (n > MAX_PIXELS) {
+			throw new IOException("A frame of " + width + "x" + height + " pixels is too large to decode.");
+		}
+		return (int) n;
+	}
+
+	/**
+	 * Makes sure a frame exists.
+	 * @param index The index of the frame.
+	 * @throws IOException if the frame does not exist.
+	 */
+	private void checkFrame(int index) throws IOException {
+		if (index < 0 || index >= this.blockIndex.getNumberOfFrames()) {
+			throw new IOException("There is no frame " + index + " in the GIF.");
+		}
+	}
+
+	/**
+	 * Decodes the image data of a frame into the scratch array of indices, in the order they are stored.
+	 */
+	private void decodeIndices(int index, int width, int height) throws IOException {
+		ByteBuffer d = this.data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		d.position(this.blockIndex.getDataOffset(index));
+
+		int n = pixelCount(width, height);
+		if (this.indices.length < n) {
+			this.indices = new byte[n];
+		}
+
+		// a minimum code size above 11 is invalid; decoding it would overrun the code table
+		int minCodeSize = d.hasRemaining() ? d.get() & 0xff : 0;
+		if (minCodeSize < 1 || minCodeSize > 11) {
+			Arrays.fill(this.indices, 0, n, (byte) 0);
+			return;
+		}
+		this.lzw.decode(d, minCodeSize, this.indices, n);
+	}
+
+	//================================================================================
+	// Region: Attribute Getters
+	//================================================================================
+	/**
+	 * Returns the number of frames found in the GIF.
+	 * @return The number of frames.
+	 */
+	public int getNumberOfFrames() {
+		return this.blockIndex.getNumberOfFrames();
+	}
+
+	/**
+	 * Returns the index of the frames of the GIF, which holds the metadata of every frame.
+	 * @return The block index.
+	 */
+	public GIFBlockIndex getBlockIndex() {
+		return this.blockIndex;
+	}
+
+	/**
+	 * Returns the width of the logical screen of the GIF.
+	 * @return The logical screen width.
+	 */
+	public int getScreenWidth() {
+		return this.screenWidth;
+	}
+
+	/**
+	 * Returns the height of the logical screen of the GIF.
+	 * @return The logical screen height.
+	 */
+	public int getScreenHeight() {
+		return this.screenHeight;
+	}
+}
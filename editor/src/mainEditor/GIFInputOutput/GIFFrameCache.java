@@ -0,0 +1,201 @@
+package mainEditor.GIFInputOutput;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cache of encoded GIF frames, kept between saves of the same document so that only frames
+ * that changed since the last save are encoded again. Each frame is keyed by a hash of what its
+ * encoding depends on: its pixels and size, the quantizer and LZW settings, or for frames mapped
+ * onto the global color table, its color indices. A frame whose key was seen before is copied from
+ * the cache instead of being quantized and LZW encoded; its graphic control extension and offset
+ * are not part of the cached bytes, so retiming or moving a frame keeps it cached.
+ * <p>
+ * Keys are 64-bit hashes, so two different frames sharing a key is possible, but far less likely
+ * than anything else going wrong in a save. Entries not used by a save are dropped when the save
+ * finishes (see {@link #evictUnused}), so the cache holds about as many bytes as the file saved.
+ * Frames may be looked up and added from several encoding threads at once.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class GIFFrameCache {
+	private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;	// odd, with bits spread evenly
+
+	/**
+	 * The encoded blocks of a frame, from the flags byte of its image descriptor to the end of its image data.
+	 */
+	private static class Entry {
+		final byte[] body;			// the flags byte, the local color table (if any) and the LZW image data
+		volatile int generation;	// the last save the entry was used in
+
+		Entry(byte[] body, int generation) {
+			this.body = body;
+			this.generation = generation;
+		}
+	}
+
+	private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<Long, Entry>();
+	private volatile int generation;	// the save in progress
+	private int hits, misses;			// lookups that found a frame, and that didn't, in the last save
+	private int lastHits, lastMisses;	// hits and misses of the last finished save
+
+	//================================================================================
+	// Region: Lookup
+	//================================================================================
+	/**
+	 * Returns the encoded blocks of a frame, if they are cached.
+	 * @param key The key of the frame.
+	 * @return The bytes from the flags byte of the frame's image descriptor on, or null.
+	 */
+	byte[] get(long key) {
+		Entry e = this.entries.get(key);
+		synchronized (this) {
+			if (e == null) {
+				this.misses++;
+				return null;
+			}
+			this.hits++;
+		}
+		e.generation = this.generation;
+		return e.body;
+	}
+
+	/**
+	 * Caches the encoded blocks of a frame.
+	 * @param key The key of the frame.
+	 * @param body The bytes from the flags byte of the frame's image descriptor on.
+	 */
+	void put(long key, byte[] body) {
+		this.entries.put(key, new Entry(body, this.generation));
+	}
+
+	/**
+	 * Drops every frame that was not used since the last call, and starts counting hits and misses again.
+	 * Called by the writer once a save has finished.
+	 */
+	public synchronized void evictUnused() {
+		int current = this.generation;
+		Iterator<Entry> it = this.entries.values().iterator();
+		while (it.hasNext()) {
+			if (it.next().generation != current) {
+				it.remove();
+			}
+		}
+		this.generation = current + 1;
+		this.lastHits = this.hits;
+		this.lastMisses = this.misses;
+		this.hits = 0;
+		this.misses = 0;
+	}
+
+	/**
+	 * Drops every cached frame.
+	 */
+	public void clear() {
+		this.entries.clear();
+	}
+
+	//================================================================================
+	// Region: Hashing
+	//================================================================================
+	/**
+	 * Hashes the ARGB pixels of a frame.
+	 * @param seed The hash of everything else the encoding depends on.
+	 * @param argb The ARGB value of every pixel of the frame.
+	 * @param numPixels The number of pixels in the frame.
+	 * @return The key of the frame.
+	 */
+	static long hash(long seed, int[] argb, int numPixels) {
+		long h = seed;
+		for (int p = 0; p < numPixels; p++) {
+			h = (Long.rotateLeft(h, 5) ^ argb[p]) * MULTIPLIER;
+		}
+		return mix(h ^ numPixels);
+	}
+
+	/**
+	 * Hashes the color indices of a frame.
+	 * @param seed The hash of everything else the encoding depends on.
+	 * @param indices The color table index of every pixel of the frame.
+	 * @param numPixels The number of pixels in the frame.
+	 * @return The key of the frame.
+	 */
+	static long hash(long seed, byte[] indices, int numPixels) {
+		long h = seed;
+		int p = 0;
+		for (; p + 8 <= numPixels; p += 8) { // eight indices at a time
+			long v = (indices[p] & 0xFFL) | (indices[p + 1] & 0xFFL) << 8 | (indices[p + 2] & 0xFFL) << 16
+					| (indices[p + 3] & 0xFFL) << 24 | (indices[p + 4] & 0xFFL) << 32 | (indices[p + 5] & 0xFFL) << 40
+					| (indices[p + 6] & 0xFFL) << 48 | (indices[p + 7] & 0xFFL) << 56;
+			h = (Long.rotateLeft(h, 5) ^ v) * MULTIPLIER;
+		}
+		for (; p < numPixels; p++) {
+			h = (Long.rotateLeft(h, 5) ^ indices[p]) * MULTIPLIER;
+		}
+		return mix(h ^ numPixels);
+	}
+
+	/**
+	 * Adds a value to a hash.
+	 * @param h The hash so far.
+	 * @param v The value to add.
+	 * @return The new hash.
+	 */
+	static long combine(long h, long v) {
+		return (Long.rotateLeft(h, 5) ^ v) * MULTIPLIER;
+	}
+
+	/**
+	 * Spreads every bit of a hash over all of its bits.
+	 */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		return h ^ (h >>> 33);
+	}
+
+	//================================================================================
+	// Region: Getters
+	//================================================================================
+	/**
+	 * Returns the number of cached frames.
+	 * @return The number of frames in the cache.
+	 */
+	public int getNumberOfFrames() {
+		return this.entries.size();
+	}
+
+	/**
+	 * Returns the bytes of the encoded blocks of the cached frames.
+	 * @return The bytes cached.
+	 */
+	public long getBytes() {
+		long bytes = 0;
+		for (Entry e : this.entries.values()) {
+			bytes += e.body.length;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the number of frames the last finished save copied from the cache.
+	 * @return The number of cache hits.
+	 */
+	public synchronized int getHits() {
+		return this.lastHits;
+	}
+
+	/**
+	 * Returns the number of frames the last finished save had to encode.
+	 * @return The number of cache misses.
+	 */
+	public synchronized int getMisses() {
+		return this.lastMisses;
+	}
+}
@@ -0,0 +1,201 @@
+package mainEditor.GIFInputOutput;
+
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+
+import mainEditor.quantizer.ColorQuantizer;
+import mainEditor.quantizer.DitherMode;
+import mainEditor.quantizer.QuantizerMode;
+
+/**
+ * Encodes a single frame into the GIF blocks that make it up: a graphic control extension,
+ * an image descriptor, a local color table (unless the frame uses the global one) and LZW image data. A frame encoder does not depend
+ * on any other frame, so frames can be encoded by several frame encoders at once; one frame
+ * encoder, along with its scratch arrays, must only be used by one thread at a time.
+ * Frames encoded before can be copied from a {@link GIFFrameCache} instead of being encoded again.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+class GIFFrameEncoder {
+	private static final int DESCRIPTOR_LENGTH = 10;	// the image separator, the offset, the size and the flags
+	private static final int LOCAL_TABLE = 1, GLOBAL_TABLE = 2;	// which color table a frame uses, for cache keys
+
+	private final GIFLZWEncoder encoder;		// the LZW encoder for the image data
+	private final GIFPalette palette;			// the color table of the frame being encoded
+	private int[] pixels = new int[0];			// the ARGB pixels of the frame being encoded
+	private byte[] indices = new byte[0];		// the color table indices of the frame being encoded
+	private final long quantizerHash;			// the quantizer, its mode and the dither mode, for cache keys
+
+	/**
+	 * Constructs a frame encoder.
+	 * @param encoder The LZW encoder to encode image data with.
+	 * @param quantizer The quantizer for frames with too many colors.
+	 * @param mode The speed/quality trade-off of the quantizer.
+	 * @param ditherMode How the pixels of frames with too many colors are dithered.
+	 */
+	GIFFrameEncoder(GIFLZWEncoder encoder, ColorQuantizer quantizer, QuantizerMode mode, DitherMode ditherMode) {
+		this.encoder = encoder;
+		this.palette = new GIFPalette(quantizer, mode, ditherMode);
+		this.quantizerHash = GIFFrameCache.combine(GIFFrameCache.combine(quantizer.getClass().getName().hashCode(),
+																		mode.ordinal()), ditherMode.ordinal());
+	}
+
+	/**
+	 * Encodes a frame, or copies it from a cache of encoded frames if its pixels were encoded before
+	 * with the same settings.
+	 * @param img The frame to encode.
+	 * @param left The x offset of the frame.
+	 * @param top The y offset of the frame.
+	 * @param graphicControl The bytes of the frame's graphic control extension.
+	 * @param cache The cache of encoded frames (may be null).
+	 * @param out The buffer the frame's blocks are written to.
+	 */
+	void encode(RenderedImage img, int left, int top, byte[] graphicControl, GIFFrameCache cache, GIFOutputBuffer out) {
+		int width = img.getWidth(), height = img.getHeight();
+		int numPixels = width * height;
+		int[] argb = getPixels(img);
+
+		long key = 0;
+		if (cache != null) {
+			// the width goes in the key, since frames of other shapes can share the same pixels
+			key = GIFFrameCache.hash(GIFFrameCache.combine(settingsHash(LOCAL_TABLE), width), argb, numPixels);
+			if (writeCached(cache.get(key), left, top, width, height, graphicControl, out)) {
+				return;
+			}
+		}
+
+		if (this.indices.length < numPixels) {
+			this.indices = new byte[numPixels];
+		}
+		this.palette.build(argb, width, height, this.indices);
+
+		// image descriptor, followed by the local color table
+		int bits = this.palette.getBits();
+		int start = out.size();
+		writeDescriptor(left, top, width, height, graphicControl, 0x80 | (bits - 1), out);
+		this.palette.writeTo(out);
+
+		this.encoder.encode(this.indices, numPixels, bits, out);
+		if (cache != null) {
+			cache.put(key, out.toByteArray(start + graphicControl.length + DESCRIPTOR_LENGTH - 1));
+		}
+	}
+
+	/**
+	 * Encodes a frame already mapped onto the global color table, so with no local color table;
+	 * or copies it from a cache of encoded frames if the same indices were encoded before.
+	 * @param indices The global color table index of every pixel of the frame.
+	 * @param bits The number of bits needed to hold every index of the frame.
+	 * @param width The width of the frame.
+	 * @param height The height of the frame.
+	 * @param left The x offset of the frame.
+	 * @param top The y offset of the frame.
+	 * @param graphicControl The bytes of the frame's graphic control extension.
+	 * @param cache The cache of encoded frames (may be null).
+	 * @param out The buffer the frame's blocks are written to.
+	 */
+	void encodeIndexed(byte[] indices, int bits, int width, int height, int left, int top, byte[] graphicControl,
+						GIFFrameCache cache, GIFOutputBuffer out) {
+		int numPixels = width * height;
+		long key = 0;
+		if (cache != null) {
+			key = GIFFrameCache.hash(GIFFrameCache.combine(GIFFrameCache.combine(settingsHash(GLOBAL_TABLE), bits), width),
+									indices, numPixels);
+			if (writeCached(cache.get(key), left, top, width, height, graphicControl, out)) {
+				return;
+			}
+		}
+
+		int start = out.size();
+		writeDescriptor(left, top, width, height, graphicControl, 0, out);
+		this.encoder.encode(indices, numPixels, bits, out);
+		if (cache != null) {
+			cache.put(key, out.toByteArray(start + graphicControl.length + DESCRIPTOR_LENGTH - 1));
+		}
+	}
+
+	/**
+	 * Writes a frame from the bytes a cache holds for it.
+	 * @return false if nothing is cached for the frame, in which case nothing was written.
+	 */
+	private static boolean writeCached(byte[] body, int left, int top, int width, int height, byte[] graphicControl,
+										GIFOutputBuffer out) {
+		if (body == null) {
+			return false;
+		}
+		writeDescriptor(left, top, width, height, graphicControl, body[0], out);
+		out.write(body, 1, body.length - 1);
+		return true;
+	}
+
+	/**
+	 * Hashes the settings the encoding of a frame depends on, besides its pixels.
+	 * @param table Whether the frame has a local color table, or is mapped onto the global one.
+	 */
+	private long settingsHash(int table) {
+		long h = GIFFrameCache.combine(table, this.encoder.getClearStrategy().ordinal());
+		h = GIFFrameCache.combine(h, this.encoder.getCodeSizeStrategy().ordinal());
+		if (table == LOCAL_TABLE) {
+			h = GIFFrameCache.combine(h, this.quantizerHash);
+		}
+		return h;
+	}
+
+	/**
+	 * Writes the graphic control extension and the image descriptor of a frame.
+	 */
+	private static void writeDescriptor(int left, int top, int width, int height, byte[] graphicControl, int flags,
+										GIFOutputBuffer out) {
+		out.write(graphicControl, 0, graphicControl.length);
+		out.write(GIFDecoder.IMAGE_SEPARATOR);
+		out.writeShort(left);
+		out.writeShort(top);
+		out.writeShort(width);
+		out.writeShort(height);
+		out.write(flags);
+	}
+
+	/**
+	 * Returns the ARGB pixels of a frame, without copying them when the frame is already a
+	 * plain ARGB image. Unless they were not copied, the pixels are overwritten by the next call.
+	 * @param img The frame.
+	 * @return The ARGB value of every pixel of the frame, row by row.
+	 */
+	int[] getPixels(RenderedImage img) {
+		int numPixels = img.getWidth() * img.getHeight();
+		if (img instanceof BufferedImage) {
+			BufferedImage bi = (BufferedImage) img;
+			WritableRaster raster = bi.getRaster();
+			if (bi.getType() == BufferedImage.TYPE_INT_ARGB && raster.getDataBuffer() instanceof DataBufferInt
+					&& raster.getParent() == null && raster.getDataBuffer().getSize() == numPixels
+					&& raster.getDataBuffer().getOffset() == 0) {
+				return ((DataBufferInt) raster.getDataBuffer()).getData();
+			}
+		}
+		else { // draws other rendered images onto a buffered image first
+			BufferedImage bi = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = bi.createGraphics();
+			g.drawRenderedImage(img, new AffineTransform());
+			g.dispose();
+			img = bi;
+		}
+
+		if (this.pixels.length < numPixels) {
+			this.pixels = new int[numPixels];
+		}
+		BufferedImage bi = (BufferedImage) img;
+		int[] indexed = GIFInputOutputHelper.getIndexedARGB(bi, this.pixels);
+		if (indexed != null) { // frames decoded as indexed images are looked up in their palette
+			return indexed;
+		}
+		return bi.getRGB(0, 0, bi.getWidth(), bi.getHeight(), this.pixels, 0, bi.getWidth());
+	}
+}
@@ -0,0 +1,161 @@
+package mainEditor.GIFInputOutput;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+
+import mainEditor.quantizer.ColorHistogram;
+
+/**
+ * Shrinks the frames of a GIF whose frames lie on top of each other (the "none" and "doNotDispose"
+ * disposal methods), before they are written. The optimizer keeps track of what a viewer shows after
+ * each frame, and crops each frame to the rectangle of pixels that actually change what is shown,
+ * with the unchanged pixels in that rectangle made transparent so the earlier frames show through.
+ * <p>
+ * A frame drawn over earlier ones can only change the pixels where it is opaque, so what is shown
+ * after the optimized frame is exactly what is shown after the original frame. Most animations
+ * only change a small part of the screen from one frame to the next, so the optimized frames are
+ * much smaller to encode and write, and runs of transparent pixels compress well.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class GIFFrameOptimizer {
+	private static final int ALPHA_THRESHOLD = ColorHistogram.ALPHA_THRESHOLD;	// pixels less opaque than this are transparent
+
+	private final int screenWidth, screenHeight;	// the size of the logical screen
+	private final int[] screen;				// what is shown after the frames so far (0 where nothing is)
+	private int[] pixels = new int[0];		// the ARGB pixels of the frame being optimized
+	private Point offset = new Point();		// the offset of the last optimized frame
+	private boolean started;				// whether the first frame has been optimized
+
+	/**
+	 * Constructs an optimizer for frames drawn on a screen that starts out empty.
+	 * @param screenWidth The width of the logical screen.
+	 * @param screenHeight The height of the logical screen.
+	 */
+	public GIFFrameOptimizer(int screenWidth, int screenHeight) {
+		if (screenWidth <= 0 || screenHeight <= 0) {
+			throw new IllegalArgumentException("The screen must have a positive size, not " + screenWidth + "x" + screenHeight + ".");
+		}
+		this.screenWidth = screenWidth;
+		this.screenHeight = screenHeight;
+		this.screen = new int[screenWidth * screenHeight];
+	}
+
+	/**
+	 * Returns the optimized version of the next frame, which is to be written at {@link #getOffset()}
+	 * instead of the original frame. Frames must be given in the order they are written.
+	 * @param img The next frame.
+	 * @param frameOffset The offset of the next frame.
+	 * @return The frame cropped to the pixels that change what is shown, with the pixels that
+	 * 			don't made transparent; or the original frame if it is the first frame, or doesn't fit
+	 * 			on the screen.
+	 */
+	public BufferedImage optimize(BufferedImage img, Point frameOffset) {
+		int width = img.getWidth(), height = img.getHeight();
+		int left = frameOffset.x, top = frameOffset.y;
+		int[] argb = getPixels(img);
+
+		// the first frame sets the size of the screen, and frames sticking out of the screen can't be
+		// tracked, so they are drawn as they are
+		if (!this.started || left < 0 || top < 0 || left + width > this.screenWidth || top + height > this.screenHeight) {
+			this.started = true;
+			draw(argb, width, height, left, top);
+			this.offset = new Point(frameOffset);
+			return img;
+		}
+
+		// finds the rectangle of pixels that change what is shown
+		int minX = width, minY = height, maxX = -1, maxY = -1;
+		for (int y = 0; y < height; y++) {
+			int row = y * width, screenRow = (top + y) * this.screenWidth + left;
+			for (int x = 0; x < width; x++) {
+				int c = argb[row + x];
+				if ((c >>> 24) >= ALPHA_THRESHOLD && (c | 0xFF000000) != this.screen[screenRow + x]) {
+					if (x < minX) {
+						minX = x;
+					}
+					if (x > maxX) {
+						maxX = x;
+					}
+					if (y < minY) {
+						minY = y;
+					}
+					maxY = y;
+				}
+			}
+		}
+
+		if (maxX < 0) { // nothing changes, but the frame is still needed for its delay
+			this.offset = new Point(left, top);
+			return new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+		}
+
+		// copies the changed pixels into the cropped frame, and draws them on the screen
+		int cropWidth = maxX - minX + 1, cropHeight = maxY - minY + 1;
+		BufferedImage cropped = new BufferedImage(cropWidth, cropHeight, BufferedImage.TYPE_INT_ARGB);
+		int[] out = ((DataBufferInt) cropped.getRaster().getDataBuffer()).getData();
+		for (int y = 0; y < cropHeight; y++) {
+			int row = (minY + y) * width + minX, screenRow = (top + minY + y) * this.screenWidth + left + minX;
+			for (int x = 0; x < cropWidth; x++) {
+				int c = argb[row + x];
+				if ((c >>> 24) >= ALPHA_THRESHOLD && (c | 0xFF000000) != this.screen[screenRow + x]) {
+					c |= 0xFF000000;
+					out[y * cropWidth + x] = c;
+					this.screen[screenRow + x] = c;
+				}
+			}
+		}
+		this.offset = new Point(left + minX, top + minY);
+		return cropped;
+	}
+
+	/**
+	 * Draws the opaque pixels of a frame on the screen, leaving out what falls off the screen.
+	 */
+	private void draw(int[] argb, int width, int height, int left, int top) {
+		for (int y = Math.max(0, -top); y < height && top + y < this.screenHeight; y++) {
+			for (int x = Math.max(0, -left); x < width && left + x < this.screenWidth; x++) {
+				int c = argb[y * width + x];
+				if ((c >>> 24) >= ALPHA_THRESHOLD) {
+					this.screen[(top + y) * this.screenWidth + left + x] = c | 0xFF000000;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the ARGB pixels of a frame, without copying them when the frame is already a
+	 * plain ARGB image.
+	 */
+	private int[] getPixels(BufferedImage img) {
+		int numPixels = img.getWidth() * img.getHeight();
+		WritableRaster raster = img.getRaster();
+		if (img.getType() == BufferedImage.TYPE_INT_ARGB && raster.getDataBuffer() instanceof DataBufferInt
+				&& raster.getParent() == null && raster.getDataBuffer().getSize() == numPixels
+				&& raster.getDataBuffer().getOffset() == 0) {
+			return ((DataBufferInt) raster.getDataBuffer()).getData();
+		}
+		if (this.pixels.length < numPixels) {
+			this.pixels = new int[numPixels];
+		}
+		int[] indexed = GIFInputOutputHelper.getIndexedARGB(img, this.pixels);
+		if (indexed != null) { // frames decoded as indexed images are looked up in their palette
+			return indexed;
+		}
+		return img.getRGB(0, 0, img.getWidth(), img.getHeight(), this.pixels, 0, img.getWidth());
+	}
+
+	/**
+	 * Returns where the last optimized frame is to be written.
+	 * @return The offset of the last optimized frame.
+	 */
+	public Point getOffset() {
+		return this.offset;
+	}
+}
@@ -0,0 +1,142 @@
+package mainEditor.GIFInputOutput;
+
+import java.util.Arrays;
+
+import mainEditor.quantizer.ColorHistogram;
+
+/**
+ * A color table shared by the frames of a GIF, written once as the global color table.
+ * The table grows as frames are written: the opaque colors of each frame are added while they
+ * still fit in the 255 entries after the transparent one, and the frame is mapped onto the table
+ * in the same pass. Entries never move once added, so the indices of earlier frames stay valid,
+ * and each frame only needs as many bits per index as the table had when it was added.
+ * A frame whose colors don't fit is left to its own local color table. The table is hashed and
+ * written the same way as a {@link GIFPalette}.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+class GIFGlobalPalette {
+	private static final int ALPHA_THRESHOLD = ColorHistogram.ALPHA_THRESHOLD;	// pixels less opaque than this are transparent
+
+	private final int[] colors = new int[GIFPalette.MAX_COLORS];	// the RGB value of every entry
+	private int size = 1;								// the number of entries in use
+	private final int[] hashColors = new int[GIFPalette.HASH_SIZE];	// the RGB value held in each slot, or -1
+	private final byte[] hashIndices = new byte[GIFPalette.HASH_SIZE];	// the entry of the color held in each slot
+
+	private final int[] added = new int[GIFPalette.MAX_COLORS];	// the new colors of the frame being added
+	private int numFrames;								// the number of frames whose colors are in the table
+
+	/**
+	 * Constructs an empty global palette, holding only the transparent entry.
+	 */
+	GIFGlobalPalette() {
+		Arrays.fill(this.hashColors, -1);
+		this.colors[GIFPalette.TRANSPARENT_INDEX] = 0;
+	}
+
+	//================================================================================
+	// Region: Building
+	//================================================================================
+	/**
+	 * Adds the opaque colors of a frame to the table if they all fit, and maps every pixel of the
+	 * frame onto the table.
+	 * @param argb The ARGB value of every pixel of the frame.
+	 * @param numPixels The number of pixels in the frame.
+	 * @param indices Where to put the table index of every pixel.
+	 * @return Whether the colors of the frame are now in the table; if not, the table is left as it
+	 * was, and the frame needs a local color table.
+	 */
+	boolean add(int[] argb, int numPixels, byte[] indices) {
+		int numAdded = 0;
+
+		// runs of the same color are common, so the last lookup is remembered
+		int lastColor = -1;
+		byte lastIndex = GIFPalette.TRANSPARENT_INDEX;
+
+		for (int p = 0; p < numPixels; p++) {
+			int c = argb[p];
+			if ((c >>> 24) < ALPHA_THRESHOLD) {
+				indices[p] = GIFPalette.TRANSPARENT_INDEX;
+				continue;
+			}
+			c &= 0xFFFFFF;
+			if (c != lastColor) {
+				int slot = GIFPalette.slot(this.hashColors, c);
+				if (this.hashColors[slot] == -1) { // a new color, kept in the table for now
+					if (this.size + numAdded == GIFPalette.MAX_COLORS) {
+						remove(numAdded);
+						return false;
+					}
+					this.hashColors[slot] = c;
+					this.hashIndices[slot] = (byte) (this.size + numAdded);
+					this.added[numAdded++] = c;
+				}
+				lastColor = c;
+				lastIndex = this.hashIndices[slot];
+			}
+			indices[p] = lastIndex;
+		}
+		System.arraycopy(this.added, 0, this.colors, this.size, numAdded);
+		this.size += numAdded;
+		this.numFrames++;
+		return true;
+	}
+
+	/**
+	 * Takes the new colors of a frame that didn't fit back out of the hash table.
+	 * Open addressing can't simply clear a slot, so the table is rebuilt from the entries kept.
+	 */
+	private void remove(int numAdded) {
+		if (numAdded == 0) {
+			return;
+		}
+		Arrays.fill(this.hashColors, -1);
+		for (int i = 1; i < this.size; i++) {
+			int slot = GIFPalette.slot(this.hashColors, this.colors[i]);
+			this.hashColors[slot] = this.colors[i];
+			this.hashIndices[slot] = (byte) i;
+		}
+	}
+
+	//================================================================================
+	// Region: Writing
+	//================================================================================
+	/**
+	 * Writes the table as a GIF color table, padded with black to a power of two entries.
+	 * @param out The buffer to write to.
+	 */
+	void writeTo(GIFOutputBuffer out) {
+		GIFPalette.writeColorTable(out, this.colors, this.size);
+	}
+
+	//================================================================================
+	// Region: Getters
+	//================================================================================
+	/**
+	 * Returns the number of entries in use.
+	 * @return The number of colors in the table, including the transparent entry.
+	 */
+	int getSize() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the number of bits needed to hold every index of the table.
+	 * @return A number of bits from 1 to 8.
+	 */
+	int getBits() {
+		return GIFPalette.bitsFor(this.size);
+	}
+
+	/**
+	 * Returns the number of frames whose colors were added to the table.
+	 * @return The number of frames mapped onto the global color table.
+	 */
+	int getNumberOfFrames() {
+		return this.numFrames;
+	}
+}
@@ -0,0 +1,133 @@
+package mainEditor.GIFInputOutput;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+
+/**
+ * A store of GIF block indices, kept as small sidecar files in a directory, each named after a
+ * hash of the GIF file it indexes. Reopening a file that was indexed
+ * before then only costs reading its sidecar, instead of walking every block of the file.
+ * <p>
+ * The hash is a CRC of every byte of the file, so that a file changed anywhere (even only in the
+ * delay or position of a frame) gets a new sidecar; a CRC runs through the mapped file much faster
+ * than its blocks can be walked. Since two files could still share a hash, an index read back is
+ * also checked against the file it is used for (see {@link GIFBlockIndex#readFrom}), and ignored
+ * if it doesn't match.
+ * The store is only a cache: failing to read or write a sidecar is never an error.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class GIFIndexStore {
+	public static final int MIN_FILE_SIZE = 1 << 20;	// smaller files are indexed about as fast as their sidecar is read
+	private static final String SUFFIX = ".gifidx";
+
+	private static GIFIndexStore defaultStore;			// the store in the temporary directory, made when first needed
+
+	private final File directory;		// where the sidecars are kept
+
+	/**
+	 * Constructs a store that keeps its sidecars in a directory, which is made when the first
+	 * sidecar is written.
+	 * @param directory The directory of the sidecars.
+	 */
+	public GIFIndexStore(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Returns the store shared by the editor, which keeps its sidecars in the temporary directory.
+	 * @return The default store.
+	 */
+	public static synchronized GIFIndexStore getDefault() {
+		if (defaultStore == null) {
+			defaultStore = new GIFIndexStore(new File(System.getProperty("java.io.tmpdir"), "MAH-gif-index"));
+		}
+		return defaultStore;
+	}
+
+	/**
+	 * Reads the index of a GIF file, if one was stored for it.
+	 * @param data The bytes of the GIF file, from its position to its limit.
+	 * @return The index of the file, or null if there is none, or it doesn't match the file.
+	 */
+	public GIFBlockIndex load(ByteBuffer data) {
+		File file = sidecar(data);
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				return GIFBlockIndex.readFrom(in, data.slice().order(ByteOrder.LITTLE_ENDIAN));
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException e) { // a stale or broken sidecar is dropped, and written again later
+			file.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the index of a GIF file.
+	 * @param data The bytes of the GIF file, from its position to its limit.
+	 * @param index The index of the file.
+	 * @return Whether the index was stored.
+	 */
+	public boolean save(ByteBuffer data, GIFBlockIndex index) {
+		File file = sidecar(data);
+		File temp = new File(this.directory, file.getName() + ".tmp");
+		try {
+			if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+				return false;
+			}
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				index.writeTo(out);
+			}
+			finally {
+				out.close();
+			}
+			// renames the finished sidecar into place, so a half-written one is never read
+			file.delete();
+			return temp.renameTo(file);
+		}
+		catch (IOException e) {
+			temp.delete();
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the sidecar file of a GIF file.
+	 */
+	private File sidecar(ByteBuffer data) {
+		return new File(this.directory, Long.toHexString(data.remaining()) + "-" + Long.toHexString(hash(data)) + SUFFIX);
+	}
+
+	/**
+	 * Hashes every byte of a file.
+	 * @param data The bytes of the file, from its position to its limit.
+	 * @return The hash of the file.
+	 */
+	public static long hash(ByteBuffer data) {
+		CRC32 crc = new CRC32();
+		crc.update(data.slice());
+		return crc.getValue();
+	}
+}
@@ -1,5 +1,10 @@
 package mainEditor.GIFInputOutput;
 
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+
 import javax.imageio.metadata.IIOMetadataNode;
 
 /**
@@ -14,6 +19,8 @@ import javax.imageio.metadata.IIOMetadataNode;
  *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
  */
 public final class GIFInputOutputHelper {
+	// the names of the GIF disposal methods, by their code in a graphic control extension
+	private static final String[] DISPOSAL_METHODS = {"none", "doNotDispose", "restoreToBackgroundColor", "restoreToPrevious"};
 	
     //================================================================================
     // Region: Metadata and Frame Drawing Helpers
@@ -40,5 +47,75 @@ public final class GIFInputOutputHelper {
         rootNode.appendChild(node);
         return(node);
     }
+
+    /**
+     * Returns the code a disposal method is stored as in a graphic control extension.
+     * 
+     * @param disposalMethod The name of the disposal method, as used in image I/O metadata.
+     * 
+     * @return the disposal method code, from 0 to 3.
+     * @throws IllegalArgumentException if the disposal method is not known.
+     */
+    public static int disposalCode(String disposalMethod) {
+    	for (int i = 0; i < DISPOSAL_METHODS.length; i++) {
+    		if (DISPOSAL_METHODS[i].equals(disposalMethod)) {
+    			return i;
+    		}
+    	}
+    	throw new IllegalArgumentException("Unknown disposal method: " + disposalMethod);
+    }
+
+    /**
+     * Returns the name of the disposal method stored as a code in a graphic control extension.
+     * 
+     * @param disposalCode The disposal method code.
+     * 
+     * @return the name of the disposal method, as used in image I/O metadata.
+     * Codes that are reserved are treated as "none".
+     */
+    public static String disposalMethod(int disposalCode) {
+    	if (disposalCode < 0 || disposalCode >= DISPOSAL_METHODS.length) {
+    		return DISPOSAL_METHODS[0];
+    	}
+    	return DISPOSAL_METHODS[disposalCode];
+    }
+    
+    //================================================================================
+    // Region: Pixel Helpers
+    //================================================================================
+	/**
+	 * Returns the ARGB pixels of an 8-bit indexed image, looking each index up in the palette
+	 * of the image; this is many times faster than {@link BufferedImage#getRGB} on an indexed image.
+	 * 
+	 * @param img The image.
+	 * @param dest Where to put the pixels, if it is big enough (may be null).
+	 * 
+	 * @return the ARGB value of every pixel, row by row, or null if the image is not a plain
+	 * 8-bit indexed image with a full palette.
+	 */
+    public static int[] getIndexedARGB(BufferedImage img, int[] dest) {
+    	if (img.getType() != BufferedImage.TYPE_BYTE_INDEXED) {
+    		return null;
+    	}
+    	int numPixels = img.getWidth() * img.getHeight();
+    	WritableRaster raster = img.getRaster();
+    	IndexColorModel cm = (IndexColorModel) img.getColorModel();
+    	if (!(raster.getDataBuffer() instanceof DataBufferByte) || raster.getParent() != null
+    			|| raster.getDataBuffer().getSize() != numPixels || raster.getDataBuffer().getOffset() != 0
+    			|| cm.getMapSize() != 256) {
+    		return null;
+    	}
+    	
+    	int[] palette = new int[256];
+    	cm.getRGBs(palette);
+    	byte[] indices = ((DataBufferByte) raster.getDataBuffer()).getData();
+    	if (dest == null || dest.length < numPixels) {
+    		dest = new int[numPixels];
+    	}
+    	for (int i = 0; i < numPixels; i++) {
+    		dest[i] = palette[indices[i] & 0xff];
+    	}
+    	return dest;
+    }
     
 } // end of GIF animation helper
@@ -0,0 +1,155 @@
+package mainEditor.GIFInputOutput;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A decoder for the variable-length LZW codes that make up the image data of a GIF frame.
+ * Codes are read straight out of the data sub-blocks, and decoded into an array of palette
+ * indices. The code tables are kept between frames, so one decoder allocates nothing per frame.
+ * <p>
+ * Not thread-safe; use one decoder per thread.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class GIFLZWDecoder {
+	static final int MAX_CODES = 4096;				// the max number of codes in the code table (12 bits)
+
+	private final short[] prefix = new short[MAX_CODES];		// the code each code extends
+	private final byte[] suffix = new byte[MAX_CODES];			// the last index of each code
+	private final short[] length = new short[MAX_CODES];		// the number of indices each code stands for
+	private final byte[] overflow = new byte[MAX_CODES];		// holds a code that runs past the last pixel
+
+	/**
+	 * Decodes the LZW image data of a frame into palette indices. The buffer must be positioned at the
+	 * first data sub-block (just after the LZW minimum code size). When this returns, the buffer is
+	 * positioned just after the block terminator, even if the data ended early or was corrupt.
+	 * Any pixels that could not be decoded are set to index 0.
+	 * @param buf The buffer containing the data sub-blocks.
+	 * @param minCodeSize The LZW minimum code size of the frame.
+	 * @param pixels The array to decode the indices into.
+	 * @param numPixels The number of pixels in the frame.
+	 * @return The number of pixels that were actually decoded.
+	 */
+	public int decode(ByteBuffer buf, int minCodeSize, byte[] pixels, int numPixels) {
+		final short[] prefix = this.prefix;
+		final byte[] suffix = this.suffix;
+		final short[] length = this.length;
+
+		int clear = 1 << minCodeSize;		// the clear code
+		int endOfInfo = clear + 1;			// the end of information code
+		int available = clear + 2;			// the next code to be added to the table
+		int codeSize = minCodeSize + 1;		// the current size of codes in bits
+		int codeMask = (1 << codeSize) - 1;
+		int oldCode = -1;					// the previous code read
+		int first = 0;						// the first index of the previous code
+
+		for (int code = 0; code < clear; code++) {
+			prefix[code] = 0;
+			suffix[code] = (byte) code;
+			length[code] = 1;
+		}
+
+		int datum = 0;			// the bits read but not yet used
+		int bits = 0;			// the number of bits in the datum
+		int blockLeft = 0;		// the number of bytes left in the current sub-block
+		boolean ended = false;	// whether the block terminator has been read
+		int pi = 0;				// the number of pixels decoded
+
+		decoding:
+		while (pi < numPixels) {
+			while (bits < codeSize) { // reads bytes until there are enough bits for a code
+				if (blockLeft == 0) {
+					if (!buf.hasRemaining() || (blockLeft = buf.get() & 0xff) == 0) {
+						ended = true;
+						break decoding;
+					}
+				}
+				if (!buf.hasRemaining()) {
+					ended = true;
+					break decoding;
+				}
+				datum |= (buf.get() & 0xff) << bits;
+				bits += 8;
+				blockLeft--;
+			}
+
+			int code = datum & codeMask;
+			datum >>>= codeSize;
+			bits -= codeSize;
+
+			if (code == clear) { // resets the code table
+				codeSize = minCodeSize + 1;
+				codeMask = (1 << codeSize) - 1;
+				available = clear + 2;
+				oldCode = -1;
+				continue;
+			}
+			if (code == endOfInfo || code > available || (oldCode == -1 && code >= clear)) {
+				break;	// the end of the image, or corrupt data
+			}
+
+			// the code being defined right now stands for the previous code plus its own first index
+			boolean defining = (code == available);
+			int written = defining ? oldCode : code;
+			int len = length[written];
+
+			// writes the indices of the code backwards, straight into the pixels
+			// (or into the overflow array, if they would run past the last pixel)
+			byte[] dest = pixels;
+			int end = pi + len + (defining ? 1 : 0);
+			int p = pi + len - 1;
+			if (end > numPixels) {
+				dest = this.overflow;
+				p = len - 1;
+			}
+			int c = written;
+			while (c >= clear) {
+				dest[p--] = suffix[c];
+				c = prefix[c];
+			}
+			dest[p] = (byte) c;
+			first = c;
+			if (defining) {
+				dest[p + len] = (byte) first;
+				len++;
+			}
+			if (dest != pixels) { // copies whatever fits
+				int fit = numPixels - pi;
+				System.arraycopy(this.overflow, 0, pixels, pi, fit);
+				pi += fit;
+			}
+			else {
+				pi += len;
+			}
+
+			if (oldCode != -1 && available < MAX_CODES) { // adds a new code, unless the table is full
+				prefix[available] = (short) oldCode;
+				suffix[available] = (byte) first;
+				length[available] = (short) (length[oldCode] + 1);
+				available++;
+				if ((available & codeMask) == 0 && available < MAX_CODES) {
+					codeSize++;
+					codeMask += available;
+				}
+			}
+			oldCode = code;
+		}
+
+		// clears any pixels that could not be decoded
+		for (int i = pi; i < numPixels; i++) {
+			pixels[i] = 0;
+		}
+
+		// skips whatever is left of the image data, up to and including the block terminator
+		if (!ended) {
+			buf.position(Math.min(buf.limit(), buf.position() + blockLeft));
+			GIFDecoder.skipSubBlocks(buf);
+		}
+
+		return pi;
+	}
+}
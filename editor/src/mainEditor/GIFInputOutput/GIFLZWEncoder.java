@@ -0,0 +1,266 @@
+package mainEditor.GIFInputOutput;
+
+import java.util.Arrays;
+
+/**
+ * The variable length LZW encoder used for GIF image data.
+ * Strings are looked up in an open addressing hash table keyed by (prefix code, next index),
+ * and the codes are packed straight into data sub-blocks of a reusable output buffer.
+ * One encoder can be reused for any number of frames, but not by several threads at once.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class GIFLZWEncoder {
+	private static final int MAX_CODES = 4096;			// GIF codes are at most 12 bits
+	private static final int MAX_CODE_SIZE = 12;
+	private static final int HASH_BITS = 13;			// twice as many slots as codes, so probes stay short
+	private static final int HASH_SIZE = 1 << HASH_BITS;
+	private static final int HASH_MASK = HASH_SIZE - 1;
+	private static final int EMPTY = -1;
+	private static final int MAX_SUB_BLOCK = 255;
+
+	// how many codes the deferred clear strategy looks at before judging the compression
+	private static final int DEFERRED_WINDOW = 2048;
+
+	private final int[] hashKeys = new int[HASH_SIZE];		// the (prefix, index) key held in each slot
+	private final short[] hashCodes = new short[HASH_SIZE];	// the code of the string held in each slot
+
+	private LZWClearStrategy clearStrategy;		// what to do once the code table is full
+	private LZWCodeSizeStrategy codeSizeStrategy;	// how the minimum code size is picked
+
+	// state of the frame being encoded
+	private GIFOutputBuffer out;		// where the encoded bytes go
+	private int blockStart;				// position of the length byte of the open sub-block
+	private int blockLength;			// number of bytes in the open sub-block
+	private int bitBuffer;				// bits not yet written out
+	private int bitCount;				// number of bits in the bit buffer
+	private int initCodeSize;			// code size right after a clear code
+	private int codeSize;				// current code size
+	private int nextCode;				// next code to be added to the table
+	private boolean clearPending;		// whether the code being written is a clear code
+
+	/**
+	 * Constructs an encoder that clears its table as soon as it is full and uses the smallest
+	 * code size that fits each frame's color table.
+	 */
+	public GIFLZWEncoder() {
+		this(LZWClearStrategy.WHEN_FULL, LZWCodeSizeStrategy.MINIMUM);
+	}
+
+	/**
+	 * Constructs an encoder.
+	 * @param clearStrategy What to do once the code table is full.
+	 * @param codeSizeStrategy How to pick the minimum code size of a frame.
+	 */
+	public GIFLZWEncoder(LZWClearStrategy clearStrategy, LZWCodeSizeStrategy codeSizeStrategy) {
+		setClearStrategy(clearStrategy);
+		setCodeSizeStrategy(codeSizeStrategy);
+	}
+
+	//================================================================================
+	// Region: Encoding
+	//================================================================================
+	/**
+	 * Encodes the color indices of a frame as GIF image data: the LZW minimum code size,
+	 * the data sub-blocks and the block terminator.
+	 * @param indices The color table index of every pixel, in the order they are to be stored.
+	 * @param numPixels The number of pixels to encode.
+	 * @param paletteBits The number of bits needed to hold every index of the frame's color table (1 to 8).
+	 * @param out The buffer the image data is written to.
+	 */
+	public void encode(byte[] indices, int numPixels, int paletteBits, GIFOutputBuffer out) {
+		int minCodeSize = this.codeSizeStrategy.minCodeSize(paletteBits);
+		if (minCodeSize < 2 || minCodeSize > 8) {
+			throw new IllegalArgumentException("Invalid LZW minimum code size " + minCodeSize + ".");
+		}
+		int clearCode = 1 << minCodeSize;
+		int endCode = clearCode + 1;
+		boolean deferred = this.clearStrategy == LZWClearStrategy.DEFERRED;
+
+		this.out = out;
+		out.ensureCapacity(out.size() + numPixels + numPixels / MAX_SUB_BLOCK + 16);
+		out.write(minCodeSize);
+		this.blockStart = out.size();
+		out.write(0); // length of the first sub-block, filled in once it is known
+		this.blockLength = 0;
+		this.bitBuffer = 0;
+		this.bitCount = 0;
+		this.initCodeSize = minCodeSize + 1;
+		this.codeSize = this.initCodeSize;
+
+		clearTable(clearCode);
+		writeCode(clearCode);
+
+		if (numPixels > 0) {
+			int[] keys = this.hashKeys;
+			short[] codes = this.hashCodes;
+
+			// state of the deferred clear strategy, once the table has filled up
+			int windowCodes = 0, lastPixel = 0;
+			int baselinePixels = 0; // pixels covered by the first full window, or 0 if none yet
+
+			int prefix = indices[0] & 0xFF;
+			for (int i = 1; i < numPixels; i++) {
+				int index = indices[i] & 0xFF;
+				int key = (index << MAX_CODE_SIZE) | prefix;
+				int slot = hash(key);
+
+				int k;
+				while ((k = keys[slot]) != EMPTY) {
+					if (k == key) {
+						break;
+					}
+					slot = (slot + 1) & HASH_MASK;
+				}
+				if (k == key) { // the string is already in the table, so keep extending it
+					prefix = codes[slot];
+					continue;
+				}
+
+				writeCode(prefix);
+				prefix = index;
+
+				if (this.nextCode < MAX_CODES) {
+					keys[slot] = key;
+					codes[slot] = (short) this.nextCode++;
+				}
+				else if (!deferred) {
+					clearTable(clearCode);
+					writeCode(clearCode);
+				}
+				else { // keeps using the full table while it compresses as well as it did when it filled up
+					windowCodes++;
+					if (windowCodes == DEFERRED_WINDOW) {
+						int pixels = i - lastPixel;
+						if (baselinePixels == 0) {
+							baselinePixels = pixels;
+						}
+						else if (pixels * 10 < baselinePixels * 9) {
+							clearTable(clearCode);
+							writeCode(clearCode);
+							baselinePixels = 0;
+						}
+						windowCodes = 0;
+						lastPixel = i;
+					}
+				}
+			}
+			writeCode(prefix);
+		}
+		writeCode(endCode);
+
+		// flushes the last partial byte and sub-block, then ends the image data
+		if (this.bitCount > 0) {
+			writeByte(this.bitBuffer);
+		}
+		finishSubBlock();
+		out.write(0);
+		this.out = null;
+	}
+
+	/**
+	 * Empties the code table and goes back to the starting code size.
+	 */
+	private void clearTable(int clearCode) {
+		Arrays.fill(this.hashKeys, EMPTY);
+		this.nextCode = clearCode + 2;
+		this.clearPending = true;
+	}
+
+	/**
+	 * Writes a code with the current code size, then widens the code size if the decoder will
+	 * need the extra bit to read the next code.
+	 */
+	private void writeCode(int code) {
+		this.bitBuffer |= code << this.bitCount;
+		this.bitCount += this.codeSize;
+		while (this.bitCount >= 8) {
+			writeByte(this.bitBuffer);
+			this.bitBuffer >>>= 8;
+			this.bitCount -= 8;
+		}
+
+		if (this.clearPending) {
+			this.codeSize = this.initCodeSize;
+			this.clearPending = false;
+		}
+		else if (this.nextCode >= (1 << this.codeSize) && this.codeSize < MAX_CODE_SIZE) {
+			this.codeSize++;
+		}
+	}
+
+	/**
+	 * Writes a byte into the open data sub-block, starting a new one if it is full.
+	 */
+	private void writeByte(int b) {
+		if (this.blockLength == MAX_SUB_BLOCK) {
+			finishSubBlock();
+			this.blockStart = this.out.size();
+			this.out.write(0);
+			this.blockLength = 0;
+		}
+		this.out.write(b);
+		this.blockLength++;
+	}
+
+	/**
+	 * Fills in the length of the open sub-block, dropping it if it is empty.
+	 */
+	private void finishSubBlock() {
+		if (this.blockLength > 0) {
+			this.out.set(this.blockStart, this.blockLength);
+		}
+		else {
+			this.out.truncate(this.blockStart);
+		}
+	}
+
+	private static int hash(int key) {
+		return (key * 0x9E3779B1) >>> (32 - HASH_BITS);
+	}
+
+	//================================================================================
+	// Region: Getters and Setters
+	//================================================================================
+	/**
+	 * Returns what the encoder does once the code table is full.
+	 * @return The clear code strategy.
+	 */
+	public LZWClearStrategy getClearStrategy() {
+		return this.clearStrategy;
+	}
+
+	/**
+	 * Sets what the encoder does once the code table is full.
+	 * @param clearStrategy The clear code strategy.
+	 */
+	public void setClearStrategy(LZWClearStrategy clearStrategy) {
+		if (clearStrategy == null) {
+			throw new IllegalArgumentException("The clear code strategy can't be null.");
+		}
+		this.clearStrategy = clearStrategy;
+	}
+
+	/**
+	 * Returns how the encoder picks the minimum code size of a frame.
+	 * @return The code size strategy.
+	 */
+	public LZWCodeSizeStrategy getCodeSizeStrategy() {
+		return this.codeSizeStrategy;
+	}
+
+	/**
+	 * Sets how the encoder picks the minimum code size of a frame.
+	 * @param codeSizeStrategy The code size strategy.
+	 */
+	public void setCodeSizeStrategy(LZWCodeSizeStrategy codeSizeStrategy) {
+		if (codeSizeStrategy == null) {
+			throw new IllegalArgumentException("The code size strategy can't be null.");
+		}
+		this.codeSizeStrategy = codeSizeStrategy;
+	}
+}
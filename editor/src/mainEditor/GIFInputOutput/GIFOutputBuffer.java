@@ -0,0 +1,169 @@
+package mainEditor.GIFInputOutput;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer that GIF blocks are written into before they are written out.
+ * It is meant to be reset and reused for every frame, so that encoding a frame does not
+ * allocate once the buffer has grown large enough. Multi-byte values are little endian,
+ * as they are in GIF files.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class GIFOutputBuffer {
+	private byte[] buf;		// the bytes written so far
+	private int count;		// the number of bytes written so far
+
+	/**
+	 * Constructs an empty buffer with a default initial capacity.
+	 */
+	public GIFOutputBuffer() {
+		this(8192);
+	}
+
+	/**
+	 * Constructs an empty buffer.
+	 * @param capacity The initial capacity of the buffer.
+	 */
+	public GIFOutputBuffer(int capacity) {
+		this.buf = new byte[Math.max(16, capacity)];
+	}
+
+	//================================================================================
+	// Region: Writing
+	//================================================================================
+	/**
+	 * Writes a single byte.
+	 * @param b The byte to write (only the low 8 bits are used).
+	 */
+	public void write(int b) {
+		if (this.count == this.buf.length) {
+			grow(this.count + 1);
+		}
+		this.buf[this.count++] = (byte) b;
+	}
+
+	/**
+	 * Writes an unsigned 16-bit value, low byte first.
+	 * @param v The value to write.
+	 */
+	public void writeShort(int v) {
+		ensureCapacity(this.count + 2);
+		this.buf[this.count++] = (byte) v;
+		this.buf[this.count++] = (byte) (v >> 8);
+	}
+
+	/**
+	 * Writes part of a byte array.
+	 * @param b The bytes to write.
+	 * @param off The offset of the first byte to write.
+	 * @param len The number of bytes to write.
+	 */
+	public void write(byte[] b, int off, int len) {
+		ensureCapacity(this.count + len);
+		System.arraycopy(b, off, this.buf, this.count, len);
+		this.count += len;
+	}
+
+	/**
+	 * Writes the contents of another buffer.
+	 * @param other The buffer whose bytes are to be written.
+	 */
+	public void write(GIFOutputBuffer other) {
+		write(other.buf, 0, other.count);
+	}
+
+	/**
+	 * Overwrites a byte that was already written.
+	 * @param pos The position of the byte.
+	 * @param b The new value of the byte.
+	 */
+	public void set(int pos, int b) {
+		this.buf[pos] = (byte) b;
+	}
+
+	/**
+	 * Makes sure the buffer can hold at least the given number of bytes without growing.
+	 * @param capacity The number of bytes the buffer should be able to hold.
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > this.buf.length) {
+			grow(capacity);
+		}
+	}
+
+	private void grow(int capacity) {
+		this.buf = Arrays.copyOf(this.buf, Math.max(capacity, this.buf.length * 2));
+	}
+
+	/**
+	 * Empties the buffer, keeping its capacity.
+	 */
+	public void reset() {
+		this.count = 0;
+	}
+
+	/**
+	 * Drops every byte written from the given position on.
+	 * @param size The number of bytes to keep.
+	 */
+	public void truncate(int size) {
+		if (size < 0 || size > this.count) {
+			throw new IllegalArgumentException("Can't truncate " + this.count + " bytes to " + size + ".");
+		}
+		this.count = size;
+	}
+
+	//================================================================================
+	// Region: Reading
+	//================================================================================
+	/**
+	 * Returns the number of bytes written.
+	 * @return The number of bytes in the buffer.
+	 */
+	public int size() {
+		return this.count;
+	}
+
+	/**
+	 * Returns a copy of the bytes written.
+	 * @return The bytes in the buffer.
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(this.buf, this.count);
+	}
+
+	/**
+	 * Returns a copy of the bytes written from the given position on.
+	 * @param from The position of the first byte to copy.
+	 * @return The bytes in the buffer from that position.
+	 */
+	public byte[] toByteArray(int from) {
+		return Arrays.copyOfRange(this.buf, from, this.count);
+	}
+
+	/**
+	 * Writes the contents of the buffer to an output stream.
+	 * @param out The stream to write to.
+	 * @throws IOException if any I/O errors occur.
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(this.buf, 0, this.count);
+	}
+
+	/**
+	 * Writes the contents of the buffer to a data output (such as an image output stream).
+	 * @param out The data output to write to.
+	 * @throws IOException if any I/O errors occur.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.write(this.buf, 0, this.count);
+	}
+}
@@ -0,0 +1,272 @@
+package mainEditor.GIFInputOutput;
+
+import java.util.Arrays;
+
+import mainEditor.quantizer.ColorHistogram;
+import mainEditor.quantizer.ColorQuantizer;
+import mainEditor.quantizer.DitherMode;
+import mainEditor.quantizer.Ditherer;
+import mainEditor.quantizer.InverseColorMap;
+import mainEditor.quantizer.MedianCutQuantizer;
+import mainEditor.quantizer.QuantizerMode;
+
+/**
+ * The color table of a GIF frame, along with the mapping of the frame's pixels onto it.
+ * Index 0 is always kept for transparent pixels. If the opaque colors of a frame fit in the
+ * other 255 entries the table holds them exactly; otherwise a {@link ColorQuantizer} picks 255
+ * colors from a histogram of the frame, and each pixel is mapped to the closest of those, or
+ * dithered onto them by a {@link Ditherer}.
+ * A palette is meant to be rebuilt for every frame, reusing its arrays.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class GIFPalette {
+	public static final int MAX_COLORS = 256;
+	public static final int TRANSPARENT_INDEX = 0;
+	private static final int ALPHA_THRESHOLD = ColorHistogram.ALPHA_THRESHOLD;	// pixels less opaque than this are transparent
+
+	static final int HASH_SIZE = 1024;					// four times as many slots as colors, in the color hash tables
+	private static final int HASH_MASK = HASH_SIZE - 1;
+
+	private final int[] colors = new int[MAX_COLORS];	// the RGB value of every entry
+	private int size;									// the number of entries in use
+
+	private final int[] hashColors = new int[HASH_SIZE];	// the RGB value held in each slot, or -1
+	private final byte[] hashIndices = new byte[HASH_SIZE];	// the entry of the color held in each slot
+
+	// the fallback for frames with too many colors
+	private final ColorQuantizer quantizer;			// picks the colors of the palette
+	private final QuantizerMode mode;				// how finely colors are counted and mapped
+	private ColorHistogram histogram;				// the colors of the frame, allocated the first time it is needed
+	private InverseColorMap inverseMap;				// maps pixels onto the palette, allocated along with the histogram
+	private final Ditherer ditherer;				// dithers pixels onto the palette (null if they are mapped to the closest color)
+
+	/**
+	 * Constructs an empty palette, which quantizes frames with too many colors by median cut.
+	 */
+	public GIFPalette() {
+		this(new MedianCutQuantizer(), QuantizerMode.BALANCED);
+	}
+
+	/**
+	 * Constructs an empty palette.
+	 * @param quantizer The quantizer that builds the palette of frames with too many colors.
+	 * @param mode The speed/quality trade-off of the quantization.
+	 */
+	public GIFPalette(ColorQuantizer quantizer, QuantizerMode mode) {
+		this(quantizer, mode, DitherMode.NONE);
+	}
+
+	/**
+	 * Constructs an empty palette.
+	 * @param quantizer The quantizer that builds the palette of frames with too many colors.
+	 * @param mode The speed/quality trade-off of the quantization.
+	 * @param ditherMode How the pixels of frames with too many colors are dithered onto the palette.
+	 */
+	public GIFPalette(ColorQuantizer quantizer, QuantizerMode mode, DitherMode ditherMode) {
+		if (quantizer == null || mode == null || ditherMode == null) {
+			throw new IllegalArgumentException("A palette needs a quantizer, a quantizer mode and a dither mode.");
+		}
+		this.quantizer = quantizer;
+		this.mode = mode;
+		this.ditherer = ditherMode == DitherMode.NONE ? null : new Ditherer(ditherMode);
+		this.size = 1;
+	}
+
+	//================================================================================
+	// Region: Building
+	//================================================================================
+	/**
+	 * Builds the palette of a frame and maps every pixel of the frame onto it.
+	 * The frame is taken as a single row, so it is not dithered.
+	 * @param argb The ARGB value of every pixel of the frame.
+	 * @param numPixels The number of pixels in the frame.
+	 * @param indices Where to put the palette index of every pixel.
+	 */
+	public void build(int[] argb, int numPixels, byte[] indices) {
+		build(argb, numPixels, 1, indices);
+	}
+
+	/**
+	 * Builds the palette of a frame and maps every pixel of the frame onto it, dithering the
+	 * pixels if the frame has too many colors and the palette has a dither mode.
+	 * @param argb The ARGB value of every pixel of the frame, row by row.
+	 * @param width The width of the frame.
+	 * @param height The height of the frame.
+	 * @param indices Where to put the palette index of every pixel.
+	 */
+	public void build(int[] argb, int width, int height, byte[] indices) {
+		if (!buildExact(argb, width * height, indices)) {
+			if (this.histogram == null) {
+				this.histogram = new ColorHistogram(this.mode.getHistogramBits());
+				this.inverseMap = new InverseColorMap(this.mode.getLookupBits());
+			}
+			buildQuantized(argb, width, height, indices);
+		}
+	}
+
+	/**
+	 * Builds a palette holding every opaque color of the frame.
+	 * @return false if the frame has too many colors, in which case nothing useful was built.
+	 */
+	private boolean buildExact(int[] argb, int numPixels, byte[] indices) {
+		int[] keys = this.hashColors;
+		byte[] values = this.hashIndices;
+		Arrays.fill(keys, -1);
+		this.colors[TRANSPARENT_INDEX] = 0;
+		int n = 1;
+
+		// runs of the same color are common, so the last lookup is remembered
+		int lastColor = -1;
+		byte lastIndex = TRANSPARENT_INDEX;
+
+		for (int p = 0; p < numPixels; p++) {
+			int c = argb[p];
+			if ((c >>> 24) < ALPHA_THRESHOLD) {
+				indices[p] = TRANSPARENT_INDEX;
+				continue;
+			}
+			c &= 0xFFFFFF;
+			if (c == lastColor) {
+				indices[p] = lastIndex;
+				continue;
+			}
+
+			int slot = slot(keys, c);
+			if (keys[slot] == -1) { // a new color
+				if (n == MAX_COLORS) {
+					return false;
+				}
+				keys[slot] = c;
+				values[slot] = (byte) n;
+				this.colors[n++] = c;
+			}
+			lastColor = c;
+			lastIndex = values[slot];
+			indices[p] = lastIndex;
+		}
+		this.size = n;
+		return true;
+	}
+
+	/**
+	 * Builds a palette with the quantizer from a histogram of the frame, and maps every pixel to
+	 * its closest entry.
+	 */
+	private void buildQuantized(int[] argb, int width, int height, byte[] indices) {
+		int numPixels = width * height;
+		this.histogram.count(argb, numPixels);
+		int[] quantized = this.quantizer.buildPalette(this.histogram, MAX_COLORS - 1);
+
+		this.colors[TRANSPARENT_INDEX] = 0;
+		System.arraycopy(quantized, 0, this.colors, 1, quantized.length);
+		this.size = 1 + quantized.length;
+		if (this.size == 1) { // nothing is opaque
+			Arrays.fill(indices, 0, numPixels, (byte) TRANSPARENT_INDEX);
+			return;
+		}
+
+		InverseColorMap map = this.inverseMap;
+		map.setPalette(this.colors, 1, this.size);
+		if (this.ditherer != null && height > 1) {
+			this.ditherer.dither(argb, width, height, map, this.colors, (byte) TRANSPARENT_INDEX, indices);
+			return;
+		}
+		for (int p = 0; p < numPixels; p++) {
+			int c = argb[p];
+			indices[p] = (c >>> 24) < ALPHA_THRESHOLD ? TRANSPARENT_INDEX : (byte) map.lookup(c);
+		}
+	}
+
+	//================================================================================
+	// Region: Writing
+	//================================================================================
+	/**
+	 * Writes the palette as a GIF color table, padded with black to a power of two entries.
+	 * @param out The buffer to write to.
+	 */
+	public void writeTo(GIFOutputBuffer out) {
+		writeColorTable(out, this.colors, this.size);
+	}
+
+	/**
+	 * Writes the first entries of a table of colors as a GIF color table, padded with black to a power of two entries.
+	 * @param out The buffer to write to.
+	 * @param colors The RGB value of every entry.
+	 * @param size The number of entries in use.
+	 */
+	static void writeColorTable(GIFOutputBuffer out, int[] colors, int size) {
+		int entries = 1 << bitsFor(size);
+		out.ensureCapacity(out.size() + entries * 3);
+		for (int i = 0; i < entries; i++) {
+			int c = i < size ? colors[i] : 0;
+			out.write(c >> 16);
+			out.write(c >> 8);
+			out.write(c);
+		}
+	}
+
+	//================================================================================
+	// Region: Color Hash Tables
+	//================================================================================
+	/**
+	 * Returns the slot of a color hash table (of {@link #HASH_SIZE} slots, empty ones holding -1,
+	 * filled by open addressing) that holds a color, or the empty slot it would go in.
+	 * @param hashColors The RGB value held in each slot, or -1.
+	 * @param c The RGB value of the color.
+	 * @return The slot of the color.
+	 */
+	static int slot(int[] hashColors, int c) {
+		int slot = ((c * 0x9E3779B1) >>> 22) & HASH_MASK;
+		int k;
+		while ((k = hashColors[slot]) != -1 && k != c) {
+			slot = (slot + 1) & HASH_MASK;
+		}
+		return slot;
+	}
+
+	//================================================================================
+	// Region: Getters
+	//================================================================================
+	/**
+	 * Returns the number of entries in use.
+	 * @return The number of colors in the palette, including the transparent entry.
+	 */
+	public int getSize() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the number of bits needed to hold every index of the palette.
+	 * @return A number of bits from 1 to 8.
+	 */
+	public int getBits() {
+		return bitsFor(this.size);
+	}
+
+	/**
+	 * Returns the number of bits needed to hold every index of a color table.
+	 * @param size The number of entries in use.
+	 * @return A number of bits from 1 to 8.
+	 */
+	static int bitsFor(int size) {
+		int bits = 1;
+		while ((1 << bits) < size) {
+			bits++;
+		}
+		return bits;
+	}
+
+	/**
+	 * Returns the RGB value of an entry.
+	 * @param index The index of the entry.
+	 * @return The RGB value of the entry.
+	 */
+	public int getColor(int index) {
+		return this.colors[index];
+	}
+}
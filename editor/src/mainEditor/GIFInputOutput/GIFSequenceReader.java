@@ -15,6 +15,7 @@ import javax.imageio.metadata.*;
 
 import java.awt.Dimension;
 import java.awt.Point;
+import java.awt.image.BufferedImage;
 import java.io.*;
 
 public class GIFSequenceReader {
@@ -23,6 +24,8 @@ public class GIFSequenceReader {
 	private ImageReader ir;				//the image reader from which metadata is being extracted
 	private IIOMetadataNode root;		//the image metadata as a tree
 	private int imageNum = 0;			//the indexed image we are looking at in the image reader (starts at 0)
+	private GIFDecoder decoder;			//the decoder frames are read from (null if frames are read from the image reader)
+	private GIFBlockIndex blockIndex;	//the metadata of every frame, from the decoder (null if read from the image reader)
 	
 	/**
 	* Creates a new GifSequenceReader
@@ -33,12 +36,58 @@ public class GIFSequenceReader {
 	* @author Joey Sun (adapted from Ellis Kroo)
 	*/
 	public GIFSequenceReader(ImageReader ir) throws IIOException, IOException {
+		this(ir, null);
+	}
+	
+	/**
+	* Creates a new GifSequenceReader which decodes frames with a GIF decoder, rather than
+	* with the image reader, and reads metadata from the decoder's block index rather than from
+	* image reader metadata trees. The image reader is then never asked to scan the whole GIF,
+	* so opening a GIF whose block index is already known only touches the frames that are read.
+	* 
+	* @param ir The ImageReader which contains info about the reader (may be null if there is a decoder).
+	* @param decoder The GIF decoder over the same GIF as the image reader (may be null).
+	* @throws IIOException if no gif ImageWriters are found
+	*/
+	public GIFSequenceReader(ImageReader ir, GIFDecoder decoder) throws IIOException, IOException {
 		this.ir = ir;
+		if (decoder != null) {
+			this.decoder = decoder;
+			this.blockIndex = decoder.getBlockIndex();
+		}
 		updateMetaData(0);
 	}
 	
+    /**
+     * Returns the number of frames in the GIF.
+     * @return The number of frames.
+     * @throws IOException If any I/O errors occur.
+     */
+    public int getNumImages() throws IOException {
+    	if (this.decoder != null) {
+    		return this.decoder.getNumberOfFrames();
+    	}
+    	return this.ir.getNumImages(true);
+    }
+    
+    /**
+     * Reads the image of a frame of the GIF, with the frame's own dimensions, as an indexed image.
+     * Uses the GIF decoder if there is one, and the image reader otherwise.
+     * @param imageNum The index of the frame.
+     * @return The image of the frame.
+     * @throws IOException If any I/O errors occur, such as the fact the image at the given index
+     * 		cannot be found.
+     */
+    public BufferedImage read(int imageNum) throws IOException {
+    	if (this.decoder != null) {
+    		return this.decoder.readIndexedFrame(imageNum);
+    	}
+    	return this.ir.read(imageNum);
+    }
+	
     /**
      * Updates the metadata structure to indicate which image we want to look at now.
+     * With a block index, this only changes the image looked at.
      * @param imageNum The index of the image we wish to look at now.
      * @throws IOException If any I/O errors occur, such as the fact the image at the given index
      * 		cannot be found.
@@ -46,6 +95,9 @@ public class GIFSequenceReader {
     public void updateMetaData(int imageNum) throws IOException {
     	
     	if((this.imageNum = imageNum) >= 0) {
+    		if (this.blockIndex != null) {
+    			return;
+    		}
         	this.imageMetaData =  ir.getImageMetadata(imageNum);
             String metaFormatName = imageMetaData.getNativeMetadataFormatName();
 
@@ -64,6 +116,11 @@ public class GIFSequenceReader {
      * @throws IOException if any I/O errors occur.
      */
     public int getDelayTime() throws IOException {
+    	if (this.blockIndex != null) {
+    		int delayTime = this.blockIndex.getDelayTime(this.imageNum);
+    		return (delayTime > 0 ? delayTime : GIFDefaultMetadata.DELAY_TIME)*10;
+    	}
+    	
         // obtains the Graphics Control Extension Node if it exists from the metadate node
         IIOMetadataNode graphicsControlExtensionNode = GIFInputOutputHelper.getNode(root, "GraphicControlExtension");
 
@@ -86,6 +143,12 @@ public class GIFSequenceReader {
      * @return the disposal method for gif frames
      */
     public String getDisposalMethod() {
+    	if (this.blockIndex != null) {
+    		int disposalCode = this.blockIndex.getDisposalCode(this.imageNum);
+    		return disposalCode != GIFBlockIndex.NONE ? GIFInputOutputHelper.disposalMethod(disposalCode)
+    													: GIFDefaultMetadata.DISPOSAL_METHOD;
+    	}
+    	
         // obtains the Graphics Control Extension Node if it exists from the metadata node
         IIOMetadataNode graphicsControlExtensionNode = GIFInputOutputHelper.getNode(root, "GraphicControlExtension");
 
@@ -106,6 +169,10 @@ public class GIFSequenceReader {
      * @return The image offset for current GIF frame as a point.
      */
     public Point getImageOffset() {
+    	if (this.blockIndex != null) {
+    		return new Point(this.blockIndex.getLeft(this.imageNum), this.blockIndex.getTop(this.imageNum));
+    	}
+    	
         // obtains the Image Descriptor Node if it exists from the metadata node
         IIOMetadataNode imageDescriptorNode = GIFInputOutputHelper.getNode(root, "ImageDescriptor");
 
@@ -139,6 +206,10 @@ public class GIFSequenceReader {
      * @return The dimensions for current GIF frame.
      */
 	public Dimension getImageDimension() {
+		if (this.blockIndex != null) {
+			return new Dimension(this.blockIndex.getWidth(this.imageNum), this.blockIndex.getHeight(this.imageNum));
+		}
+		
         // obtains the Image Descriptor Node if it exists from the metadata node
         IIOMetadataNode imageDescriptorNode = GIFInputOutputHelper.getNode(root, "ImageDescriptor");
 
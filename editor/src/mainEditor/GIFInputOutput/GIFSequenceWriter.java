@@ -18,38 +18,127 @@ import javax.imageio.stream.*;
 import java.awt.Point;
 import java.awt.image.*;
 import java.io.*;
-import java.util.Iterator;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import mainEditor.quantizer.ColorQuantizer;
+import mainEditor.quantizer.DitherMode;
+import mainEditor.quantizer.MedianCutQuantizer;
+import mainEditor.quantizer.QuantizerMode;
 
 /**
  * A GIF sequence writer.
+ * By default the GIF blocks are written directly, with frames encoded by the GIF LZW encoder;
+ * the default image I/O GIF writer can still be picked instead.
+ * <p>
+ * The native backend can also encode frames on a pool of worker threads (see {@link #setEncodingThreads}),
+ * share one global color table between frames (see {@link #setGlobalColorTable}), and copy
+ * frames encoded by an earlier save instead of encoding them again (see {@link #setFrameCache}).
+ * Frames are still written in the order they are given; at most a bounded number of frames are
+ * being encoded, or waiting to be written, at any time.
  *
  * @author Elliot Kroo (elliot[at]kroo[dot]net)
  */
 public class GIFSequenceWriter {
+	private static final byte[] GIF_HEADER = {'G', 'I', 'F', '8', '9', 'a'};
+	private static final byte[] NETSCAPE_ID = {'N', 'E', 'T', 'S', 'C', 'A', 'P', 'E', '2', '.', '0'};
+	private static final byte[] COMMENT = {'C', 'r', 'e', 'a', 't', 'e', 'd', ' ', 'b', 'y', ' ', 'M', 'A', 'H'};
+
+	private final GIFWriterBackend backend;			//the encoder the frames are written with
+
 	private ImageWriter gifWriter;				//the GIF writer being used (default GIF writer)
 	private ImageWriteParam imageWriteParam;	//the description on how a writing stream should be encoded
 	private IIOMetadata imageMetaData;			//the image meta data from the image reader
+	private ImageTypeSpecifier imageTypeSpecifier;	//the image type metadata is created for
+	private IIOMetadata frameMetaData;			//the image meta data of the next frame
+	private final HashMap<Long, IIOMetadata> metaDataCache = new HashMap<Long, IIOMetadata>();	//frame metadata built so far, by offset, delay and disposal
+
+	private ImageOutputStream outputStream;		//the stream the native backend writes to
+	private int disposalCode;					//the disposal method of frames, as a GIF code
+	private int loop;							//the NETSCAPE loop count (0 loops forever)
+	private boolean started;					//whether the first frame has been written
+	private int left = GIFDefaultMetadata.X_OFFSET;	//x offset of the next frame
+	private int top = GIFDefaultMetadata.Y_OFFSET;	//y offset of the next frame
+	private final byte[] graphicControl = {0x21, (byte) 0xF9, 4, 0, 0, 0, GIFPalette.TRANSPARENT_INDEX, 0};	//graphic control extension of the next frame
+
+	private GIFLZWEncoder encoder;				//the LZW encoder of the native backend
+	private GIFFrameEncoder frameEncoder;		//encodes frames on the calling thread
+	private ColorQuantizer quantizer = new MedianCutQuantizer();	//picks the colors of frames with more than 255 colors
+	private QuantizerMode quantizerMode = QuantizerMode.BALANCED;	//the speed/quality trade-off of the quantizer
+	private DitherMode ditherMode = DitherMode.NONE;	//how frames with more than 255 colors are dithered
+	private GIFOutputBuffer frameBuffer;		//the blocks of the frame being written
+	private GIFGlobalPalette globalPalette;		//the global color table (null if every frame has a local one)
+	private GIFOutputBuffer deferredFrames;		//the frames written so far, held back until the global color table is complete
+	private ConcurrentLinkedQueue<byte[]> spareIndices;	//arrays frames are mapped onto the global color table in, to be reused
+	private int screenWidth, screenHeight;		//the size of the logical screen
+	private GIFFrameCache frameCache;			//frames encoded by earlier saves (null if every frame is encoded)
+
+	private int encodingThreads = 1;			//the number of threads frames are encoded on
+	private ExecutorService encodingPool;		//the worker threads (null if frames are encoded on the calling thread)
+	private ThreadLocal<GIFFrameEncoder> workerEncoders;	//the frame encoder of each worker thread
+	private ArrayDeque<Future<GIFOutputBuffer>> inFlight;	//the frames being encoded, in the order they are to be written
+	private ConcurrentLinkedQueue<GIFOutputBuffer> spareBuffers;	//buffers of frames already written, to be reused
 
 	/**
-	* Creates a new GifSequenceWriter
+	* Creates a new GifSequenceWriter, which writes frames with the GIF LZW encoder.
 	* 
 	* @param outputStream			The ImageOutputStream to be written to
 	* @param imageType 				One of the imageTypes specified in BufferedImage
 	* @param disposalMethod			How the GIF should deal with frame animation
 	* @param loopContinuously 		Whether the gif should loop repeatedly
-	* @throws IIOException if no gif ImageWriters are found
+	* @throws IOException if the writer can't be set up
 	*/
 	public GIFSequenceWriter(	ImageOutputStream outputStream,
 								int imageType, 
 								String disposalMethod,
 								boolean loopContinuously) throws IIOException, IOException {
-		// the method to create a writer
-		gifWriter = getWriter(); 
+		this(outputStream, imageType, disposalMethod, loopContinuously, GIFWriterBackend.NATIVE);
+	}
+
+	/**
+	* Creates a new GifSequenceWriter
+	*
+	* @param outputStream			The ImageOutputStream to be written to
+	* @param imageType 				One of the imageTypes specified in BufferedImage
+	* @param disposalMethod			How the GIF should deal with frame animation
+	* @param loopContinuously 		Whether the gif should loop repeatedly
+	* @param backend				The encoder to write the frames with
+	* @throws IIOException if the image I/O backend is picked and no gif ImageWriters are found
+	*/
+	public GIFSequenceWriter(	ImageOutputStream outputStream,
+								int imageType,
+								String disposalMethod,
+								boolean loopContinuously,
+								GIFWriterBackend backend) throws IIOException, IOException {
+		this.backend = backend;
+
+		// notifies gif to either run continuously or not continuously
+		this.loop = loopContinuously ? 0 : 1;
+		this.disposalCode = GIFInputOutputHelper.disposalCode(disposalMethod);
+
+		if (backend == GIFWriterBackend.NATIVE) {
+			this.outputStream = outputStream;
+			setGraphicControl(GIFDefaultMetadata.DELAY_TIME, this.disposalCode);
+			this.encoder = new GIFLZWEncoder();
+			this.frameEncoder = new GIFFrameEncoder(this.encoder, this.quantizer, this.quantizerMode, this.ditherMode);
+			this.frameBuffer = new GIFOutputBuffer();
+			return;
+		}
+
+		// leases a writer from the shared pool, which is given back on closing
+		gifWriter = ImageCodecPool.getDefault().leaseWriter("gif"); 
 		
 		// gets the default metadata of the GIF writer and the image type we are using to create the GIF.
 		// also details how the output stream will be encoded (as a GIF)
 		imageWriteParam = gifWriter.getDefaultWriteParam();
-		ImageTypeSpecifier imageTypeSpecifier = ImageTypeSpecifier.createFromBufferedImageType(imageType);
+		imageTypeSpecifier = ImageTypeSpecifier.createFromBufferedImageType(imageType);
 		
 		// gets the image metadata for every frame in the GIF
 		imageMetaData = gifWriter.getDefaultImageMetadata(imageTypeSpecifier, imageWriteParam);
@@ -77,15 +166,13 @@ public class GIFSequenceWriter {
 		child.setAttribute("applicationID", "NETSCAPE");
 		child.setAttribute("authenticationCode", "2.0");
 
-		// notifies gif to either run continuously or not continuously
-		int loop = loopContinuously ? 0 : 1;
-
 		// does something magical beyond my knowledge to tell GIF to loop
 		child.setUserObject(new byte[]{ 0x1, (byte) (loop & 0xFF), (byte) ((loop >> 8) & 0xFF)});
 		appExtensionsNode.appendChild(child);
 
 		// sets the changed tree metadata data back into the image metadata
 		imageMetaData.setFromTree(metaFormatName, root);
+		frameMetaData = imageMetaData;
 		
 		//the output stream which to output the GIF to
 		gifWriter.setOutput(outputStream);
@@ -99,7 +186,12 @@ public class GIFSequenceWriter {
 	 * @throws IOException if there is no way to write to the output stream
 	 */
 	public void writeToSequence(RenderedImage img) throws IOException {
-		gifWriter.writeToSequence(new IIOImage(img, null, imageMetaData), imageWriteParam);
+		if (this.backend == GIFWriterBackend.NATIVE) {
+			writeFrame(img);
+		}
+		else {
+			gifWriter.writeToSequence(new IIOImage(img, null, frameMetaData), imageWriteParam);
+		}
 	}
 	
 	/**
@@ -109,24 +201,85 @@ public class GIFSequenceWriter {
 	 * @throws IOException if there is no way to write to the output stream
 	 */
 	public void setImageOffsetDelay(Point offset, int delayTime) throws IIOException {
-		String metaFormatName = imageMetaData.getNativeMetadataFormatName();
+		setImageOffsetDelay(offset, delayTime, null);
+	}
+
+	/**
+	 * Sets the metadata for the offset of some frame, its delay and its disposal method in the GIF.
+	 * The native backend writes these straight into the frame's graphic control extension bytes;
+	 * the image I/O backend builds metadata once per distinct offset, delay and disposal method,
+	 * and reuses it for later frames.
+	 * @param offset The offset of the frame from top left corner.
+	 * @param delayTime The number of milliseconds this frame is to remain on-screen.
+	 * @param disposalMethod How the frame is disposed of, or null for the disposal method of the writer.
+	 * @throws IOException if there is no way to write to the output stream
+	 */
+	public void setImageOffsetDelay(Point offset, int delayTime, String disposalMethod) throws IIOException {
+		int disposal = disposalMethod == null ? this.disposalCode : GIFInputOutputHelper.disposalCode(disposalMethod);
+
+		if (this.backend == GIFWriterBackend.NATIVE) {
+			this.left = offset.x;
+			this.top = offset.y;
+			setGraphicControl(delayTime, disposal);
+			return;
+		}
+
+		long key = ((long) offset.x << 36) | ((long) offset.y << 20) | ((long) (delayTime / 10) << 3) | disposal;
+		IIOMetadata metaData = metaDataCache.get(key);
+		if (metaData == null) {
+			metaData = buildFrameMetaData(offset, delayTime, disposalMethod);
+			metaDataCache.put(key, metaData);
+		}
+		frameMetaData = metaData;
+	}
+
+	/**
+	 * Builds the image I/O metadata of a frame from the metadata set up for the writer.
+	 * @param offset The offset of the frame from top left corner.
+	 * @param delayTime The number of milliseconds this frame is to remain on-screen.
+	 * @param disposalMethod How the frame is disposed of, or null for the disposal method of the writer.
+	 * @return The frame's metadata.
+	 * @throws IIOException if the metadata can't be built
+	 */
+	private IIOMetadata buildFrameMetaData(Point offset, int delayTime, String disposalMethod) throws IIOException {
+		IIOMetadata metaData = gifWriter.getDefaultImageMetadata(imageTypeSpecifier, imageWriteParam);
+		String metaFormatName = metaData.getNativeMetadataFormatName();
 
-		// gets image metadata as a tree and that obtains the Image Descriptor Extension Node if it exists
+		// gets the writer's metadata as a tree and that obtains the Image Descriptor Extension Node if it exists
 		IIOMetadataNode root = (IIOMetadataNode) imageMetaData.getAsTree(metaFormatName);
 		IIOMetadataNode imageDescriptorNode = GIFInputOutputHelper.getNode(root, "ImageDescriptor");
 
 		imageDescriptorNode.setAttribute("imageLeftPosition", String.valueOf((int)offset.getX()));
 		imageDescriptorNode.setAttribute("imageTopPosition", String.valueOf((int)offset.getY()));
-		
+
 		// obtains the Graphics Control Extension Node if it exists
 		IIOMetadataNode graphicsControlExtensionNode = GIFInputOutputHelper.getNode(root, "GraphicControlExtension");
-		
+
 		graphicsControlExtensionNode.setAttribute("delayTime", Integer.toString(delayTime / 10));
-		
-		// sets the changed tree metadata data back into the image metadata
-		imageMetaData.setFromTree(metaFormatName, root);
-		
-		//System.err.println(imageDescriptorNode.getAttribute("imageLeftPosition"));
+		if (disposalMethod != null) {
+			graphicsControlExtensionNode.setAttribute("disposalMethod", disposalMethod);
+		}
+
+		// sets the changed tree metadata data into the frame's metadata
+		try {
+			metaData.setFromTree(metaFormatName, root);
+		}
+		catch (IIOInvalidTreeException e) {
+			throw new IIOException("Could not build frame metadata", e);
+		}
+		return metaData;
+	}
+
+	/**
+	 * Fills in the graphic control extension of the next frame written by the native backend.
+	 * @param delayTime The number of milliseconds the frame is to remain on-screen.
+	 * @param disposal The disposal method code of the frame.
+	 */
+	private void setGraphicControl(int delayTime, int disposal) {
+		int delay = delayTime / 10;
+		this.graphicControl[3] = (byte) ((disposal << 2) | 1); // no user input, transparent color
+		this.graphicControl[4] = (byte) delay;
+		this.graphicControl[5] = (byte) (delay >> 8);
 	}
 
 	/**
@@ -134,22 +287,431 @@ public class GIFSequenceWriter {
 	 * stream, just finishes off the GIF.
 	 */
 	public void close() throws IOException {
-		gifWriter.endWriteSequence();    
+		if (this.backend == GIFWriterBackend.NATIVE) {
+			try {
+				while (this.inFlight != null && !this.inFlight.isEmpty()) {
+					writeOldestFrame();
+				}
+			}
+			finally {
+				if (this.encodingPool != null) {
+					this.encodingPool.shutdownNow();
+					this.encodingPool = null;
+				}
+			}
+			if (this.deferredFrames != null) {
+				this.frameBuffer.reset();
+				writeHeader(this.frameBuffer);
+				this.frameBuffer.writeTo(this.outputStream);
+				this.deferredFrames.writeTo(this.outputStream);
+				this.deferredFrames = null;
+			}
+			this.outputStream.write(GIFDecoder.TRAILER);
+			this.outputStream.flush();
+			if (this.frameCache != null) {
+				this.frameCache.evictUnused();
+			}
+		}
+		else {
+			try {
+				gifWriter.endWriteSequence();
+			}
+			finally {
+				ImageCodecPool.getDefault().releaseWriter(gifWriter);
+				gifWriter = null;
+			}
+		}
 	}
 
 	/**
-	 * Returns the first available GIF ImageWriter using ImageIO.getImageWritersBySuffix("gif").
-	 * 
-	 * @return a GIF ImageWriter object
-	 * @throws IIOException if no GIF image writers are returned
+	 * Gives up on the GIF without finishing it, for when a save fails or is cancelled part way.
+	 * Frames still being encoded are dropped, and the worker threads are stopped. Nothing more is
+	 * written to the stream, which is left holding a partial GIF.
 	 */
-	private static ImageWriter getWriter() throws IIOException {
-		Iterator<ImageWriter> iter = ImageIO.getImageWritersBySuffix("gif");
-		if(!iter.hasNext()) { // makes sure a GIF Image Write exists before returning it
-			throw new IIOException("No GIF Image Writers Exist");
-		} else {
-			return iter.next();
+	public void abort() {
+		if (this.encodingPool != null) {
+			this.encodingPool.shutdownNow();
+			this.encodingPool = null;
+		}
+		if (this.inFlight != null) {
+			this.inFlight.clear();
+		}
+		this.deferredFrames = null;
+		if (this.gifWriter != null) {
+			ImageCodecPool.getDefault().releaseWriter(this.gifWriter);
+			this.gifWriter = null;
 		}
 	}
-	
+
+	/**
+	 * Returns the LZW encoder the native backend writes frames with, so that its strategies can be tuned.
+	 * Worker threads copy its strategies when they start, so they should be set before the first frame.
+	 * @return The LZW encoder, or null if the frames are written through image I/O.
+	 */
+	public GIFLZWEncoder getEncoder() {
+		return this.encoder;
+	}
+
+	/**
+	 * Sets the number of threads the native backend encodes frames on. With more than one thread,
+	 * frames are encoded on a pool of worker threads, which is shut down when this writer is closed.
+	 * Has no effect on the image I/O backend, or once the first frame has been written.
+	 * @param threads The number of threads to encode frames on (1 encodes them on the calling thread).
+	 */
+	public void setEncodingThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("There must be at least one encoding thread.");
+		}
+		if (!this.started) {
+			this.encodingThreads = threads;
+		}
+	}
+
+	/**
+	 * Returns the number of threads the native backend encodes frames on.
+	 * @return The number of encoding threads.
+	 */
+	public int getEncodingThreads() {
+		return this.encodingThreads;
+	}
+
+	/**
+	 * Sets whether the native backend shares one global color table between frames. Every frame
+	 * whose colors still fit in the table is mapped onto it as it is written, and is written without
+	 * a local color table; the other frames get local color tables. The table is only complete once
+	 * the last frame is written, so the frames are held back in memory and written out on closing.
+	 * Has no effect on the image I/O backend, or once the first frame has been written.
+	 * @param global Whether to write a global color table.
+	 */
+	public void setGlobalColorTable(boolean global) {
+		if (this.backend != GIFWriterBackend.NATIVE || this.started) {
+			return;
+		}
+		this.globalPalette = global ? new GIFGlobalPalette() : null;
+	}
+
+	/**
+	 * Returns whether the native backend shares one global color table between frames.
+	 * @return Whether a global color table is written.
+	 */
+	public boolean usesGlobalColorTable() {
+		return this.globalPalette != null;
+	}
+
+	/**
+	 * Sets the cache of encoded frames the native backend copies frames from, if they were encoded
+	 * with the same settings before (usually by an earlier save of the same animation), and adds
+	 * the frames it encodes to. Frames not written by this writer are dropped from the cache on closing.
+	 * Has no effect on the image I/O backend, or once the first frame has been written.
+	 * @param cache The cache of encoded frames, or null to encode every frame.
+	 */
+	public void setFrameCache(GIFFrameCache cache) {
+		if (this.backend != GIFWriterBackend.NATIVE || this.started) {
+			return;
+		}
+		this.frameCache = cache;
+	}
+
+	/**
+	 * Returns the cache of encoded frames the native backend copies frames from.
+	 * @return The frame cache, or null if every frame is encoded.
+	 */
+	public GIFFrameCache getFrameCache() {
+		return this.frameCache;
+	}
+
+	/**
+	 * Sets the quantizer that picks the colors of frames with more than 255 colors on the native backend.
+	 * Has no effect once the first frame has been written.
+	 * @param quantizer The color quantizer.
+	 */
+	public void setQuantizer(ColorQuantizer quantizer) {
+		if (quantizer == null) {
+			throw new IllegalArgumentException("The quantizer cannot be null.");
+		}
+		if (!this.started) {
+			this.quantizer = quantizer;
+			if (this.frameEncoder != null) {
+				this.frameEncoder = new GIFFrameEncoder(this.encoder, this.quantizer, this.quantizerMode, this.ditherMode);
+			}
+		}
+	}
+
+	/**
+	 * Returns the quantizer that picks the colors of frames with more than 255 colors.
+	 * @return The color quantizer.
+	 */
+	public ColorQuantizer getQuantizer() {
+		return this.quantizer;
+	}
+
+	/**
+	 * Sets the speed/quality trade-off of the quantizer on the native backend.
+	 * Has no effect once the first frame has been written.
+	 * @param mode The quantizer mode.
+	 */
+	public void setQuantizerMode(QuantizerMode mode) {
+		if (mode == null) {
+			throw new IllegalArgumentException("The quantizer mode cannot be null.");
+		}
+		if (!this.started) {
+			this.quantizerMode = mode;
+			if (this.frameEncoder != null) {
+				this.frameEncoder = new GIFFrameEncoder(this.encoder, this.quantizer, this.quantizerMode, this.ditherMode);
+			}
+		}
+	}
+
+	/**
+	 * Returns the speed/quality trade-off of the quantizer.
+	 * @return The quantizer mode.
+	 */
+	public QuantizerMode getQuantizerMode() {
+		return this.quantizerMode;
+	}
+
+	/**
+	 * Sets how frames with more than 255 colors are dithered onto their quantized palette on the native backend.
+	 * Frames whose colors all fit in a color table are never dithered.
+	 * Has no effect once the first frame has been written.
+	 * @param mode The dither mode.
+	 */
+	public void setDitherMode(DitherMode mode) {
+		if (mode == null) {
+			throw new IllegalArgumentException("The dither mode cannot be null.");
+		}
+		if (!this.started) {
+			this.ditherMode = mode;
+			if (this.frameEncoder != null) {
+				this.frameEncoder = new GIFFrameEncoder(this.encoder, this.quantizer, this.quantizerMode, this.ditherMode);
+			}
+		}
+	}
+
+	/**
+	 * Returns how frames with more than 255 colors are dithered.
+	 * @return The dither mode.
+	 */
+	public DitherMode getDitherMode() {
+		return this.ditherMode;
+	}
+
+	//================================================================================
+	// Region: Native Backend
+	//================================================================================
+	/**
+	 * Writes a frame as a graphic control extension, an image descriptor, a local color table
+	 * (unless the frame is mapped onto the global color table) and LZW image data.
+	 * Writes the header first if this is the first frame and there is no global color table.
+	 * With several encoding threads, the frame is handed to a worker thread, and it is written
+	 * once it and every frame before it are encoded.
+	 * @param img The frame to write.
+	 * @throws IOException if there is no way to write to the output stream
+	 */
+	private void writeFrame(final RenderedImage img) throws IOException {
+		if (!this.started) {
+			this.screenWidth = this.left + img.getWidth();
+			this.screenHeight = this.top + img.getHeight();
+			if (this.globalPalette == null) {
+				this.frameBuffer.reset();
+				writeHeader(this.frameBuffer);
+				this.frameBuffer.writeTo(this.outputStream);
+			}
+			else { // the header is written on closing, once the global color table is complete
+				this.deferredFrames = new GIFOutputBuffer();
+				this.spareIndices = new ConcurrentLinkedQueue<byte[]>();
+			}
+			this.started = true;
+			if (this.encodingThreads > 1) {
+				startEncodingPool();
+			}
+		}
+
+		// keeps a bounded number of frames in flight, so that frames don't pile up in memory
+		while (this.inFlight != null && this.inFlight.size() >= 2 * this.encodingThreads) {
+			writeOldestFrame();
+		}
+
+		if (this.globalPalette != null && writeGlobalFrame(img)) {
+			return;
+		}
+
+		if (this.encodingPool == null) {
+			this.frameBuffer.reset();
+			this.frameEncoder.encode(img, this.left, this.top, this.graphicControl, this.frameCache, this.frameBuffer);
+			emit(this.frameBuffer);
+			return;
+		}
+
+		final int left = this.left, top = this.top;
+		final byte[] graphicControl = this.graphicControl.clone();
+		this.inFlight.add(this.encodingPool.submit(new Callable<GIFOutputBuffer>() {
+			@Override
+			public GIFOutputBuffer call() {
+				GIFOutputBuffer out = spareBuffers.poll();
+				if (out == null) {
+					out = new GIFOutputBuffer();
+				}
+				out.reset();
+				workerEncoders.get().encode(img, left, top, graphicControl, frameCache, out);
+				return out;
+			}
+		}));
+	}
+
+	/**
+	 * Maps a frame onto the global color table, and writes it without a local color table.
+	 * The mapping is done on the calling thread, since the table grows in the order frames are written.
+	 * @param img The frame to write.
+	 * @return false if the colors of the frame don't fit in the global color table, in which case
+	 * nothing was written.
+	 * @throws IOException if there is no way to write to the output stream
+	 */
+	private boolean writeGlobalFrame(RenderedImage img) throws IOException {
+		final int width = img.getWidth(), height = img.getHeight();
+		int numPixels = width * height;
+		byte[] mapped = this.spareIndices.poll();
+		if (mapped == null || mapped.length < numPixels) {
+			mapped = new byte[numPixels];
+		}
+		if (!this.globalPalette.add(this.frameEncoder.getPixels(img), numPixels, mapped)) {
+			this.spareIndices.add(mapped);
+			return false;
+		}
+
+		final byte[] indices = mapped;
+		final int bits = this.globalPalette.getBits();
+		if (this.encodingPool == null) {
+			this.frameBuffer.reset();
+			this.frameEncoder.encodeIndexed(indices, bits, width, height, this.left, this.top, this.graphicControl,
+											this.frameCache, this.frameBuffer);
+			emit(this.frameBuffer);
+			this.spareIndices.add(indices);
+			return true;
+		}
+
+		final int left = this.left, top = this.top;
+		final byte[] graphicControl = this.graphicControl.clone();
+		this.inFlight.add(this.encodingPool.submit(new Callable<GIFOutputBuffer>() {
+			@Override
+			public GIFOutputBuffer call() {
+				GIFOutputBuffer out = spareBuffers.poll();
+				if (out == null) {
+					out = new GIFOutputBuffer();
+				}
+				out.reset();
+				workerEncoders.get().encodeIndexed(indices, bits, width, height, left, top, graphicControl, frameCache, out);
+				spareIndices.add(indices);
+				return out;
+			}
+		}));
+		return true;
+	}
+
+	/**
+	 * Writes the blocks of a frame to the output stream, or holds them back until closing if
+	 * there is a global color table. Frames written straight away are flushed through to the
+	 * stream under the image output stream, so a reader at the other end gets each frame as soon
+	 * as it is written, and the image output stream needn't cache the whole file.
+	 * @throws IOException if there is no way to write to the output stream
+	 */
+	private void emit(GIFOutputBuffer frame) throws IOException {
+		if (this.deferredFrames != null) {
+			this.deferredFrames.write(frame);
+		}
+		else {
+			frame.writeTo(this.outputStream);
+			this.outputStream.flush();
+		}
+	}
+
+	/**
+	 * Starts the worker threads frames are encoded on. Each worker gets its own frame encoder,
+	 * with the same strategies as the LZW encoder of this writer, and the same quantizer and dither mode.
+	 */
+	private void startEncodingPool() {
+		final LZWClearStrategy clearStrategy = this.encoder.getClearStrategy();
+		final LZWCodeSizeStrategy codeSizeStrategy = this.encoder.getCodeSizeStrategy();
+		final ColorQuantizer quantizer = this.quantizer;
+		final QuantizerMode quantizerMode = this.quantizerMode;
+		final DitherMode ditherMode = this.ditherMode;
+
+		this.workerEncoders = new ThreadLocal<GIFFrameEncoder>() {
+			@Override
+			protected GIFFrameEncoder initialValue() {
+				return new GIFFrameEncoder(new GIFLZWEncoder(clearStrategy, codeSizeStrategy), quantizer, quantizerMode,
+										ditherMode);
+			}
+		};
+		this.inFlight = new ArrayDeque<Future<GIFOutputBuffer>>();
+		this.spareBuffers = new ConcurrentLinkedQueue<GIFOutputBuffer>();
+		this.encodingPool = Executors.newFixedThreadPool(this.encodingThreads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "GIF frame encoder");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Waits for the oldest frame in flight to be encoded, and writes it.
+	 * @throws IOException if there is no way to write to the output stream, or the frame could not be encoded
+	 */
+	private void writeOldestFrame() throws IOException {
+		Future<GIFOutputBuffer> oldest = this.inFlight.poll();
+		GIFOutputBuffer out;
+		try {
+			out = oldest.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while encoding GIF frames.");
+		}
+		catch (ExecutionException e) {
+			throw new IOException("Could not encode GIF frame: " + e.getCause(), e.getCause());
+		}
+		emit(out);
+		this.spareBuffers.add(out);
+	}
+
+	/**
+	 * Writes the header, the logical screen descriptor and the extensions that come before the first frame.
+	 */
+	private void writeHeader(GIFOutputBuffer out) {
+		boolean global = this.globalPalette != null && this.globalPalette.getNumberOfFrames() > 0;
+		out.write(GIF_HEADER, 0, GIF_HEADER.length);
+		out.writeShort(this.screenWidth);
+		out.writeShort(this.screenHeight);
+		if (global) {
+			int bits = this.globalPalette.getBits();
+			out.write(0x80 | ((bits - 1) << 4) | (bits - 1));
+		}
+		else {
+			out.write(0);	// no global color table
+		}
+		out.write(0);	// background color index
+		out.write(0);	// no pixel aspect ratio
+		if (global) {
+			this.globalPalette.writeTo(out);
+		}
+
+		// NETSCAPE2.0 looping extension
+		out.write(0x21);
+		out.write(0xFF);
+		out.write(NETSCAPE_ID.length);
+		out.write(NETSCAPE_ID, 0, NETSCAPE_ID.length);
+		out.write(3);
+		out.write(1);
+		out.writeShort(this.loop);
+		out.write(0);
+
+		// comment on what created the gif
+		out.write(0x21);
+		out.write(0xFE);
+		out.write(COMMENT.length);
+		out.write(COMMENT, 0, COMMENT.length);
+		out.write(0);
+	}
 }
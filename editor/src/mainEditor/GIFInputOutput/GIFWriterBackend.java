@@ -0,0 +1,17 @@
+package mainEditor.GIFInputOutput;
+
+/**
+ * The enumeration of encoders a GIF sequence writer can write its frames with.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public enum GIFWriterBackend {
+	/** Writes the GIF blocks directly, encoding the frames with the GIF LZW encoder. */
+	NATIVE,
+	/** Writes the frames through the default image I/O GIF writer. */
+	IMAGE_IO;
+}
@@ -0,0 +1,262 @@
+package mainEditor.GIFInputOutput;
+
+import java.awt.image.RenderedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.spi.ImageWriterSpi;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * A pool of image readers and writers, so that documents opened and saved on several threads
+ * at once neither look codecs up in the image I/O registry every time nor share one.
+ * <p>
+ * The registry is asked for the provider of each format only the first time the format is used.
+ * A reader or writer is leased by one thread, which has it to itself until it is released; released
+ * codecs are reset (dropping their input or output, listeners and locale) and kept for the next
+ * lease, up to a few per format, beyond which they are disposed of. Leasing and releasing may be
+ * done from any number of threads at once.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class ImageCodecPool {
+	private static final int DEFAULT_MAX_IDLE = Runtime.getRuntime().availableProcessors();
+	private static ImageCodecPool defaultPool;		// the pool shared by the editor, made when first needed
+
+	/**
+	 * The idle codecs of one provider.
+	 */
+	private static class Idle<T> {
+		final Queue<T> codecs = new ConcurrentLinkedQueue<T>();
+		final AtomicInteger size = new AtomicInteger();	// the size of the queue, which is slow to count
+	}
+
+	private final int maxIdle;		// the most released codecs kept per format
+	private final ConcurrentHashMap<String, ImageReaderSpi> readerProviders = new ConcurrentHashMap<String, ImageReaderSpi>();
+	private final ConcurrentHashMap<String, ImageWriterSpi> writerProviders = new ConcurrentHashMap<String, ImageWriterSpi>();
+	private final ConcurrentHashMap<ImageReaderSpi, Idle<ImageReader>> idleReaders = new ConcurrentHashMap<ImageReaderSpi, Idle<ImageReader>>();
+	private final ConcurrentHashMap<ImageWriterSpi, Idle<ImageWriter>> idleWriters = new ConcurrentHashMap<ImageWriterSpi, Idle<ImageWriter>>();
+	private final AtomicInteger created = new AtomicInteger();	// codecs made, rather than reused
+	private final AtomicInteger reused = new AtomicInteger();	// leases served by a released codec
+
+	/**
+	 * Constructs a pool.
+	 * @param maxIdle The most released readers, and writers, kept for each format.
+	 */
+	public ImageCodecPool(int maxIdle) {
+		if (maxIdle < 0) {
+			throw new IllegalArgumentException("The number of idle codecs kept cannot be negative.");
+		}
+		this.maxIdle = maxIdle;
+	}
+
+	/**
+	 * Returns the pool shared by the editor, which keeps as many codecs per format as there are cores.
+	 * @return The default pool.
+	 */
+	public static synchronized ImageCodecPool getDefault() {
+		if (defaultPool == null) {
+			defaultPool = new ImageCodecPool(DEFAULT_MAX_IDLE);
+		}
+		return defaultPool;
+	}
+
+	//================================================================================
+	// Region: Readers
+	//================================================================================
+	/**
+	 * Leases a reader of a format, which the calling thread has to itself until it is released.
+	 * @param format The informal name of the format, such as "gif" or "png".
+	 * @return A reader with no input.
+	 * @throws IIOException if no reader can read the format.
+	 * @throws IOException if the reader can't be made.
+	 */
+	public ImageReader leaseReader(String format) throws IOException {
+		String key = format.toLowerCase(Locale.ROOT);
+		ImageReaderSpi spi = this.readerProviders.get(key);
+		if (spi == null) {
+			Iterator<ImageReader> it = ImageIO.getImageReadersByFormatName(key);
+			if (!it.hasNext()) {
+				throw new IIOException("No image reader for " + format + ".");
+			}
+			ImageReader reader = it.next(); // the first reader is made by the lookup anyway, so it is handed out
+			spi = reader.getOriginatingProvider();
+			if (spi != null) { // a reader with no provider can't be made again, so the format is looked up each time
+				this.readerProviders.putIfAbsent(key, spi);
+			}
+			this.created.incrementAndGet();
+			return reader;
+		}
+
+		ImageReader reader = poll(this.idleReaders.get(spi));
+		if (reader != null) {
+			return reader;
+		}
+		this.created.incrementAndGet();
+		return spi.createReaderInstance();
+	}
+
+	/**
+	 * Releases a leased reader, which the calling thread must not use afterwards.
+	 * @param reader The reader, or null (for which nothing is done).
+	 */
+	public void releaseReader(ImageReader reader) {
+		if (reader == null) {
+			return;
+		}
+		reader.reset();
+		ImageReaderSpi spi = reader.getOriginatingProvider();
+		if (spi == null || !offer(idle(this.idleReaders, spi), reader)) {
+			reader.dispose();
+		}
+	}
+
+	//================================================================================
+	// Region: Writers
+	//================================================================================
+	/**
+	 * Leases a writer of a format, which the calling thread has to itself until it is released.
+	 * @param format The informal name of the format, such as "gif" or "png".
+	 * @return A writer with no output.
+	 * @throws IIOException if no writer can write the format.
+	 * @throws IOException if the writer can't be made.
+	 */
+	public ImageWriter leaseWriter(String format) throws IOException {
+		String key = format.toLowerCase(Locale.ROOT);
+		ImageWriterSpi spi = this.writerProviders.get(key);
+		if (spi == null) {
+			Iterator<ImageWriter> it = ImageIO.getImageWritersByFormatName(key);
+			if (!it.hasNext()) {
+				throw new IIOException("No image writer for " + format + ".");
+			}
+			ImageWriter writer = it.next();
+			spi = writer.getOriginatingProvider();
+			if (spi != null) {
+				this.writerProviders.putIfAbsent(key, spi);
+			}
+			this.created.incrementAndGet();
+			return writer;
+		}
+
+		ImageWriter writer = poll(this.idleWriters.get(spi));
+		if (writer != null) {
+			return writer;
+		}
+		this.created.incrementAndGet();
+		return spi.createWriterInstance();
+	}
+
+	/**
+	 * Releases a leased writer, which the calling thread must not use afterwards.
+	 * @param writer The writer, or null (for which nothing is done).
+	 */
+	public void releaseWriter(ImageWriter writer) {
+		if (writer == null) {
+			return;
+		}
+		writer.reset();
+		ImageWriterSpi spi = writer.getOriginatingProvider();
+		if (spi == null || !offer(idle(this.idleWriters, spi), writer)) {
+			writer.dispose();
+		}
+	}
+
+	/**
+	 * Writes a single image with a pooled writer, as {@link ImageIO#write(RenderedImage, String, OutputStream)}
+	 * does, but failing if the format can't be written rather than writing nothing.
+	 * @param img The image to write.
+	 * @param format The informal name of the format, such as "png".
+	 * @param out Where to write the image, which is left open.
+	 * @throws IIOException if no writer can write the format.
+	 * @throws IOException if any I/O errors occur.
+	 */
+	public void write(RenderedImage img, String format, OutputStream out) throws IOException {
+		ImageWriter writer = leaseWriter(format);
+		try {
+			ImageOutputStream stream = ImageIO.createImageOutputStream(out);
+			if (stream == null) {
+				throw new IIOException("Cannot write to the output stream.");
+			}
+			try {
+				writer.setOutput(stream);
+				writer.write(img);
+			}
+			finally {
+				stream.close(); // flushes into the output stream, without closing it
+			}
+		}
+		finally {
+			releaseWriter(writer);
+		}
+	}
+
+	//================================================================================
+	// Region: Idle Codecs
+	//================================================================================
+	private <T> T poll(Idle<T> idle) {
+		if (idle == null) {
+			return null;
+		}
+		T codec = idle.codecs.poll();
+		if (codec != null) {
+			idle.size.decrementAndGet();
+			this.reused.incrementAndGet();
+		}
+		return codec;
+	}
+
+	private <T> boolean offer(Idle<T> idle, T codec) {
+		if (idle.size.incrementAndGet() > this.maxIdle) {
+			idle.size.decrementAndGet();
+			return false;
+		}
+		idle.codecs.add(codec);
+		return true;
+	}
+
+	private static <K, T> Idle<T> idle(ConcurrentHashMap<K, Idle<T>> map, K spi) {
+		Idle<T> idle = map.get(spi);
+		if (idle == null) {
+			Idle<T> made = new Idle<T>();
+			idle = map.putIfAbsent(spi, made);
+			if (idle == null) {
+				idle = made;
+			}
+		}
+		return idle;
+	}
+
+	//================================================================================
+	// Region: Getters
+	//================================================================================
+	/**
+	 * Returns the number of readers and writers made by the pool, rather than reused.
+	 * @return The number of codecs made.
+	 */
+	public int getCreated() {
+		return this.created.get();
+	}
+
+	/**
+	 * Returns the number of leases served by a released reader or writer.
+	 * @return The number of codecs reused.
+	 */
+	public int getReused() {
+		return this.reused.get();
+	}
+}
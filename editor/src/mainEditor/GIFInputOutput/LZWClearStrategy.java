@@ -0,0 +1,17 @@
+package mainEditor.GIFInputOutput;
+
+/**
+ * The enumeration of ways the GIF LZW encoder can deal with its code table filling up.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public enum LZWClearStrategy {
+	/** Sends a clear code and starts a new table as soon as the table is full. */
+	WHEN_FULL,
+	/** Keeps encoding with the full table, and only sends a clear code once compression gets worse. */
+	DEFERRED;
+}
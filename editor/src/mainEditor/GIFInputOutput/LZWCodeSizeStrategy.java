@@ -0,0 +1,34 @@
+package mainEditor.GIFInputOutput;
+
+/**
+ * The enumeration of ways the GIF LZW encoder can pick the minimum code size of a frame.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public enum LZWCodeSizeStrategy {
+	/** Uses the fewest bits that can hold every index of the frame's color table (at least 2). */
+	MINIMUM {
+		@Override
+		public int minCodeSize(int paletteBits) {
+			return Math.max(2, paletteBits);
+		}
+	},
+	/** Always uses 8 bits, whatever the size of the color table. */
+	FIXED {
+		@Override
+		public int minCodeSize(int paletteBits) {
+			return 8;
+		}
+	};
+
+	/**
+	 * Returns the LZW minimum code size to use for a frame.
+	 * @param paletteBits The number of bits needed to hold every index of the frame's color table.
+	 * @return The LZW minimum code size.
+	 */
+	public abstract int minCodeSize(int paletteBits);
+}
@@ -4,21 +4,45 @@ import java.awt.Dimension;
 import java.awt.Window;
 // $Id: ImageContents.java,v 1.0 2012/10/04 13:57:18 dalamb Exp $
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
 import java.io.*;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Observable;
+import java.util.Set;
 
 import javax.imageio.ImageIO;
 import javax.imageio.ImageReader;
+import javax.swing.SwingUtilities;
 
 //import java.util.*;
 import ca.queensu.cs.dal.edfmwk.doc.DocumentException;
+import mainEditor.GIFInputOutput.ByteBufferImageInputStream;
+import mainEditor.GIFInputOutput.GIFBlockIndex;
+import mainEditor.GIFInputOutput.GIFDecoder;
+import mainEditor.GIFInputOutput.GIFFrameCache;
+import mainEditor.GIFInputOutput.GIFFrameOptimizer;
+import mainEditor.GIFInputOutput.GIFIndexStore;
 import mainEditor.GIFInputOutput.GIFSequenceReader;
 import mainEditor.GIFInputOutput.GIFSequenceWriter;
+import mainEditor.GIFInputOutput.ImageCodecPool;
+import mainEditor.frameStore.CompositeFrameSource;
+import mainEditor.frameStore.DecodedFrameSource;
+import mainEditor.frameStore.FrameCompactor;
+import mainEditor.frameStore.FrameSource;
+import mainEditor.frameStore.OffHeapFrameStore;
 import mainEditor.observerObject.ObservedState;
 import mainEditor.observerObject.ObserverNotice;
+import mainEditor.quantizer.DitherMode;
 
 /**
  * Internal representation of an image document.
@@ -31,9 +55,19 @@ public class ImageContents extends Observable{
     private ArrayList<ImageFrameData> changedImageData;	// The array list of changed image frame data 
 	private String disposalMethod = "none";				// The way the GIF handles frame animation
     private String currExtension = "gif";				// extension of the file originally from source
+    private final GIFFrameCache frameCache = new GIFFrameCache();	// frames encoded by the last save, reused by the next
+    private DitherMode ditherMode = DitherMode.NONE;	// how frames with too many colors for a GIF are dithered on saving
+    private int encodingThreads = Runtime.getRuntime().availableProcessors();	// threads GIF frames are encoded on when saving
+    private long frameMemoryBudget = OffHeapFrameStore.DEFAULT_OFF_HEAP_BUDGET;	// bytes of frames kept off the heap before spilling to disk
+    private OffHeapFrameStore pixelStore = newFrameStore();	// the pixels of frames held by the document, off the heap
+    private long cacheMemoryBudget = DEFAULT_CACHE_MEMORY_BUDGET;	// bytes of produced frames cached on the heap
+    private volatile Set<FrameSource> frameSources;		// the sources the frames are produced from, as of the last change
+    private boolean closed;								// whether the frames of the document have been released
     
     private int DEFAULT_WIDTH = 500;					// default width of blank image
     private int DEFAULT_HEIGHT = 500;					// default height of blank image
+    private static final int HEADER_LENGTH = 16;		// bytes of a file its type is guessed from
+    public static final long DEFAULT_CACHE_MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 4;	// default bytes of produced frames cached
     
 
     /**
@@ -45,7 +79,10 @@ public class ImageContents extends Observable{
     	this.imageData = new ArrayList<ImageFrameData>();
     	BufferedImage temp = BufferedImageHelper.getNewImageARGB(DEFAULT_WIDTH, DEFAULT_HEIGHT);
     	imageData.add(0, new ImageFrameData(temp, new Dimension (DEFAULT_WIDTH, DEFAULT_HEIGHT)));
+    	storeHeldFrames(this.imageData, this.pixelStore);
     	this.changedImageData = this.imageData;
+    	this.frameSources = CompositeFrameSource.getSources(this.imageData);
+    	MemoryBudget.getDefault().register(this);
     	
     	setChanged();
     } // end constructor
@@ -55,6 +92,11 @@ public class ImageContents extends Observable{
     //================================================================================
     /**
      * Reads the entire document, and closes the stream from which it is read.
+     * For animations, only the metadata of each frame is read now; the pixels of a frame
+     * are decoded the first time the frame is needed, by a {@link GIFDecoder} if possible.
+     * <p>
+     * The stream is copied into a temporary file, which is then opened as {@link #open(Path)} does,
+     * so the bytes of the document are never held on the heap.
      * @param in Where to read the document from.
      * @throws IOException if any I/O errors occur, in which case it will have
      * closed the stream.
@@ -62,101 +104,368 @@ public class ImageContents extends Observable{
     public void open(InputStream in) throws IOException
     {
     	//System.err.println("Open...");	
-    	this.currExtension = URLConnection.guessContentTypeFromStream(in);
+    	Path temp = Files.createTempFile("document", ".tmp");
+    	try {
+    		try {
+    			Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+    		}
+    		finally {
+    			in.close();
+    		}
+    		open(temp);
+    	}
+    	finally {
+    		// frames are decoded from the mapping, which outlives the file where the file system allows it
+    		try {
+    			Files.delete(temp);
+    		}
+    		catch (IOException e) { // still mapped, so it goes when the editor exits
+    			temp.toFile().deleteOnExit();
+    		}
+    	}
+    } // end method open
+    
+    /**
+     * Reads the entire document from a file, which is mapped into memory rather than read.
+     * Frames are decoded straight from the mapped file, so opening a large animation neither
+     * copies the file onto the heap nor caches it in a temporary file.
+     * @param path The file to read the document from.
+     * @throws IOException if any I/O errors occur, or the file is too large to be mapped.
+     */
+    public void open(Path path) throws IOException
+    {
+    	open(path, null);
+    } // end method open
+    
+    /**
+     * Reads the entire document from a file, as {@link #open(Path)} does, reporting progress
+     * to the observers with {@link ObservedState#OPEN_PROGRESS} notices as frames are read.
+     * If the task is cancelled, or the file can't be read, the document is left as it was;
+     * a cancelled open is reported with a {@link ObservedState#CANCEL} notice.
+     * <p>
+     * With a task, the open runs on a thread other than the event dispatch thread, which owns the
+     * document: the frames are read into a new frame store on the calling thread, and only handed
+     * to the document later on the event dispatch thread (unless the task is cancelled meanwhile).
+     * The document is then changed, and the observers told, some time after this returns.
+     * @param path The file to read the document from.
+     * @param task The task the open is run by, or null if it can't be cancelled (and reports no progress).
+     * @throws InterruptedIOException if the task was cancelled.
+     * @throws IOException if any I/O errors occur, or the file is too large to be mapped.
+     */
+    public void open(Path path, ImageTask task) throws IOException
+    {
+    	ByteBuffer data;
+    	FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    	try {
+    		if (channel.size() > Integer.MAX_VALUE) {
+    			throw new IOException("The file is too large to open: " + path);
+    		}
+    		// the mapping stays valid once the channel is closed
+    		data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    	}
+    	finally {
+    		channel.close();
+    	}
+    	
+    	// sniffs the type from the magic bytes at the start of the mapped file
+    	byte[] header = new byte[Math.min(HEADER_LENGTH, data.remaining())];
+    	data.duplicate().get(header);
+    	String contentType = URLConnection.guessContentTypeFromStream(new ByteArrayInputStream(header));
+    	
+    	try {
+    		open(data, contentType, task);
+    	}
+    	catch (InterruptedIOException e) {
+    		notifyCancelled(task);
+    		throw e;
+    	}
+    } // end method open
+    
+    /**
+     * Reads the entire document from the bytes of a file.
+     * @param data The bytes of the file. The buffer is not copied, and frames are decoded from it
+     * 				when needed, so it must not be changed afterwards.
+     * @param contentType The content type of the file, as guessed from its first bytes.
+     * @param task The task the open is run by, or null.
+     * @throws InterruptedIOException if the task was cancelled.
+     * @throws IOException if any I/O errors occur.
+     */
+    private void open(ByteBuffer data, String contentType, ImageTask task) throws IOException
+    {
+    	// the document is only changed once the whole file has been read, so a failed or cancelled
+    	// open leaves it as it was
+    	String extension = contentType;
     	
-    	if (this.currExtension == null) {
+    	if (extension == null) {
     		//    throw new IOException(e);
     		throw new IOException("CANNOT GUESS/GET IMAGE EXTENSION");
     	}
     	
     	//truncates file extension to remove image
-    	this.currExtension = this.currExtension.substring(this.currExtension.indexOf("/")+1);	
+    	extension = extension.substring(extension.indexOf("/")+1);	
     	
-    	//System.err.println(this.currExtension);
+    	//System.err.println(extension);
     	
-    	//image reader for doing imagey things (reading frames of gif, etc)
-    	ImageReader ir = (ImageReader)ImageIO.getImageReadersByFormatName(this.currExtension).next();
-    	ir.setInput(ImageIO.createImageInputStream(in));
-        
-    	// number of frames in the GIF
-        int numImages = ir.getNumImages(true);
-        ImageFrameData frameData;
+    	//image reader for doing imagey things (reading frames of gif, etc), reading straight from the bytes;
+    	//leased from the shared pool, and given back unless the frames of the file are decoded by it later
+    	ImageCodecPool codecPool = ImageCodecPool.getDefault();
+    	ImageReader ir = codecPool.leaseReader(extension);
+    	boolean keepReader = false;
+    	ArrayList<ImageFrameData> frames = new ArrayList<ImageFrameData>();
+    	String disposal = null;		// a single image keeps the document's disposal method
+    	OffHeapFrameStore store = newFrameStore();
+    	boolean read = false;
+    	try {
+    		ir.setInput(new ByteBufferImageInputStream(data));
         
-        // if there are more than 0 frames, create new image frame data array
-        if (numImages > 0) {
-        	this.imageData = new ArrayList<ImageFrameData>();
-        }
+    		// decodes GIFs straight from their bytes, with a block index kept from an earlier open if there
+    		// is one; falls back to the image reader if the decoder cannot read the GIF
+    		GIFDecoder decoder = null;
+    		if (extension.equals("gif")) {
+    			// small GIFs are indexed about as fast as a sidecar is read, so only large ones are kept
+    			boolean keepIndex = data.remaining() >= GIFIndexStore.MIN_FILE_SIZE;
+    			GIFIndexStore indexStore = GIFIndexStore.getDefault();
+    			GIFBlockIndex index = keepIndex ? indexStore.load(data) : null;
+    			try {
+    				decoder = new GIFDecoder(data, index);
+    				if (decoder.getNumberOfFrames() == 0) { // nothing the decoder could read
+    					decoder = null;
+    				}
+    				else if (keepIndex && index == null) {
+    					indexStore.save(data, decoder.getBlockIndex());
+    				}
+    			}
+    			catch (IOException e) {
+    				//System.err.println("Falling back to image reader: " + e.getLocalizedMessage());
+    			}
+    		}
+    	
+    		// number of frames in the GIF
+        	int numImages = decoder != null ? decoder.getNumberOfFrames() : ir.getNumImages(true);
+        	ImageFrameData frameData;
+        	notifyProgress(ObservedState.OPEN_PROGRESS, 0, numImages, task);
         
-        //if there is less than one image, there is no need for a GIF reader
-        if (numImages < 2) {
-        	BufferedImage temp = ir.read(0);
+        	//if there is less than one image, there is no need for a GIF reader
+        	if (numImages < 2) {
+        		BufferedImage temp = ir.read(0);
+        	
+        		frameData = new ImageFrameData(temp, new Dimension(temp.getWidth(), temp.getHeight()));
+        		frames.add(frameData);
+        		notifyProgress(ObservedState.OPEN_PROGRESS, 1, 1, task);
+        	}
+        	else { // otherwise, there is a need for a GIF reader
+        		// GIF reader to help extract metadata from the GIF
+        		// (the decoder reads both frames and metadata, so only a GIF it can't read keeps the reader)
+        		GIFSequenceReader gifReader = new GIFSequenceReader(decoder == null ? ir : null, decoder);
         	
-        	frameData = new ImageFrameData(temp, new Dimension(temp.getWidth(), temp.getHeight()));
-        	this.imageData.add(frameData);
-        }
-        else { // otherwise, there is a need for a GIF reader
-        	// GIF reader to help extract metadata from the GIF
-        	GIFSequenceReader gifReader = new GIFSequenceReader(ir);
+        		// decodes frames of the GIF only when they are needed
+        		DecodedFrameSource frameSource = new DecodedFrameSource(gifReader, numImages);
         	
-        	// extracts delay time between frames and the disposal method for frames of the GIF, if it exists
-        	this.disposalMethod = gifReader.getDisposalMethod();
+        		// extracts delay time between frames and the disposal method for frames of the GIF, if it exists
+        		disposal = gifReader.getDisposalMethod();
         	
-        	for(int i = 0; i < numImages; i++) {
-        		gifReader.updateMetaData(i);
-        		frameData = new ImageFrameData(ir.read(i), gifReader.getImageOffset(),
-        										gifReader.getImageDimension(), gifReader.getDelayTime());
-            	this.imageData.add(frameData);
-            	//System.err.println("Reading frame...");
-            }
-        }
+        		for(int i = 0; i < numImages; i++) {
+        			gifReader.updateMetaData(i);
+        			frameData = new ImageFrameData(frameSource, i, gifReader.getImageOffset(),
+        											gifReader.getImageDimension(), gifReader.getDelayTime());
+            		frames.add(frameData);
+            		notifyProgress(ObservedState.OPEN_PROGRESS, i + 1, numImages, task);
+            		//System.err.println("Reading frame...");
+            	}
+        		keepReader = decoder == null;
+        	}
         
-        //System.err.println(in.available());
+        	//System.err.println(in.available());
         
-        // if the image read is empty, throw an error
-    	if(this.imageData.isEmpty()) {
-    		//		throw new IOException(e);
-    		throw new IOException("NO SUCH FILE / CANNOT READ IMAGE FROM INPUT SOURCE " + in);
+        	// if the image read is empty, throw an error
+        	if(frames.isEmpty()) {
+        		//		throw new IOException(e);
+        		throw new IOException("NO SUCH FILE / CANNOT READ IMAGE FROM INPUT SOURCE");
+        	}
+        	
+        	// frames decoded whole (rather than when needed) are moved off the heap
+        	storeHeldFrames(frames, store);
+        	read = true;
+    	}
+    	finally {
+    		if (!keepReader) {
+    			codecPool.releaseReader(ir);
+    		}
+    		if (!read) { // the frames read so far are dropped with the store
+    			store.close();
+    		}
     	}
     	
+    	if (task == null) { // read by the thread that owns the document
+    		install(frames, store, extension, disposal);
+    		return;
+    	}
+    	
+    	// the document is only touched on the event dispatch thread, so the frames are handed over to it
+    	final ArrayList<ImageFrameData> openedFrames = frames;
+    	final OffHeapFrameStore openedStore = store;
+    	final String openedExtension = extension, openedDisposal = disposal;
+    	final ImageTask openTask = task;
+    	SwingUtilities.invokeLater(new Runnable() {
+    		@Override
+    		public void run() {
+    			if (openTask.isCancelled()) { // cancelled once the frames were read, so they are dropped
+    				openedStore.close();
+    				notifyCancelled(openTask);
+    				return;
+    			}
+    			install(openedFrames, openedStore, openedExtension, openedDisposal);
+    		}
+    	});
+    } // end method open
+    
+    /**
+     * Makes the frames read by an open the frames of the document, dropping those of the old
+     * document, and tells the observers.
+     * @param frames The frames read.
+     * @param store The store the pixels of the frames are kept in.
+     * @param extension The extension of the file read.
+     * @param disposal The disposal method of the frames, or null to keep the document's.
+     */
+    private void install(ArrayList<ImageFrameData> frames, OffHeapFrameStore store, String extension, String disposal)
+    {
+    	if (this.closed) { // closed while the file was read, so the frames read are dropped
+    		store.close();
+    		return;
+    	}
+    	this.currExtension = extension;
+    	if (disposal != null) {
+    		this.disposalMethod = disposal;
+    	}
+    	this.pixelStore.close(); // the frames of the old document are dropped, once any save reading them is done
+    	this.pixelStore = store;
+    	this.imageData = frames;
     	this.changedImageData = this.imageData;
     	this.updateChangedImageFrameData(false);
     	setChanged();
     	notifyObservers(new ObserverNotice(ObservedState.OPEN));
     	//System.err.println("Done open");
-    } // end method open
+    } // end method install
+    
+    /**
+     * The frames of a document, and the settings they are saved with, as they were when a save
+     * started. The frames stay in the document's frame store until the snapshot is released, so
+     * the document can go on being changed (or even be closed) while a save in the background
+     * writes them: changes make new frames rather than changing those of the snapshot.
+     */
+    public static final class Snapshot {
+    	private final ArrayList<ImageFrameData> frames;	// the changed frames of the document
+    	private final String extension;					// the extension of the file type to save as
+    	private final String disposalMethod;			// the way the GIF handles frame animation
+    	private final DitherMode ditherMode;			// how frames with too many colors are dithered
+    	private final int encodingThreads;				// threads the frames are encoded on
+    	private final OffHeapFrameStore store;			// the store the frames are kept in, pinned until released
+    	private boolean released;						// whether the store has been unpinned
+    	
+    	private Snapshot(ImageContents contents) {
+    		this.frames = new ArrayList<ImageFrameData>(contents.changedImageData);
+    		this.extension = contents.currExtension;
+    		this.disposalMethod = contents.disposalMethod;
+    		this.ditherMode = contents.ditherMode;
+    		this.encodingThreads = contents.encodingThreads;
+    		this.store = contents.pixelStore;
+    		this.store.pin();
+    	}
+    	
+    	/**
+    	 * Lets the document drop the frames of the snapshot once it no longer uses them.
+    	 * The snapshot can't be written afterwards; releasing it again does nothing.
+    	 */
+    	public synchronized void release() {
+    		if (!this.released) {
+    			this.released = true;
+    			this.store.unpin();
+    		}
+    	}
+    }
+    
+    /**
+     * Takes a snapshot of the frames of the document, for a save. Called by the thread that owns
+     * the document (the event dispatch thread, in the editor); the snapshot can then be written on
+     * any thread, and must be released once written.
+     * @return The snapshot.
+     */
+    public Snapshot snapshot() {
+    	return new Snapshot(this);
+    } // end snapshot
     
     /**
      * Writes the entire document to some output stream. output stream is only closed if an error is thrown.
      * @param out Where to write the document to.
-     * @param ext The extension of the image file type to save as.
+     * @param snapshot The frames to write, and the settings they are written with.
+     * @param task The task the save is run by, or null.
+     * @param streaming Whether the bytes are read as they are written: every frame of a GIF then gets its own
+     * 				color table, since a global one is only complete once the last frame is written, and the
+     * 				frames encoded by saves are left in the frame cache.
+     * @throws InterruptedIOException if the task was cancelled, in which case a partial file may have been written.
      * @throws IOException 
      */
-    private void write(OutputStream out, String ext) throws IOException
-    {	//System.err.println("Writing to " + ext + "...");
+    private void write(OutputStream out, Snapshot snapshot, ImageTask task, boolean streaming) throws IOException
+    {	//System.err.println("Writing to " + snapshot.extension + "...");
+    	
+    	// the snapshot keeps the frames being written even if the document is changed meanwhile
+    	writeFrames(out, snapshot, task, streaming);
+    	
+    	setChanged();
+    	notifyObservers(new ObserverNotice(ObservedState.WRITE));
+    	//System.err.println("Written.");
+    } // end method write
     
+    /**
+     * Writes the frames of the document, as {@link #write} does, without telling the observers.
+     */
+    private void writeFrames(OutputStream out, Snapshot snapshot, ImageTask task, boolean streaming) throws IOException
+    {
     	//if there are several images, create a GIF
-    	if (this.imageData.size() > 1) {
+    	if (snapshot.frames.size() > 1) {
     		GIFSequenceWriter gsw = new GIFSequenceWriter( ImageIO.createImageOutputStream(out), 
     														BufferedImageHelper.ARGB,
-    														this.disposalMethod, true);
+    														snapshot.disposalMethod, true);
+    		
+    		// encodes frames on every available core by default; they are still written in order
+    		gsw.setEncodingThreads(snapshot.encodingThreads);
+    		
+    		// shares one color table between the frames whose colors fit in it
+    		gsw.setGlobalColorTable(!streaming);
+    		
+    		// copies frames that haven't changed since the last save instead of encoding them again
+    		if (!streaming) {
+    			gsw.setFrameCache(this.frameCache);
+    		}
+    		
+    		// dithers frames with too many colors onto their palettes, if asked to
+    		gsw.setDitherMode(snapshot.ditherMode);
     		
     		// finalizes all changes to the frames and then saves it
-    	    writeToGIF(gsw);
+    		try {
+    			writeToGIF(gsw, snapshot, task);
+    		}
+    		catch (IOException e) {
+    			gsw.abort();
+    			throw e;
+    		}
+    		catch (RuntimeException e) {
+    			gsw.abort();
+    			throw e;
+    		}
     	    
     	    gsw.close();
     	}
-    	else if (this.imageData.size() == 1) { //creates a single image if there is just one image
-    		ImageFrameData endFrame = this.changedImageData.get(0);
-    		ImageIO.write(endFrame.getImage(), ext, out);
+    	else if (snapshot.frames.size() == 1) { //creates a single image if there is just one image
+    		notifyProgress(ObservedState.SAVE_PROGRESS, 0, 1, task);
+    		ImageFrameData endFrame = snapshot.frames.get(0);
+    		ImageCodecPool.getDefault().write(endFrame.getImage(), snapshot.extension, out);
+    		notifyProgress(ObservedState.SAVE_PROGRESS, 1, 1, task);
     	}
     	else { // throws exception, since no image to save
     		throw new IOException ("There is no image to save! >:)");
     	}
-    	
-    	setChanged();
-    	notifyObservers(new ObserverNotice(ObservedState.WRITE));
-    	//System.err.println("Written.");
-    } // end method write
+    } // end method write frames
 
 	/**
 	 * Writes an entire animation GIF with no thumbnail, which uses the offset of
@@ -165,12 +474,50 @@ public class ImageContents extends Observable{
 	 * @throws IOException if there is no way to write to the output stream
 	 */
 	public void writeToGIF(GIFSequenceWriter gsw) throws IOException {
-		int numFrames = this.getNumberOfFrames();
+		Snapshot snapshot = snapshot();
+		try {
+			writeToGIF(gsw, snapshot, null);
+		}
+		finally {
+			snapshot.release();
+		}
+	} // end method write to GIF
+	
+	/**
+	 * Writes an entire animation GIF, as {@link #writeToGIF(GIFSequenceWriter)} does, reporting
+	 * progress with {@link ObservedState#SAVE_PROGRESS} notices as frames are handed to the writer.
+	 * @param gsw The GIF sequence writer, which is going to write images to some output stream.
+	 * @param snapshot The frames to write, and the settings they are written with.
+	 * @param task The task the save is run by, or null.
+	 * @throws InterruptedIOException if the task was cancelled.
+	 * @throws IOException if there is no way to write to the output stream
+	 */
+	private void writeToGIF(GIFSequenceWriter gsw, Snapshot snapshot, ImageTask task) throws IOException {
+		ArrayList<ImageFrameData> frames = snapshot.frames;
+		int numFrames = frames.size();
+		notifyProgress(ObservedState.SAVE_PROGRESS, 0, numFrames, task);
+		
+		// frames that lie on top of each other only need the pixels that change from the frames before
+		GIFFrameOptimizer optimizer = null;
+		if (numFrames > 0 && AnimationDisplayHelper.disposalType(snapshot.disposalMethod) == FrameDrawSetting.IGNORE) {
+			ImageFrameData firstFrame = frames.get(0);
+			BufferedImage firstImage = firstFrame.getImage();
+			optimizer = new GIFFrameOptimizer(firstFrame.getOffset().x + firstImage.getWidth(),
+												firstFrame.getOffset().y + firstImage.getHeight());
+		}
 		
 		for(int i = 0; i < numFrames; i++) {	// writes to GIF output location using GIF writer
-			ImageFrameData singleFrameImage = changedImageData.get(i);
-			gsw.setImageOffsetDelay(singleFrameImage.getOffset(), singleFrameImage.getDelayTime());
-			gsw.writeToSequence(singleFrameImage.getImage());
+			ImageFrameData singleFrameImage = frames.get(i);
+			if (optimizer == null) {
+				gsw.setImageOffsetDelay(singleFrameImage.getOffset(), singleFrameImage.getDelayTime());
+				gsw.writeToSequence(singleFrameImage.getImage());
+			}
+			else {
+				BufferedImage optimized = optimizer.optimize(singleFrameImage.getImage(), singleFrameImage.getOffset());
+				gsw.setImageOffsetDelay(optimizer.getOffset(), singleFrameImage.getDelayTime());
+				gsw.writeToSequence(optimized);
+			}
+			notifyProgress(ObservedState.SAVE_PROGRESS, i + 1, numFrames, task);
 		}
 	} // end method write to GIF
     
@@ -181,17 +528,93 @@ public class ImageContents extends Observable{
      * closed the stream.
      */
     public void save(OutputStream out) throws IOException {
+    	Snapshot snapshot = snapshot();
     	try {
-    		write(out, this.currExtension);
+    		write(out, snapshot, null, false);
     	} catch (Exception e) {
     		out.close();
     		//	    throw new IOException(e);
     		throw new IOException(e.getLocalizedMessage());
+    	} finally {
+    		snapshot.release();
+    	}
+    	
+    	setChanged();
+    	notifyObservers(new ObserverNotice(ObservedState.SAVE));
+    } // end save
+    
+    /**
+     * Saves the entire document to a file, as {@link #save(Snapshot, Path, ImageTask)} does,
+     * with no task.
+     * @param path The file to save the document to.
+     * @throws IOException if any I/O errors occur.
+     */
+    public void save(Path path) throws IOException {
+    	Snapshot snapshot = snapshot();
+    	try {
+    		save(snapshot, path, null);
+    	}
+    	finally {
+    		snapshot.release();
+    	}
+    } // end save
+    
+    /**
+     * Saves a snapshot of the document to a file, reporting progress to the observers with
+     * {@link ObservedState#SAVE_PROGRESS} notices as frames are written. The document is written
+     * to a temporary file next to the target, which then replaces the target in one rename, so the
+     * target is never left half written: if the save fails or the task is cancelled, the target is
+     * untouched (a cancelled save is reported with a {@link ObservedState#CANCEL} notice). This also
+     * makes it safe to save over the file the document was opened from, which is still mapped.
+     * The temporary file is deleted when the JVM exits, should it exit before the save finishes.
+     * <p>
+     * Since only the snapshot is read, the save can run on any thread while the document is changed.
+     * @param snapshot The frames to save, taken by {@link #snapshot}; the caller releases it.
+     * @param path The file to save the document to.
+     * @param task The task the save is run by, or null if it can't be cancelled (and reports no progress).
+     * @throws InterruptedIOException if the task was cancelled.
+     * @throws IOException if any I/O errors occur.
+     */
+    public void save(Snapshot snapshot, Path path, ImageTask task) throws IOException {
+    	Path target = path.toAbsolutePath();
+    	Path temp = target.resolveSibling("." + target.getFileName() + ".saving");
+    	boolean moved = false;
+    	try {
+    		OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp));
+    		temp.toFile().deleteOnExit(); // in case the editor exits before the save finishes
+    		try {
+    			write(out, snapshot, task, false);
+    		}
+    		finally {
+    			out.close();
+    		}
+    		if (task != null) {
+    			task.checkCancelled();
+    		}
+    		
+    		try {
+    			Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    		}
+    		catch (AtomicMoveNotSupportedException e) { // some file systems can only replace the target in two steps
+    			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+    		}
+    		moved = true;
+    	}
+    	catch (InterruptedIOException e) {
+    		notifyCancelled(task);
+    		throw e;
+    	}
+    	catch (RuntimeException e) { // as save(OutputStream) does, anything that goes wrong is an I/O error
+    		throw new IOException(e.getLocalizedMessage(), e);
+    	}
+    	finally {
+    		if (!moved) {
+    			Files.deleteIfExists(temp);
+    		}
     	}
     	
     	setChanged();
     	notifyObservers(new ObserverNotice(ObservedState.SAVE));
-		TipBox.saved(null);
     } // end save
 
     /**
@@ -201,19 +624,63 @@ public class ImageContents extends Observable{
      *  means of supplying an output stream to which to write the internal
      *  representation. Document managers should avoid using this method
      *    wherever possible, preferring {@link #save} instead.
+     * <p>
+     * The document is encoded as the stream is read, on a thread of its own, and only a few
+     * chunks of encoded bytes are held at any time, so even a huge animation is never held
+     * in memory as a whole file. Since the frames of a GIF have to be written before a global
+     * color table is complete, every frame gets its own table, so the bytes may differ from
+     * (and be a little larger than) those of a save. The stream reads a snapshot of the document
+     * as it was when the stream was made, so the document can be changed meanwhile.
      * @throws DocumentException if such a stream cannot be created.
      */
     public InputStream getContentsStream() throws DocumentException
     {
-    	try {
-    		// return new StringBytesInputStream(this);
-    		byte[] buffer = ((DataBufferByte)(this.imageData.get(0).getImage()).getRaster().getDataBuffer()).getData();
-    		return new ByteArrayInputStream(buffer);
-    	} catch (Exception e) {
-    		throw new DocumentException(e);
-    	}
+    	final Snapshot snapshot = snapshot();
+    	return new ContentsInputStream(new ContentsInputStream.Producer() {
+    		@Override
+    		public void writeTo(OutputStream out) throws IOException {
+    			try {
+    				write(out, snapshot, null, true);
+    			}
+    			finally {
+    				snapshot.release();
+    			}
+    		}
+    	}, "Contents stream");
     } // end getContentStream
     
+    //================================================================================
+    // Region: Progress of tasks
+    //================================================================================
+    /**
+     * Tells the observers how far a task has got, and stops if the task was cancelled.
+     * Does nothing if there is no task.
+     * @param os The state to report, {@link ObservedState#OPEN_PROGRESS} or {@link ObservedState#SAVE_PROGRESS}.
+     * @param progress The number of frames done.
+     * @param total The number of frames to do.
+     * @param task The task that is running, or null.
+     * @throws InterruptedIOException if the task was cancelled.
+     */
+    private void notifyProgress(ObservedState os, int progress, int total, ImageTask task) throws InterruptedIOException {
+    	if (task == null) {
+    		return;
+    	}
+    	task.checkCancelled();
+    	setChanged();
+    	notifyObservers(new ObserverNotice(os, progress, total));
+    }
+    
+    /**
+     * Tells the observers that a task was cancelled, if it was.
+     * @param task The task that stopped, or null.
+     */
+    private void notifyCancelled(ImageTask task) {
+    	if (task != null && task.isCancelled()) {
+    		setChanged();
+    		notifyObservers(new ObserverNotice(ObservedState.CANCEL));
+    	}
+    }
+    
     //================================================================================
     // Region: Connectors for communication
     //================================================================================
@@ -225,6 +692,15 @@ public class ImageContents extends Observable{
     	addObserver(animPane);
     } // end connect display
     
+    /**
+     * Adds a progress pane as an observer to the contents of the image, so it shows how far
+     * opens and saves in the background have got.
+     * @param progressPane The progress pane that will be notified of progress.
+     */
+    public void connectProgress(TaskProgressPane progressPane) {
+    	addObserver(progressPane);
+    } // end connect progress
+    
     /**
      * Notifies the image contents object that it has been changed somehow. Receives
      * window that the change is being sent to, so that warnings/information dialogs
@@ -258,6 +734,89 @@ public class ImageContents extends Observable{
     public String getDisposalMethod() {
         return this.disposalMethod;
     }
+    
+    /**
+     * Gets the number of threads the frames of a GIF are encoded on when saved.
+     * @return The number of encoding threads.
+     */
+    public int getEncodingThreads() {
+    	return this.encodingThreads;
+    }
+    
+    /**
+     * Sets the number of threads the frames of a GIF are encoded on when saved. Documents saved
+     * side by side may want fewer threads each than there are cores.
+     * @param threads The number of encoding threads (1 encodes frames on the saving thread).
+     */
+    public void setEncodingThreads(int threads) {
+    	if (threads < 1) {
+    		throw new IllegalArgumentException("There must be at least one encoding thread.");
+    	}
+    	this.encodingThreads = threads;
+    }
+    
+    /**
+     * Gets the bytes of frames the document keeps off the heap before spilling the least
+     * recently used frames to a temporary file.
+     * @return The memory budget of the frames.
+     */
+    public long getFrameMemoryBudget() {
+    	return this.frameMemoryBudget;
+    }
+    
+    /**
+     * Sets the bytes of frames the document keeps off the heap before spilling the least
+     * recently used frames to a temporary file. Frames that no longer fit are spilled now.
+     * @param bytes The memory budget of the frames (0 spills every frame not in use).
+     */
+    public void setFrameMemoryBudget(long bytes) {
+    	if (bytes < 0) {
+    		throw new IllegalArgumentException("The frame memory budget cannot be negative.");
+    	}
+    	this.frameMemoryBudget = bytes;
+    	this.pixelStore.setOffHeapBudget(bytes);
+    }
+    
+    /**
+     * Gets the bytes of frames the document's frame sources keep cached on the heap, past which
+     * the largest caches are dropped when the document changes.
+     * @return The memory budget of the caches.
+     */
+    public long getCacheMemoryBudget() {
+    	return this.cacheMemoryBudget;
+    }
+    
+    /**
+     * Sets the bytes of frames the document's frame sources keep cached on the heap, past which
+     * the largest caches are dropped when the document changes. Caches that no longer fit are dropped now.
+     * @param bytes The memory budget of the caches (0 drops the caches on every change).
+     */
+    public void setCacheMemoryBudget(long bytes) {
+    	if (bytes < 0) {
+    		throw new IllegalArgumentException("The cache memory budget cannot be negative.");
+    	}
+    	this.cacheMemoryBudget = bytes;
+    	enforceCacheMemoryBudget();
+    }
+    
+    /**
+     * Gets how frames with more colors than a GIF frame can hold are dithered when saved.
+     * @return The dither mode used by the next save.
+     */
+    public DitherMode getDitherMode() {
+    	return this.ditherMode;
+    }
+    
+    /**
+     * Sets how frames with more colors than a GIF frame can hold are dithered when saved.
+     * @param ditherMode The dither mode to use from the next save on.
+     */
+    public void setDitherMode(DitherMode ditherMode) {
+    	if (ditherMode == null) {
+    		throw new IllegalArgumentException("The dither mode cannot be null.");
+    	}
+    	this.ditherMode = ditherMode;
+    }
 	
     /**
      * Gets changed image frame data as an array list of image frame data objects.
@@ -273,8 +832,142 @@ public class ImageContents extends Observable{
 	 * 				or if it was a retraction (all histories in each frame must be applied to itself)
      */
     private void updateChangedImageFrameData(boolean isAdd) {
-    	this.changedImageData = AnimationDisplayHelper.baseLineFlatten(this.imageData, this.changedImageData,
-    																disposalMethod, isAdd);
+    	// the images made by the flatten are given back to the image pool once their pixels are stored
+    	ImagePool.Lease lease = ImagePool.getDefault().lease();
+    	try {
+    		this.changedImageData = AnimationDisplayHelper.baseLineFlatten(this.imageData, this.changedImageData,
+    																	disposalMethod, isAdd, lease);
+    	
+    		// moves the frames changed by the flatten off the heap, and drops those no frame uses anymore
+    		storeHeldFrames(this.changedImageData, this.pixelStore, lease);
+    	}
+    	finally {
+    		lease.close();
+    	}
+    	ArrayList<ImageFrameData> used = new ArrayList<ImageFrameData>(this.imageData);
+    	used.addAll(this.changedImageData);
+    	this.pixelStore.retainOnly(used);
+    	
+    	// the sources of the frames dropped by the flatten are dropped with them, along with their caches
+    	this.frameSources = CompositeFrameSource.getSources(used);
+    	enforceCacheMemoryBudget();
+    }
+    
+    /**
+     * Moves the images held by frames into a frame store, which then produces them when needed.
+     * Images that can't be stored stay where they are.
+     * @param frames The frames whose images are moved.
+     * @param store The store to move them into.
+     */
+    private static void storeHeldFrames(ArrayList<ImageFrameData> frames, OffHeapFrameStore store) {
+    	storeHeldFrames(frames, store, null);
+    }
+    
+    /**
+     * Moves the images held by frames into a frame store, which then produces them when needed,
+     * giving the images moved back to the image pool if a lease recorded them.
+     * Images that can't be stored stay where they are.
+     * @param frames The frames whose images are moved.
+     * @param store The store to move them into.
+     * @param lease The lease of the flatten that made the images, or null.
+     */
+    private static void storeHeldFrames(ArrayList<ImageFrameData> frames, OffHeapFrameStore store, ImagePool.Lease lease) {
+    	for (ImageFrameData frame : frames) {
+    		if (frame.isLazy()) { // already produced when needed
+    			continue;
+    		}
+    		BufferedImage img = frame.getImage();
+    		if (img != null && OffHeapFrameStore.canStore(img)) {
+    			frame.setFrameSource(store, store.put(img));
+    			if (lease != null) {
+    				lease.release(img);
+    			}
+    		}
+    	}
+    }
+    
+    /**
+     * Makes an empty store for the pixels of frames, with the document's memory budget, whose
+     * frames are compressed in the background once they go unused for a while.
+     */
+    private OffHeapFrameStore newFrameStore() {
+    	OffHeapFrameStore store = new OffHeapFrameStore(OffHeapFrameStore.DEFAULT_HOT_FRAMES, this.frameMemoryBudget);
+    	FrameCompactor.getDefault().register(store);
+    	return store;
+    }
+    
+    /**
+     * Drops the caches of the frame sources with the most cached frames until the frames cached
+     * by the document fit in its cache memory budget.
+     */
+    private void enforceCacheMemoryBudget() {
+    	ArrayList<FrameSource> sources = new ArrayList<FrameSource>(this.frameSources);
+    	while (!sources.isEmpty()) {
+    		long cached = 0, largestBytes = -1;
+    		FrameSource largest = null;
+    		for (FrameSource source : sources) {
+    			long bytes = source.getCachedBytes();
+    			cached += bytes;
+    			if (bytes > largestBytes) {
+    				largest = source;
+    				largestBytes = bytes;
+    			}
+    		}
+    		if (cached <= this.cacheMemoryBudget) {
+    			return;
+    		}
+    		largest.evictCache();
+    		sources.remove(largest);
+    	}
+    }
+    
+    /**
+     * Gets the bytes the document keeps cached on the heap: frames produced by its frame sources,
+     * and frames encoded by the last save. Safe to call from any thread.
+     * @return The bytes cached.
+     */
+    public long getCachedBytes() {
+    	long bytes = this.frameCache.getBytes();
+    	for (FrameSource source : this.frameSources) {
+    		bytes += source.getCachedBytes();
+    	}
+    	return bytes;
+    }
+    
+    /**
+     * Lets go of the memory the document can do without, for when memory runs short: drops every
+     * frame cached by its frame sources and encoded by the last save, and spills the least recently
+     * used half of the frames held off the heap. The document works as before, if more slowly until
+     * its caches fill again. Safe to call from any thread.
+     * @return The bytes dropped from the heap.
+     */
+    public long relieveMemoryPressure() {
+    	long bytes = this.frameCache.getBytes();
+    	this.frameCache.clear(); // a save in progress encodes the frames it no longer finds
+    	for (FrameSource source : this.frameSources) {
+    		bytes += source.evictCache();
+    	}
+    	OffHeapFrameStore store = this.pixelStore;
+    	store.spillDownTo(store.getOffHeapBytes() / 2);
+    	return bytes;
+    }
+    
+    /**
+     * Releases the pixels of every frame of the document. The document can't be used afterwards,
+     * though a save still reading its frames is allowed to finish, and an open that finishes
+     * afterwards drops the frames it read. Closing the document again does nothing.
+     */
+    public void close() {
+    	this.closed = true;
+    	this.pixelStore.close();
+    }
+    
+    /**
+     * Returns whether the document has been closed.
+     * @return True if the frames of the document have been released.
+     */
+    public boolean isClosed() {
+    	return this.closed;
     }
     
     /**
@@ -285,6 +978,44 @@ public class ImageContents extends Observable{
     	return this.imageData;
     } // end getData
     
+    /**
+     * Counts the memory taken up by the original and changed frames of the document.
+     * @return How many bytes the frames take up on and off the heap.
+     */
+    public MemoryReport getMemoryReport() {
+    	// frames shared by the original and changed lists are only counted once
+    	Set<ImageFrameData> frames = Collections.newSetFromMap(new IdentityHashMap<ImageFrameData, Boolean>());
+    	frames.addAll(this.imageData);
+    	frames.addAll(this.changedImageData);
+    	
+    	int storedFrames = 0;
+    	long referencedBytes = 0, heldBytes = 0, historyBytes = 0;
+    	Set<Integer> distinct = new HashSet<Integer>();
+    	for (ImageFrameData frame : frames) {
+    		if (frame.getFrameSource() == this.pixelStore) {
+    			storedFrames++;
+    			referencedBytes += this.pixelStore.getFrameBytes(frame.getSourceIndex());
+    			distinct.add(frame.getSourceIndex());
+    		}
+    		else if (!frame.isLazy() && frame.getImage() != null) {
+    			heldBytes += BufferedImageHelper.getByteSize(frame.getImage());
+    		}
+    		historyBytes += frame.getHistoryBytes();
+    	}
+    	long storedBytes = 0, offHeapBytes = 0, spilledBytes = 0;
+    	for (int index : distinct) {
+    		storedBytes += this.pixelStore.getFrameBytes(index);
+    		if (this.pixelStore.isSpilled(index)) {
+    			spilledBytes += this.pixelStore.getFootprint(index);
+    		}
+    		else {
+    			offHeapBytes += this.pixelStore.getFootprint(index);
+    		}
+    	}
+    	return new MemoryReport(frames.size(), storedFrames, distinct.size(), storedBytes, offHeapBytes, spilledBytes,
+    							referencedBytes - storedBytes, heldBytes, historyBytes, getCachedBytes());
+    }
+    
     /**
      * Gets the number of frames of the animation/image.
      * @return The number of frames of the animation/image.
@@ -1,15 +1,21 @@
 package mainEditor;
 // $Id: TextDocument.java,v 1.0 2012/10/04 13:57:18 dalamb Exp $
+import java.awt.BorderLayout;
 import java.io.*;
+import java.nio.file.Path;
+import java.util.ArrayList;
 
 //import java.util.*;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 // Import only those classes from edfmwk that are essential, for documentation purposes
 import ca.queensu.cs.dal.edfmwk.doc.AbstractDocument;
 // import ca.queensu.cs.dal.edfmwk.doc.DocumentType;
 // import ca.queensu.cs.dal.edfmwk.doc.DocumentEvent;
 import ca.queensu.cs.dal.edfmwk.doc.DocumentException;
+import ca.queensu.cs.dal.edfmwk.doc.DocumentListener;
+import ca.queensu.cs.dal.edfmwk.win.DocumentWindow;
 
 /**
  * Implementation of an image document, which is (indirectly) defined in
@@ -22,6 +28,10 @@ public class ImageDocument extends AbstractDocument {
 	
     private ImageContents contents;		// the contents of the image
     private AnimationPane animation;	// the animation pane
+    private TaskProgressPane progress;	// shows how far an open or save in the background has got
+    private Path path;					// the file last opened or saved in the background, or null
+    private ImageTask openTask;			// the last open in the background, or null
+    private final ArrayList<DocumentListener> windows = new ArrayList<DocumentListener>();	// the windows showing the document
     /**
      * Constructs an image representation for viewing.
      * @param type The type of the document.
@@ -31,16 +41,21 @@ public class ImageDocument extends AbstractDocument {
     	super(type);
     	contents = new ImageContents();
     	animation = new AnimationPane();
+    	progress = new TaskProgressPane();
     	
     	// connects the animation display pane to the contents of the image
     	// and the contents of the image to the animation display pane
     	contents.connectDisplay(animation);
 		animation.setContents(contents);
+		contents.connectProgress(progress);
 		
-		// the pane responsible for displaying the animation
+		// the pane responsible for displaying the animation, above the progress of opens and saves
 		JPanel placeholder = new JPanel();
 		placeholder.add(animation);
-		window = placeholder;	
+		JPanel pane = new JPanel(new BorderLayout());
+		pane.add(placeholder, BorderLayout.CENTER);
+		pane.add(progress, BorderLayout.SOUTH);
+		window = pane;	
     } // end ImageDocument
 
     //================================================================================
@@ -83,6 +98,7 @@ public class ImageDocument extends AbstractDocument {
     public void save(OutputStream out) throws IOException {
     	contents.save(out);
     	setChanged(false);
+    	TipBox.saved(null);
     } // save
 
     /**
@@ -109,6 +125,172 @@ public class ImageDocument extends AbstractDocument {
     	setChanged(false);
     } // open
 
+    /**
+     * Reads the entire document from a file, which is mapped into memory rather than read.
+     * @param path The file to read the document from.
+     * @throws IOException if any I/O errors occur.
+     */
+    public void open(Path path) throws IOException {
+    	contents.open(path);
+    	setChanged(false);
+    } // open
+
+    /**
+     * Reads the entire document from a file in the background, so the window stays responsive
+     * while a large animation is read. The progress pane shows how many frames have been read, and
+     * can cancel the open; once the file is read, the document is shown and marked unchanged. If the file
+     * can't be read, the user is told and the document is left as it was, as it is if the task is cancelled.
+     * Called on the event dispatch thread.
+     * @param path The file to read the document from.
+     * @return The running task, which can be cancelled.
+     */
+    public ImageTask openInBackground(final Path path) {
+    	final ImageTask task = new ImageTask(new ImageTask.Work() {
+    		@Override
+    		public void run(final ImageTask task) throws IOException {
+    			try {
+    				contents.open(path, task);
+    			}
+    			catch (IOException e) {
+    				reportFailure(task, e);
+    				throw e;
+    			}
+    			finally {
+    				finished(task);
+    			}
+    			// runs after the contents have taken in the frames read, on the same thread
+    			SwingUtilities.invokeLater(new Runnable() {
+    				@Override
+    				public void run() {
+    					if (!task.isCancelled()) {
+    						ImageDocument.this.path = path;
+    						setChanged(false);
+    					}
+    				}
+    			});
+    		}
+    	});
+    	openTask = task;
+    	progress.watch(task, "Opening " + path.getFileName());
+    	return task.start();
+    } // openInBackground
+    
+    /**
+     * Saves the entire document to a file in the background, so the window stays responsive
+     * while a large animation is encoded. The frames are taken as they are when this is called, so
+     * the document can be changed while it is saved. The progress pane shows how many frames have
+     * been written, and can cancel the save. The file is only replaced once the whole document has
+     * been written, so a failed or cancelled save leaves it untouched. After a successful save,
+     * {@link #isChanged} returns <b>false</b>.
+     * Called on the event dispatch thread.
+     * @param path The file to save the document to.
+     * @return The running task, which can be cancelled.
+     */
+    public ImageTask saveInBackground(final Path path) {
+    	final ImageContents.Snapshot snapshot = contents.snapshot();
+    	final ImageTask saveTask = new ImageTask(new ImageTask.Work() {
+    		@Override
+    		public void run(ImageTask task) throws IOException {
+    			try {
+    				contents.save(snapshot, path, task);
+    			}
+    			catch (IOException e) {
+    				reportFailure(task, e);
+    				throw e;
+    			}
+    			finally {
+    				snapshot.release();
+    				finished(task);
+    			}
+    			SwingUtilities.invokeLater(new Runnable() {
+    				@Override
+    				public void run() {
+    					ImageDocument.this.path = path;
+    					setChanged(false);
+    					TipBox.saved(SwingUtilities.getWindowAncestor(animation));
+    				}
+    			});
+    		}
+    	});
+    	progress.watch(saveTask, "Saving " + path.getFileName());
+    	return saveTask.finishOnExit().start();
+    } // saveInBackground
+    
+    /**
+     * Hides the progress of a task in the background once it is done.
+     */
+    private void finished(final ImageTask task) {
+    	SwingUtilities.invokeLater(new Runnable() {
+    		@Override
+    		public void run() {
+    			progress.done(task);
+    		}
+    	});
+    }
+    
+    /**
+     * Tells the user that a task in the background failed, unless it was cancelled.
+     */
+    private void reportFailure(ImageTask task, final IOException e) {
+    	if (task.isCancelled()) {
+    		return;
+    	}
+    	SwingUtilities.invokeLater(new Runnable() {
+    		@Override
+    		public void run() {
+    			TipBox.failed(e.getLocalizedMessage(), SwingUtilities.getWindowAncestor(animation));
+    		}
+    	});
+    }
+
+    //================================================================================
+    // Region: Windows
+    //================================================================================
+    /**
+     * Adds a listener to the document; a window that shows the document adds itself.
+     * @param listener The listener.
+     */
+    @Override
+    public void addDocumentListener(DocumentListener listener) {
+    	super.addDocumentListener(listener);
+    	if (listener instanceof DocumentWindow && !windows.contains(listener)) {
+    		windows.add(listener);
+    	}
+    }
+    
+    /**
+     * Removes a listener from the document; a window removes itself when it is closed, or shows another
+     * document instead. Once no window shows the document, the document is closed.
+     * @param listener The listener.
+     */
+    @Override
+    public void removeDocumentListener(DocumentListener listener) {
+    	super.removeDocumentListener(listener);
+    	if (windows.remove(listener) && windows.isEmpty()) {
+    		// waits for the event being handled, in case a window shows the document again straight away
+    		SwingUtilities.invokeLater(new Runnable() {
+    			@Override
+    			public void run() {
+    				if (windows.isEmpty()) {
+    					close();
+    				}
+    			}
+    		});
+    	}
+    }
+    
+    /**
+     * Closes the document once it is no longer shown: an open still running in the background is
+     * cancelled, and the frames of the contents are released (though a save in the background
+     * still writing them is allowed to finish).
+     */
+    public void close() {
+    	if (openTask != null) {
+    		openTask.cancel();
+    	}
+    	contents.close();
+    }
+    
     /**
      * Gets the contents of the image document, for those few methods within
      * this package that need direct access (such as actions).
@@ -127,6 +309,14 @@ public class ImageDocument extends AbstractDocument {
 		return animation;
     }
     
+    /**
+     * Gets the file the document was last opened from or saved to in the background.
+     * @return The file of the document, or null if it has none.
+     */
+    public Path getPath() {
+    	return path;
+    }
+    
     //================================================================================
     // Region: Passive Observer To ImageContents (Never actually used)
     //================================================================================
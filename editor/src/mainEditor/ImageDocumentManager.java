@@ -0,0 +1,149 @@
+package mainEditor;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.swing.JFileChooser;
+
+import ca.queensu.cs.dal.edfmwk.doc.AppDocumentManager;
+import ca.queensu.cs.dal.edfmwk.doc.AppStore;
+import ca.queensu.cs.dal.edfmwk.doc.Document;
+import ca.queensu.cs.dal.edfmwk.doc.DocumentException;
+import ca.queensu.cs.dal.edfmwk.doc.DocumentType;
+import ca.queensu.cs.dal.edfmwk.doc.GetExtension;
+import ca.queensu.cs.dal.edfmwk.i18n.Report;
+
+/**
+ * The document manager of the editor, which opens and saves image documents in the background
+ * (see {@link ImageDocument#openInBackground} and {@link ImageDocument#saveInBackground}), so the
+ * window stays responsive while a large animation is decoded or encoded. It asks for files and
+ * reports problems as the framework's own manager does; other documents are opened and saved by
+ * the framework as usual.
+ * <p>
+ * An opened document is shown straight away, and filled in once its file has been read.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class ImageDocumentManager extends AppDocumentManager {
+
+	/**
+	 * Constructs a document manager with no document types.
+	 */
+	public ImageDocumentManager() {
+		super();
+	}
+
+	//================================================================================
+	// Region: Dialogs
+	//================================================================================
+	/**
+	 * Asks for a file, and opens it as a new document; an image document is read in the background.
+	 * @return The new document, or null if no file was chosen.
+	 * @throws DocumentException if the file can't be read, or is of no known type.
+	 */
+	@Override
+	public Document openDialog() throws DocumentException {
+		JFileChooser chooser = getChooser();
+		if (chooser == null) {
+			throw new DocumentException("NoFileChooser");
+		}
+		if (chooser.showOpenDialog(null) != JFileChooser.APPROVE_OPTION) {
+			return null;
+		}
+		File file = chooser.getSelectedFile();
+		if (file == null) {
+			return null;
+		}
+		String name = file.getName();
+		if (!file.canRead()) {
+			throw new DocumentException("DocumentUnreadable", name);
+		}
+		String ext = GetExtension.getExtension(name);
+		DocumentType type = getFactory(ext);
+		if (type == null) {
+			throw new DocumentException("DocumentFactory", ext, name);
+		}
+		Document doc = type.newDocument();
+		if (doc == null) {
+			throw new DocumentException("CantCreateDoc", name);
+		}
+
+		doc.setTitle(name);
+		AppStore store = new AppStore(file);
+		if (doc instanceof ImageDocument) {
+			((ImageDocument) doc).openInBackground(file.toPath());
+		}
+		else {
+			try {
+				doc.open(store.getInputStream());
+			}
+			catch (IOException e) {
+				throw new DocumentException("OpenException", e);
+			}
+		}
+		doc.setStore(store);
+		addDocument(doc);
+		return doc;
+	}
+
+	/**
+	 * Asks for a file, and saves a document to it; an image document is written in the background.
+	 * @param doc The document to save.
+	 * @throws DocumentException if there is no document, or the file can't be written.
+	 */
+	@Override
+	public void saveAsDialog(Document doc) throws DocumentException {
+		if (!(doc instanceof ImageDocument)) {
+			super.saveAsDialog(doc);
+			return;
+		}
+		JFileChooser chooser = getChooser();
+		if (chooser == null) {
+			throw new DocumentException("NoFileChooser");
+		}
+		if (chooser.showSaveDialog(null) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+		File file = chooser.getSelectedFile();
+		if (file == null) {
+			return;
+		}
+		save((ImageDocument) doc, file);
+		doc.setStore(new AppStore(file));
+	}
+
+	/**
+	 * Saves a document to the file it was last opened from or saved to, or asks for one if it has none;
+	 * an image document is written in the background.
+	 * @param doc The document to save.
+	 * @throws DocumentException if there is no document, or the file can't be written.
+	 */
+	@Override
+	public void saveDialog(Document doc) throws DocumentException {
+		if (doc instanceof ImageDocument && ((ImageDocument) doc).getPath() != null) {
+			save((ImageDocument) doc, ((ImageDocument) doc).getPath().toFile());
+			return;
+		}
+		super.saveDialog(doc);
+	}
+
+	/**
+	 * Starts saving an image document to a file, once the file is known to be writable.
+	 */
+	private void save(ImageDocument doc, File file) throws DocumentException {
+		String name = file.getName();
+		if (file.exists() && !file.canWrite()) {
+			throw new DocumentException("DocumentUnwriteable", name);
+		}
+		String ext = GetExtension.getExtension(name);
+		if (getFactory(ext) != doc.getType()) {
+			Report.getDefault().report("SaveBadType", name, ext, doc.getType().getName());
+		}
+		doc.saveInBackground(file.toPath());
+		doc.setTitle(name);
+	}
+}
@@ -7,6 +7,7 @@ import ca.queensu.cs.dal.edfmwk.act.AboutAction;
 import ca.queensu.cs.dal.edfmwk.act.CreditAction;
 import ca.queensu.cs.dal.edfmwk.act.HelpAction;
 import ca.queensu.cs.dal.edfmwk.act.NewAction;
+import ca.queensu.cs.dal.edfmwk.doc.AppDocumentManager;
 import ca.queensu.cs.dal.edfmwk.doc.DocumentType;
 import ca.queensu.cs.dal.edfmwk.doc.DocumentManager;
 import ca.queensu.cs.dal.edfmwk.menu.MenuDescriptor;
@@ -64,6 +65,11 @@ public class ImageEditor extends Application {
     	DocumentType fac = new ImageType();
     	DocumentManager manager = getDocumentManager();
     	//System.err.println("Got to return from getDocumentManager");
+    	if (manager != null && manager.getClass() == AppDocumentManager.class) {
+    		// opens and saves images in the background when running as an application
+    		manager = new ImageDocumentManager();
+    		setDocumentManager(manager);
+    	}
     	if (manager!=null) {
     		manager.addExtension(fac);
     	}
@@ -83,8 +89,21 @@ public class ImageEditor extends Application {
     	finishSetup();
     	//System.err.println("Got to end of Text Editor constructor");
     } // end constructor TextEditor
-    
-    
+
+    /**
+     * Closes all windows and, unless the user cancels, exits. Saves still
+     * running in the background are allowed to finish first (and opens are
+     * cancelled), so exiting never leaves a file unwritten.
+     */
+    @Override
+    public void maybeExit() {
+    	if (getWindowManager().closeAllWindows(false)) {
+    		ImageTask.finishAll();
+    		System.exit(0);
+    	}
+    } // end maybeExit
+
+
     /**
      * Editor main program.  Constructs an instance of an ImageEditor and
      * waits for user interface events.
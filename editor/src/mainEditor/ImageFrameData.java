@@ -3,8 +3,12 @@ package mainEditor;
 import java.awt.Dimension;
 import java.awt.Point;
 import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
 import mainEditor.GIFInputOutput.GIFDefaultMetadata;
+import mainEditor.frameStore.FrameSource;
 import mainEditor.history.BlankFrameHistory;
 import mainEditor.history.History;
 import mainEditor.history.ImageHistory;
@@ -12,6 +16,10 @@ import mainEditor.history.ImageHistory;
 /**
  * Internal representation of the data relevant to that of an image frame in the GIF.
  *<p>
+ * The image of a frame is copied on write: copies made by {@link #noHistoryCopy} share it, so
+ * it must not be drawn on except through {@link #getWritableImage}, which gives the frame an
+ * image of its own first if needed.
+ *<p>
  * Copyright 2017-2018 Joey Sun.<p>
  *  This work is licensed under the Creative Commons Attribution 3.0 Unported
  *  License. To view a copy of this license, visit
@@ -19,10 +27,13 @@ import mainEditor.history.ImageHistory;
  *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
  */
 public class ImageFrameData {
-	private BufferedImage img;	// the buffered image of the frame
+	private BufferedImage img;	// the buffered image of the frame (null if it is produced by a frame source)
+	private FrameSource source;	// the frame source the image is produced from when needed (null if image is held)
+	private int sourceIndex;	// the index of the frame in the frame source
 	private Point offset;		// the image offset from top left corner
 	private Dimension dimens;	// the dimensions of the frame
 	private int delayTime;		// the delay time of the frame (before another frame can be displayed)
+	private boolean shared;		// whether the held image may also be held by a copy of this frame
 
 	private final ImageHistory first = new BlankFrameHistory();		// the first history record 
 	private ImageHistory current = first;							// the current history record
@@ -82,24 +93,105 @@ public class ImageFrameData {
 		this(img, new Point(0,0), dimens, GIFDefaultMetadata.DELAY_TIME);
 	}
 	
+    /**
+     * Creates an image frame data structure whose image is not held, but produced by a 
+     * frame source the first time it is needed. Also contains the offset from the image 
+     * origin, the image dimensions, and the frame delay.
+     * @param source The frame source that produces the image of the frame.
+     * @param sourceIndex The index of the frame in the frame source.
+     * @param offset The offset the image frame is from origin.
+     * @param dimens The dimensions of the image.
+     * @param delayTime The time the frame will remain on screen.
+     * @return The image frame data representation.
+     */
+	public ImageFrameData(FrameSource source, int sourceIndex, Point offset, Dimension dimens, int delayTime) {
+		this((BufferedImage)null, offset, dimens, delayTime);
+		this.source = source;
+		this.sourceIndex = sourceIndex;
+	}
+	
     //================================================================================
     // Region: Attribute Getters and Setters
     //================================================================================
 	/**
-	 * Gets image of frame.
+	 * Gets image of frame. If the image is produced by a frame source, it is produced
+	 * now (if it is not already cached by the source) and should be treated as read-only.
 	 * @return Image of frame.
 	 */
 	public BufferedImage getImage() {
-		return this.img;
+		if (this.img != null || this.source == null) {
+			return this.img;
+		}
+		
+		try {
+			return this.source.getFrame(this.sourceIndex);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Frame " + this.sourceIndex + " could not be produced.", e);
+		}
 	}
 
 	/**
-	 * Sets image of frame.
+	 * Sets image of frame. The frame no longer uses a frame source.
 	 */
 	public void setImage(BufferedImage img) {
 		this.img = img;
+		this.source = null;
+		this.shared = false;
 	}
 	
+	/**
+	 * Gets image of frame for drawing on. The image is a true color one held by this frame alone:
+	 * if the image is shared with a copy of the frame, produced by a frame source, or indexed
+	 * (where drawing would snap colors to the palette), it is copied first, and the frame holds the copy.
+	 * @return Image of frame, which may be changed.
+	 */
+	public BufferedImage getWritableImage() {
+		BufferedImage image = getImage();
+		if (image != null && (this.shared || isLazy() || image.getColorModel() instanceof IndexColorModel)) {
+			setImage(BufferedImageHelper.deepCopyTrueColor(image));
+		}
+		return this.img;
+	}
+	
+	/**
+	 * Sets the frame source which produces the image of the frame when needed.
+	 * The frame no longer holds on to its own image.
+	 * @param source The frame source that produces the image of the frame.
+	 * @param sourceIndex The index of the frame in the frame source.
+	 */
+	public void setFrameSource(FrameSource source, int sourceIndex) {
+		this.img = null;
+		this.source = source;
+		this.sourceIndex = sourceIndex;
+		this.shared = false;
+	}
+	
+	/**
+	 * Returns whether the image of this frame is produced by a frame source
+	 * when needed, rather than held by the frame.
+	 * @return True if the image is produced by a frame source; false otherwise.
+	 */
+	public boolean isLazy() {
+		return (this.img == null && this.source != null);
+	}
+
+	/**
+	 * Returns the frame source which produces the image of this frame.
+	 * @return The frame source, or null if the image is held by the frame.
+	 */
+	public FrameSource getFrameSource() {
+		return isLazy() ? this.source : null;
+	}
+
+	/**
+	 * Returns the index of the frame in its frame source.
+	 * @return The index in the frame source (meaningless if the image is held by the frame).
+	 */
+	public int getSourceIndex() {
+		return this.sourceIndex;
+	}
+
 	/**
 	 * Gets offset for image in frame.
 	 * @return Offset of image in frame.
@@ -174,16 +266,46 @@ public class ImageFrameData {
 	}
 	
 	/**
-	 * Returns a deep copy of this image frame data with no history.
+	 * Returns a deep copy of this image frame data with no history. If the image is
+	 * produced by a frame source, the copy uses the same frame source instead of
+	 * producing and copying the image now.
 	 * @return A deep copy of the information (without history) of the image frame data.
 	 */
 	public ImageFrameData noHistoryDeepCopy() {
-		BufferedImage imgCopy = BufferedImageHelper.deepCopy(img);
 		Point offsetCopy = new Point(offset);
 		Dimension dimensCopy = new Dimension(dimens);
+		
+		if (isLazy()) {
+			return new ImageFrameData(this.source, this.sourceIndex, offsetCopy, dimensCopy, this.delayTime);
+		}
+		
+		BufferedImage imgCopy = BufferedImageHelper.deepCopy(img);
 		return new ImageFrameData(imgCopy, offsetCopy, dimensCopy, this.delayTime);
 	}
 	
+	/**
+	 * Returns a copy of this image frame data with no history, which shares the image rather
+	 * than copying it: the image is only copied if one of the frames is drawn on later (see
+	 * {@link #getWritableImage}). Changing the metadata of the copy leaves this frame alone.
+	 * @return A copy (without history) of the image frame data, sharing its image.
+	 */
+	public ImageFrameData noHistoryCopy() {
+		Point offsetCopy = new Point(offset);
+		Dimension dimensCopy = new Dimension(dimens);
+		
+		if (isLazy()) {
+			return new ImageFrameData(this.source, this.sourceIndex, offsetCopy, dimensCopy, this.delayTime);
+		}
+		
+		ImageFrameData copy = new ImageFrameData(this.img, offsetCopy, dimensCopy, this.delayTime);
+		if (this.img != null) {
+			// both frames now hold the image, so whichever draws on it first copies it
+			this.shared = true;
+			copy.shared = true;
+		}
+		return copy;
+	}
+	
     //================================================================================
     // Region: History Manipulations
     //================================================================================
@@ -221,6 +343,18 @@ public class ImageFrameData {
 		this.current = change;
 	}
 
+	/**
+	 * Returns the bytes of image data held on the heap by the historical records of the frame.
+	 * @return The bytes held by the history of the frame.
+	 */
+	public long getHistoryBytes() {
+		long bytes = 0;
+		for (History h = this.first; h != null; h = h.next()) {
+			bytes += castToImageHistory(h).getRecordBytes();
+		}
+		return bytes;
+	}
+
 	/**
 	 * Returns a pointer to the front of the list of historical records.
 	 * @return A pointer to the front of the list of historical records.
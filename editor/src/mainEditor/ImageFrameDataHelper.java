@@ -45,7 +45,7 @@ public final class ImageFrameDataHelper {
      */
     public static ImageFrameData collapseMetadata(ImageFrameData imageData) {
     	ImageHistory imgHist = imageData.getFirstHistory();
-    	ImageFrameData finalFrame = imageData.noHistoryDeepCopy();
+    	ImageFrameData finalFrame = imageData.noHistoryCopy();	// shares the image rather than copying it
     	
     	// while there are still historical records, and only if the historical
     	// record has to do with metadata, apply the change to the frame
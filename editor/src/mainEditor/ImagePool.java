@@ -0,0 +1,338 @@
+package mainEditor;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/**
+ * A pool of buffered images that are no longer used, kept by their dimensions and type so that
+ * the next image of the same size and type reuses one, instead of allocating a new raster.
+ * Editing a frame makes several images the size of the frame, most of which are dropped as
+ * soon as the next change is applied, so reusing them spares the heap a lot of churn.
+ * <p>
+ * Only images of the predefined types other than indexed ones are pooled; any other image is
+ * allocated as usual, and dropped when given back. Images are only given back by code that knows
+ * nothing else holds them: either a temporary image made and dropped by the same method, or an
+ * image recorded by a {@link Lease}, which follows the images made for the frames of a flatten.
+ * The pool keeps at most a given number of bytes of images, dropping those of the least recently
+ * used sizes first.
+ * <p>
+ * The pool also counts the bytes allocated and reused, so the allocation rate of the editor can be measured.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class ImagePool {
+	public static final long DEFAULT_MAX_BYTES = Runtime.getRuntime().maxMemory() / 16;	// default bytes of images kept in a pool
+	private static ImagePool defaultPool;			// the pool shared by the editor, made when first needed
+
+	/**
+	 * The dimensions and type images are pooled by.
+	 */
+	private static final class Key {
+		final int width, height, type;
+
+		Key(int width, int height, int type) {
+			this.width = width;
+			this.height = height;
+			this.type = type;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return this.width == k.width && this.height == k.height && this.type == k.type;
+		}
+
+		@Override
+		public int hashCode() {
+			return (this.width * 31 + this.height) * 31 + this.type;
+		}
+	}
+
+	private final LinkedHashMap<Key, ArrayDeque<BufferedImage>> free
+			= new LinkedHashMap<Key, ArrayDeque<BufferedImage>>(16, 0.75f, true);	// unused images by size, least recently used first
+	private final long maxBytes;	// the max bytes of images kept
+	private long pooledBytes;		// the bytes of the images kept
+	private long startTime = System.nanoTime();	// when the counts started
+	private long acquired, reused;				// images asked for, and those of them that were pooled
+	private long allocatedBytes, reusedBytes;	// bytes of images allocated, and of images reused
+	private long released, dropped;				// images given back, and those of them that were not kept
+
+	/**
+	 * Constructs an empty pool.
+	 * @param maxBytes The max bytes of unused images kept.
+	 */
+	public ImagePool(long maxBytes) {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("The size of the pool cannot be negative.");
+		}
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the pool shared by the editor, which {@link BufferedImageHelper} makes its images from.
+	 * @return The default image pool.
+	 */
+	public static synchronized ImagePool getDefault() {
+		if (defaultPool == null) {
+			defaultPool = new ImagePool(DEFAULT_MAX_BYTES);
+		}
+		return defaultPool;
+	}
+
+	//================================================================================
+	// Region: Acquiring and Releasing
+	//================================================================================
+	/**
+	 * Returns an image of the given dimensions and type, reusing a pooled one if there is one.
+	 * @param width The width of the image.
+	 * @param height The height of the image.
+	 * @param imgType The type of the image (one of the predefined types, other than indexed ones).
+	 * @param clear Whether the image must be blank; pass false only if every pixel will be written.
+	 * @return The image, held by the caller alone.
+	 */
+	public BufferedImage acquire(int width, int height, int imgType, boolean clear) {
+		BufferedImage img = null;
+		synchronized (this) {
+			this.acquired++;
+			ArrayDeque<BufferedImage> images = isPooled(imgType) ? this.free.get(new Key(width, height, imgType)) : null;
+			if (images != null) {
+				img = images.poll();
+				if (images.isEmpty()) {
+					this.free.remove(new Key(width, height, imgType));
+				}
+				long bytes = BufferedImageHelper.getByteSize(img);
+				this.pooledBytes -= bytes;
+				this.reused++;
+				this.reusedBytes += bytes;
+			}
+		}
+		if (img == null) {
+			img = new BufferedImage(width, height, imgType);
+			synchronized (this) {
+				this.allocatedBytes += BufferedImageHelper.getByteSize(img);
+			}
+		}
+		else if (clear) {
+			Graphics2D g = img.createGraphics();
+			g.setComposite(AlphaComposite.Clear);
+			g.fillRect(0, 0, width, height);
+			g.dispose();
+		}
+		return img;
+	}
+
+	/**
+	 * Gives back an image nothing else holds, so a later image of its size and type can reuse it.
+	 * Images that can't be pooled, or don't fit in the pool, are dropped.
+	 * @param img The image given back (may be null); it must not be used afterwards.
+	 */
+	public synchronized void release(BufferedImage img) {
+		if (img == null) {
+			return;
+		}
+		this.released++;
+		WritableRaster raster = img.getRaster();
+		long bytes = BufferedImageHelper.getByteSize(img);
+		if (!isPooled(img.getType()) || raster.getParent() != null || raster.getMinX() != 0 || raster.getMinY() != 0
+				|| bytes > this.maxBytes) {
+			this.dropped++;
+			return;
+		}
+
+		Key key = new Key(img.getWidth(), img.getHeight(), img.getType());
+		ArrayDeque<BufferedImage> images = this.free.get(key);
+		if (images == null) {
+			images = new ArrayDeque<BufferedImage>();
+			this.free.put(key, images);
+		}
+		images.add(img);
+		this.pooledBytes += bytes;
+
+		// drops images of the least recently used sizes until the pool fits (the image given back is used last)
+		Iterator<ArrayDeque<BufferedImage>> it = this.free.values().iterator();
+		while (this.pooledBytes > this.maxBytes) {
+			ArrayDeque<BufferedImage> eldest = it.next();
+			this.pooledBytes -= BufferedImageHelper.getByteSize(eldest.poll());
+			this.dropped++;
+			if (eldest.isEmpty()) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Drops every pooled image.
+	 * @return The bytes dropped.
+	 */
+	public synchronized long clear() {
+		long bytes = this.pooledBytes;
+		this.free.clear();
+		this.pooledBytes = 0;
+		return bytes;
+	}
+
+	/**
+	 * Starts a lease, which records the images made for the frames of a flatten.
+	 * @return The lease.
+	 */
+	public Lease lease() {
+		return new Lease(this);
+	}
+
+	private static boolean isPooled(int imgType) {
+		return imgType != BufferedImage.TYPE_CUSTOM && imgType != BufferedImage.TYPE_BYTE_INDEXED
+				&& imgType != BufferedImage.TYPE_BYTE_BINARY;
+	}
+
+	/**
+	 * The images made for the frames of one flatten, which are given back to the pool once the
+	 * flatten no longer needs them: when a later change of the frame replaces the image, or once
+	 * the pixels of the image are stored elsewhere. Images still held by frames when the lease
+	 * is closed are no longer recorded, and live on as the frames' own.
+	 * <p>
+	 * A lease is used by one thread at a time.
+	 */
+	public static class Lease {
+		private final ImagePool pool;		// the pool images are given back to
+		private final Set<BufferedImage> images = Collections.newSetFromMap(new IdentityHashMap<BufferedImage, Boolean>());	// the images recorded
+
+		private Lease(ImagePool pool) {
+			this.pool = pool;
+		}
+
+		/**
+		 * Records an image made for a frame of the flatten, and held by nothing but the frame.
+		 * @param img The image (may be null).
+		 */
+		public void add(BufferedImage img) {
+			if (img != null) {
+				this.images.add(img);
+			}
+		}
+
+		/**
+		 * Gives back an image to the pool, if the lease recorded it; any other image is left alone,
+		 * since something outside the flatten may still hold it.
+		 * @param img The image no longer needed by the flatten (may be null).
+		 * @return Whether the image was given back.
+		 */
+		public boolean release(BufferedImage img) {
+			if (img == null || !this.images.remove(img)) {
+				return false;
+			}
+			this.pool.release(img);
+			return true;
+		}
+
+		/**
+		 * Ends the lease, leaving the images still recorded to the frames holding them.
+		 */
+		public void close() {
+			this.images.clear();
+		}
+	}
+
+	//================================================================================
+	// Region: Getters
+	//================================================================================
+	/**
+	 * Returns the bytes of the unused images in the pool.
+	 * @return The bytes pooled.
+	 */
+	public synchronized long getPooledBytes() {
+		return this.pooledBytes;
+	}
+
+	/**
+	 * Returns the number of images asked for since the counts were last reset.
+	 * @return The number of images acquired.
+	 */
+	public synchronized long getAcquired() {
+		return this.acquired;
+	}
+
+	/**
+	 * Returns the number of images asked for that reused a pooled image.
+	 * @return The number of images reused.
+	 */
+	public synchronized long getReused() {
+		return this.reused;
+	}
+
+	/**
+	 * Returns the bytes of images newly allocated since the counts were last reset.
+	 * @return The bytes allocated.
+	 */
+	public synchronized long getAllocatedBytes() {
+		return this.allocatedBytes;
+	}
+
+	/**
+	 * Returns the bytes of images that reused a pooled image, rather than being allocated.
+	 * @return The bytes reused.
+	 */
+	public synchronized long getReusedBytes() {
+		return this.reusedBytes;
+	}
+
+	/**
+	 * Returns the number of images given back since the counts were last reset.
+	 * @return The number of images released.
+	 */
+	public synchronized long getReleased() {
+		return this.released;
+	}
+
+	/**
+	 * Returns the number of images given back, or pushed out of the pool, that were dropped.
+	 * @return The number of images dropped.
+	 */
+	public synchronized long getDropped() {
+		return this.dropped;
+	}
+
+	/**
+	 * Returns the bytes of images newly allocated per second since the counts were last reset.
+	 * @return The allocation rate, in bytes per second.
+	 */
+	public synchronized double getAllocationRate() {
+		double seconds = (System.nanoTime() - this.startTime) / 1e9;
+		return seconds > 0 ? this.allocatedBytes / seconds : 0;
+	}
+
+	/**
+	 * Starts counting images acquired, reused and released, and bytes allocated, from zero.
+	 */
+	public synchronized void resetCounts() {
+		this.startTime = System.nanoTime();
+		this.acquired = 0;
+		this.reused = 0;
+		this.allocatedBytes = 0;
+		this.reusedBytes = 0;
+		this.released = 0;
+		this.dropped = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%d images acquired, %d reused (%d KB allocated, %d KB reused, %.0f KB/s), "
+								+ "%d released, %d dropped, %d KB pooled", this.acquired, this.reused,
+								this.allocatedBytes / 1024, this.reusedBytes / 1024, getAllocationRate() / 1024,
+								this.released, this.dropped, this.pooledBytes / 1024);
+	}
+}
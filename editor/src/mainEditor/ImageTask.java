@@ -0,0 +1,219 @@
+package mainEditor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An open or save of an image that runs in the background, so the window stays responsive
+ * while a large animation is decoded or encoded. Tasks run one at a time, in the order they
+ * were started, on a thread shared by every document.
+ * <p>
+ * Cancelling is cooperative: the work checks {@link #checkCancelled} between frames, and gives
+ * up by throwing an {@link InterruptedIOException}. Progress is not reported by the task itself,
+ * but by the contents it works on, through {@link mainEditor.observerObject.ObserverNotice}s.
+ * <p>
+ * A task that must not be cut short, such as a save, is marked with {@link #finishOnExit}, and
+ * {@link #finishAll} waits for it before the editor exits, while cancelling the rest.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class ImageTask {
+	private static final long IDLE_SECONDS = 1;	// how long the thread waits for another task before it ends
+	private static ExecutorService executor;	// the thread tasks run on, made when the first task starts
+	private static final Set<ImageTask> running = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<ImageTask, Boolean>()));	// tasks started and not yet done
+
+	/**
+	 * The work done by a task.
+	 */
+	public interface Work {
+		/**
+		 * Does the work of a task, on the background thread.
+		 * @param task The task, to check for cancellation.
+		 * @throws IOException if the work fails or is cancelled.
+		 */
+		void run(ImageTask task) throws IOException;
+	}
+
+	private final FutureTask<Void> future;		// runs the work, and keeps how it ended
+	private volatile boolean cancelled;			// whether the task was asked to stop
+	private volatile boolean finishOnExit;		// whether the editor waits for the task before it exits
+
+	/**
+	 * Constructs a task, which does nothing until started.
+	 * @param work The work the task does.
+	 */
+	public ImageTask(final Work work) {
+		this.future = new FutureTask<Void>(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					ImageTask.this.checkCancelled(); // cancelled while waiting for an earlier task
+					work.run(ImageTask.this);
+				}
+				catch (IOException e) {
+					throw new TaskFailure(e);
+				}
+			}
+		}, null) {
+			@Override
+			protected void done() {
+				running.remove(ImageTask.this);
+			}
+		};
+	}
+
+	/**
+	 * Carries the exception of failed work out of the future.
+	 */
+	@SuppressWarnings("serial")
+	private static class TaskFailure extends RuntimeException {
+		TaskFailure(IOException cause) {
+			super(cause);
+		}
+	}
+
+	//================================================================================
+	// Region: Running
+	//================================================================================
+	/**
+	 * Queues the task on the background thread.
+	 * @return This task.
+	 */
+	public ImageTask start() {
+		running.add(this);
+		getExecutor().execute(this.future);
+		return this;
+	}
+	
+	/**
+	 * Marks the task as one the editor waits for before it exits, rather than cancelling it.
+	 * @return This task.
+	 */
+	public ImageTask finishOnExit() {
+		this.finishOnExit = true;
+		return this;
+	}
+	
+	/**
+	 * Cancels every running task not marked with {@link #finishOnExit}, then waits for the rest
+	 * to finish, whether they succeed or fail. Called before the editor exits.
+	 */
+	public static void finishAll() {
+		ArrayList<ImageTask> tasks;
+		synchronized (running) {
+			tasks = new ArrayList<ImageTask>(running);
+		}
+		for (ImageTask task : tasks) {
+			if (!task.finishOnExit) {
+				task.cancel();
+			}
+		}
+		for (ImageTask task : tasks) {
+			try {
+				task.await();
+			}
+			catch (InterruptedIOException e) {
+				if (Thread.currentThread().isInterrupted()) {
+					return;
+				}
+			}
+			catch (IOException e) { // already reported by the task itself
+			}
+		}
+	}
+
+	/**
+	 * Asks the task to stop. The work stops at its next check, leaving things as they were before it started.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	/**
+	 * Throws if the task was asked to stop. Called by the work between frames.
+	 * @throws InterruptedIOException if the task was cancelled.
+	 */
+	public void checkCancelled() throws InterruptedIOException {
+		if (this.cancelled) {
+			throw new InterruptedIOException("The task was cancelled.");
+		}
+	}
+
+	/**
+	 * Waits for the task to finish.
+	 * @throws InterruptedIOException if the task was cancelled, or the waiting thread was interrupted.
+	 * @throws IOException if the work failed.
+	 */
+	public void await() throws IOException {
+		try {
+			this.future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the task.");
+		}
+		catch (CancellationException e) { // the future itself is never cancelled, but just in case
+			throw new InterruptedIOException("The task was cancelled.");
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof TaskFailure) {
+				throw (IOException) e.getCause().getCause();
+			}
+			throw new IOException("The task failed: " + e.getCause(), e.getCause());
+		}
+	}
+
+	/**
+	 * Returns the single thread tasks run on. The thread is not a daemon, so the JVM does not end
+	 * in the middle of a save, but it ends once idle, so it does not keep the JVM alive after.
+	 */
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, IDLE_SECONDS, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					return new Thread(r, "Image I/O");
+				}
+			});
+			pool.allowCoreThreadTimeOut(true);
+			executor = pool;
+		}
+		return executor;
+	}
+
+	//================================================================================
+	// Region: Getters
+	//================================================================================
+	/**
+	 * Returns whether the task was asked to stop.
+	 * @return True if the task was cancelled.
+	 */
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	/**
+	 * Returns whether the task has finished, whether it succeeded, failed or was cancelled.
+	 * @return True if the task is done.
+	 */
+	public boolean isDone() {
+		return this.future.isDone();
+	}
+}
@@ -0,0 +1,284 @@
+package mainEditor;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import mainEditor.frameStore.OffHeapBudget;
+
+/**
+ * Watches how full the heap is after garbage collections, and has open documents let go of the
+ * memory they can do without before it runs out (see {@link ImageContents#relieveMemoryPressure}),
+ * along with the images kept for reuse by the {@link ImagePool}.
+ * <p>
+ * The budget sets the collection usage threshold of the long-lived heap pools to a fraction of
+ * their size. Once a collection leaves more than that in use, documents are relieved, those with
+ * the most cached first, until enough bytes are dropped to bring the pool back under its threshold.
+ * Documents are only weakly held, so they needn't be unregistered.
+ * <p>
+ * The frames of documents are mostly kept off the heap, in direct buffers, which no heap pool counts.
+ * So after every collection the budget also looks at the direct buffers in use (as counted by the
+ * JVM's "direct" buffer pool, or failing that by the frame stores themselves), and once more than the
+ * threshold's fraction of the direct memory the JVM allows is in use, the frame stores holding the
+ * most spill frames to disk until it is back under (see {@link OffHeapBudget#spill}).
+ * <p>
+ * The thresholds are set on the pools of the whole JVM, so only one budget should be made; the
+ * editor shares the default one.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class MemoryBudget {
+	public static final double DEFAULT_THRESHOLD = 0.85;	// the fraction of a pool in use after a collection that counts as pressure
+	private static MemoryBudget defaultBudget;				// the budget shared by the editor, made when first needed
+
+	private final ArrayList<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();	// the heap pools watched
+	private BufferPoolMXBean directPool;	// the pool of direct buffers watched (null if the JVM doesn't have one)
+	private final ArrayList<WeakReference<ImageContents>> documents = new ArrayList<WeakReference<ImageContents>>();	// the documents relieved
+	private double threshold;		// the fraction of a pool in use after a collection that counts as pressure
+	private int pressureEvents;		// the times a pool was over its threshold after a collection
+	private long relievedBytes;		// the bytes documents dropped from the heap when relieved
+	private long directLimit;		// the bytes of direct buffers in use after a collection that count as pressure
+	private int directPressureEvents;	// the times the direct buffers were over their limit after a collection
+	private long spilledBytes;		// the bytes frame stores spilled to bring the direct buffers under their limit
+
+	/**
+	 * Constructs a budget, and starts watching the heap and the direct buffers.
+	 * @param threshold The fraction of a pool, or of the direct memory, that, in use after a collection,
+	 * has documents relieved.
+	 */
+	public MemoryBudget(double threshold) {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			// only the pools objects live on for long have usage thresholds, and so are worth watching
+			if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported()
+					&& pool.isCollectionUsageThresholdSupported() && pool.getUsage().getMax() > 0) {
+				this.pools.add(pool);
+			}
+		}
+		for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+			if (pool.getName().equals("direct")) {
+				this.directPool = pool;
+			}
+		}
+		setThreshold(threshold);
+
+		NotificationEmitter emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+		emitter.addNotificationListener(new NotificationListener() {
+			@Override
+			public void handleNotification(Notification notification, Object handback) {
+				if (notification.getType().equals(MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED)) {
+					MemoryNotificationInfo info = MemoryNotificationInfo.from((CompositeData) notification.getUserData());
+					underPressure(info.getUsage());
+				}
+			}
+		}, null, null);
+
+		// direct buffers have no usage thresholds, so they are looked at after every collection
+		NotificationListener collected = new NotificationListener() {
+			@Override
+			public void handleNotification(Notification notification, Object handback) {
+				if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+					checkDirectMemory();
+				}
+			}
+		};
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			if (collector instanceof NotificationEmitter) {
+				((NotificationEmitter) collector).addNotificationListener(collected, null, null);
+			}
+		}
+	}
+
+	/**
+	 * Returns the budget shared by the editor, which watches the heap from the first call on.
+	 * @return The default memory budget.
+	 */
+	public static synchronized MemoryBudget getDefault() {
+		if (defaultBudget == null) {
+			defaultBudget = new MemoryBudget(DEFAULT_THRESHOLD);
+		}
+		return defaultBudget;
+	}
+
+	//================================================================================
+	// Region: Relieving
+	//================================================================================
+	/**
+	 * Adds a document to be relieved when the heap runs short.
+	 * @param doc The document.
+	 */
+	public synchronized void register(ImageContents doc) {
+		Iterator<WeakReference<ImageContents>> it = this.documents.iterator();
+		while (it.hasNext()) {
+			if (it.next().get() == null) {
+				it.remove();
+			}
+		}
+		this.documents.add(new WeakReference<ImageContents>(doc));
+	}
+
+	/**
+	 * Drops the unused images of the image pool, then relieves documents, those with the most cached
+	 * first, until the given bytes are dropped from the heap or every document has been relieved.
+	 * At least one document is relieved.
+	 * @param bytes The bytes to drop.
+	 * @return The bytes dropped.
+	 */
+	public long relieve(long bytes) {
+		ArrayList<ImageContents> docs = new ArrayList<ImageContents>();
+		synchronized (this) {
+			for (WeakReference<ImageContents> ref : this.documents) {
+				ImageContents doc = ref.get();
+				if (doc != null) {
+					docs.add(doc);
+				}
+			}
+		}
+
+		// documents are relieved outside the lock, as they may be in use on other threads
+		long relieved = ImagePool.getDefault().clear();
+		boolean relievedDocument = false;
+		while (!docs.isEmpty() && (!relievedDocument || relieved < bytes)) {
+			ImageContents largest = null;
+			long largestBytes = -1;
+			for (ImageContents doc : docs) {
+				long cached = doc.getCachedBytes();
+				if (cached > largestBytes) {
+					largest = doc;
+					largestBytes = cached;
+				}
+			}
+			relieved += largest.relieveMemoryPressure();
+			relievedDocument = true;
+			docs.remove(largest);
+		}
+		synchronized (this) {
+			this.relievedBytes += relieved;
+		}
+		return relieved;
+	}
+
+	/**
+	 * Relieves enough documents to bring a pool that was over its threshold after a collection
+	 * back under it. Called on the JVM's notification thread.
+	 */
+	private void underPressure(MemoryUsage usage) {
+		long excess;
+		synchronized (this) {
+			this.pressureEvents++;
+			excess = usage.getUsed() - (long) (usage.getMax() * this.threshold);
+		}
+		relieve(excess);
+	}
+
+	/**
+	 * Spills enough frames off the heap to bring the direct buffers in use back under their limit,
+	 * if they are over it after a collection. Called on the JVM's notification thread.
+	 */
+	private void checkDirectMemory() {
+		long excess = getDirectBytes();
+		synchronized (this) {
+			excess -= this.directLimit;
+			if (excess <= 0) {
+				return;
+			}
+			this.directPressureEvents++;
+		}
+		long spilled = OffHeapBudget.getDefault().spill(excess);
+		synchronized (this) {
+			this.spilledBytes += spilled;
+		}
+	}
+
+	//================================================================================
+	// Region: Getters and Setters
+	//================================================================================
+	/**
+	 * Returns the fraction of a heap pool that, in use after a collection, has documents relieved.
+	 * @return The threshold.
+	 */
+	public synchronized double getThreshold() {
+		return this.threshold;
+	}
+
+	/**
+	 * Sets the fraction of a heap pool, or of the direct memory, that, in use after a collection, has documents relieved.
+	 * @param threshold The threshold, more than 0 and at most 1.
+	 */
+	public synchronized void setThreshold(double threshold) {
+		if (!(threshold > 0 && threshold <= 1)) {
+			throw new IllegalArgumentException("The threshold must be more than 0 and at most 1.");
+		}
+		this.threshold = threshold;
+		for (MemoryPoolMXBean pool : this.pools) {
+			pool.setCollectionUsageThreshold((long) (pool.getUsage().getMax() * threshold));
+		}
+		this.directLimit = (long) (OffHeapBudget.MAX_DIRECT_MEMORY * threshold);
+	}
+
+	/**
+	 * Returns the bytes of direct buffers in use, by frame stores or anything else, or just those held
+	 * by frame stores if the JVM doesn't count them.
+	 * @return The direct bytes in use.
+	 */
+	public long getDirectBytes() {
+		return this.directPool != null ? this.directPool.getMemoryUsed() : OffHeapBudget.getDefault().getOffHeapBytes();
+	}
+
+	/**
+	 * Returns the bytes of direct buffers that, in use after a collection, have frame stores spill.
+	 * @return The direct limit.
+	 */
+	public synchronized long getDirectLimit() {
+		return this.directLimit;
+	}
+
+	/**
+	 * Returns the number of times a heap pool was still over its threshold after a collection.
+	 * @return The number of times documents were relieved for lack of memory.
+	 */
+	public synchronized int getPressureEvents() {
+		return this.pressureEvents;
+	}
+
+	/**
+	 * Returns the bytes documents have dropped from the heap when relieved.
+	 * @return The bytes relieved.
+	 */
+	public synchronized long getRelievedBytes() {
+		return this.relievedBytes;
+	}
+
+	/**
+	 * Returns the number of times the direct buffers were still over their limit after a collection.
+	 * @return The number of times frame stores were spilled for lack of direct memory.
+	 */
+	public synchronized int getDirectPressureEvents() {
+		return this.directPressureEvents;
+	}
+
+	/**
+	 * Returns the bytes frame stores have spilled to bring the direct buffers under their limit.
+	 * @return The bytes spilled.
+	 */
+	public synchronized long getSpilledBytes() {
+		return this.spilledBytes;
+	}
+}
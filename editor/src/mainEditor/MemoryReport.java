@@ -0,0 +1,146 @@
+package mainEditor;
+
+/**
+ * How much memory the frames of one document take up, as counted by {@link ImageContents#getMemoryReport}:
+ * the bytes of pixels in the document's frame store, what they take up off the heap and spilled to
+ * disk (less, once idle frames are compressed), the bytes still held on the heap by frames, their
+ * history records and the caches of frames produced or encoded, and the bytes saved by frames
+ * sharing stored pixels.
+ * <p>
+ * Frames whose images are decoded or drawn when needed take up no memory of their own, so they
+ * are only counted among the frames.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class MemoryReport {
+	private final int numFrames;			// the original and changed frames of the document
+	private final int storedFrames;			// those frames whose pixels are in the frame store
+	private final int distinctStoredFrames;	// the different pixel buffers those frames use
+	private final long storedBytes;			// the bytes of those buffers, uncompressed
+	private final long offHeapBytes;		// the bytes those that are not spilled take up off the heap
+	private final long spilledBytes;		// the bytes those that are spilled take up on disk
+	private final long sharedBytes;			// the bytes the stored frames would take up without sharing, less storedBytes
+	private final long heldBytes;			// the bytes of images held on the heap by frames
+	private final long historyBytes;		// the bytes of images held on the heap by history records
+	private final long cachedBytes;			// the bytes held on the heap by caches of produced and encoded frames
+
+	MemoryReport(int numFrames, int storedFrames, int distinctStoredFrames, long storedBytes, long offHeapBytes,
+					long spilledBytes, long sharedBytes, long heldBytes, long historyBytes, long cachedBytes) {
+		this.numFrames = numFrames;
+		this.storedFrames = storedFrames;
+		this.distinctStoredFrames = distinctStoredFrames;
+		this.storedBytes = storedBytes;
+		this.offHeapBytes = offHeapBytes;
+		this.spilledBytes = spilledBytes;
+		this.sharedBytes = sharedBytes;
+		this.heldBytes = heldBytes;
+		this.historyBytes = historyBytes;
+		this.cachedBytes = cachedBytes;
+	}
+
+	//================================================================================
+	// Region: Getters
+	//================================================================================
+	/**
+	 * Returns the number of frames counted: every original frame, and every changed frame that is not also an original.
+	 * @return The number of frames.
+	 */
+	public int getNumberOfFrames() {
+		return this.numFrames;
+	}
+
+	/**
+	 * Returns the number of frames whose pixels are kept in the frame store.
+	 * @return The number of stored frames.
+	 */
+	public int getStoredFrames() {
+		return this.storedFrames;
+	}
+
+	/**
+	 * Returns the number of different pixel buffers the stored frames use, which is less than
+	 * the number of stored frames when frames share pixels.
+	 * @return The number of distinct stored frames.
+	 */
+	public int getDistinctStoredFrames() {
+		return this.distinctStoredFrames;
+	}
+
+	/**
+	 * Returns the bytes of pixels the stored frames use, as if none were compressed.
+	 * @return The bytes stored.
+	 */
+	public long getStoredBytes() {
+		return this.storedBytes;
+	}
+
+	/**
+	 * Returns the bytes the stored frames that are not spilled take up off the heap, some compressed.
+	 * @return The bytes held off the heap.
+	 */
+	public long getOffHeapBytes() {
+		return this.offHeapBytes;
+	}
+
+	/**
+	 * Returns the bytes the stored frames that are spilled take up on disk, some compressed.
+	 * @return The bytes spilled.
+	 */
+	public long getSpilledBytes() {
+		return this.spilledBytes;
+	}
+
+	/**
+	 * Returns the bytes saved by stored frames sharing pixels, rather than each having their own.
+	 * @return The bytes saved by sharing.
+	 */
+	public long getSharedBytes() {
+		return this.sharedBytes;
+	}
+
+	/**
+	 * Returns the bytes of the images held on the heap by frames that are not stored.
+	 * @return The bytes held on the heap.
+	 */
+	public long getHeldBytes() {
+		return this.heldBytes;
+	}
+
+	/**
+	 * Returns the bytes of the images held on the heap by the history records of the frames.
+	 * @return The bytes held by history.
+	 */
+	public long getHistoryBytes() {
+		return this.historyBytes;
+	}
+
+	/**
+	 * Returns the bytes held on the heap by caches of frames produced when needed, and of frames
+	 * encoded by the last save. Cached bytes can be dropped whenever memory runs short.
+	 * @return The bytes cached.
+	 */
+	public long getCachedBytes() {
+		return this.cachedBytes;
+	}
+
+	/**
+	 * Returns the bytes the document takes up on the heap: those held by frames, by history and by caches.
+	 * @return The bytes on the heap.
+	 */
+	public long getHeapBytes() {
+		return this.heldBytes + this.historyBytes + this.cachedBytes;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d frames, %d stored in %d buffers (%d KB of pixels in %d KB off heap and %d KB spilled, "
+								+ "%d KB saved by sharing), %d KB held on heap, %d KB of history, %d KB cached",
+								this.numFrames, this.storedFrames, this.distinctStoredFrames, this.storedBytes / 1024,
+								this.offHeapBytes / 1024, this.spilledBytes / 1024, this.sharedBytes / 1024,
+								this.heldBytes / 1024, this.historyBytes / 1024, this.cachedBytes / 1024);
+	}
+}
@@ -0,0 +1,137 @@
+package mainEditor;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Observable;
+import java.util.Observer;
+
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
+
+import mainEditor.observerObject.ObservedState;
+import mainEditor.observerObject.ObserverNotice;
+
+/**
+ * Shows how far an open or save of a document in the background has got, with a button
+ * that cancels it. The pane is hidden while no task runs.
+ * <p>
+ * The pane observes the contents of the document, which report progress on the thread the task
+ * runs on; the pane itself is only ever touched on the event dispatch thread.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+@SuppressWarnings("serial")
+public class TaskProgressPane extends JPanel implements Observer, ActionListener {
+
+	private final JLabel label = new JLabel();				// what the task is doing
+	private final JProgressBar bar = new JProgressBar();	// the frames done out of the frames to do
+	private final JButton cancelButton = new JButton("Cancel");	// cancels the task
+	private ImageTask task;									// the task whose progress is shown, or null if none runs
+
+	/**
+	 * Constructs a hidden progress pane.
+	 */
+	public TaskProgressPane() {
+		super();
+		this.bar.setStringPainted(true);
+		this.cancelButton.addActionListener(this);
+		add(this.label);
+		add(this.bar);
+		add(this.cancelButton);
+		setVisible(false);
+	}
+
+	//================================================================================
+	// Region: Tasks
+	//================================================================================
+	/**
+	 * Shows the progress of a task, which replaces the one shown before.
+	 * Called on the event dispatch thread.
+	 * @param task The task that was started.
+	 * @param description What the task does, such as "Opening".
+	 */
+	public void watch(ImageTask task, String description) {
+		this.task = task;
+		this.label.setText(description + "...");
+		this.bar.setIndeterminate(true);
+		this.bar.setString("");
+		this.cancelButton.setEnabled(true);
+		showPane(true);
+	}
+
+	/**
+	 * Hides the pane once a task is done, unless it is showing a later task.
+	 * Called on the event dispatch thread.
+	 * @param task The task that finished, failed or was cancelled.
+	 */
+	public void done(ImageTask task) {
+		if (this.task == task) {
+			this.task = null;
+			showPane(false);
+		}
+	}
+
+	private void showPane(boolean visible) {
+		setVisible(visible);
+		revalidate();
+		repaint();
+	}
+
+	/**
+	 * Cancels the task shown, when the cancel button is pressed.
+	 * @param e The action event received.
+	 */
+	@Override
+	public void actionPerformed(ActionEvent e) {
+		if (e.getSource() == this.cancelButton && this.task != null) {
+			this.task.cancel();
+			this.label.setText("Cancelling...");
+			this.cancelButton.setEnabled(false);
+		}
+	}
+
+	//================================================================================
+	// Region: Passive Observer To ImageContents
+	//================================================================================
+	/**
+	 * Receives notification of how far an open or save has got.
+	 */
+	@Override
+	public void update(final Observable o, final Object arg) {
+		if (!(arg instanceof ObserverNotice)) {
+			return;
+		}
+		ObserverNotice notice = (ObserverNotice) arg;
+		ObservedState os = notice.getObservedState();
+		if (os != ObservedState.OPEN_PROGRESS && os != ObservedState.SAVE_PROGRESS) {
+			return;
+		}
+
+		// progress is reported on the thread of the task, but the pane is only ever touched on the event dispatch thread
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					update(o, arg);
+				}
+			});
+			return;
+		}
+		if (this.task == null || this.task.isCancelled()) { // the task has finished or is stopping
+			return;
+		}
+
+		int total = Math.max(1, notice.getTotal());
+		this.bar.setIndeterminate(false);
+		this.bar.setMaximum(total);
+		this.bar.setValue(notice.getProgress());
+		this.bar.setString(notice.getProgress() + " / " + total);
+	}
+}
@@ -23,4 +23,13 @@ public final class TipBox {
 		JOptionPane.showMessageDialog(win, "Your image has been successfully saved!");
 	}
 	
+	/**
+	 * Notifies User that an image could not be opened or saved.
+	 * @param message Message to be displayed.
+	 * @param win Window where this tip is coming from.
+	 */
+	public static void failed(String message, Window win) {
+		JOptionPane.showMessageDialog(win, message, "Error", JOptionPane.ERROR_MESSAGE);
+	}
+	
 }
@@ -0,0 +1,76 @@
+package mainEditor.batch;
+
+import java.io.File;
+import java.io.IOException;
+
+import mainEditor.quantizer.DitherMode;
+
+/**
+ * The headless entry point of the editor: runs an edit pipeline over a directory of images
+ * and prints the timing and memory of every file. For example,
+ * <pre>
+ * java -cp editor.jar mainEditor.batch.BatchMain -threads 4 contrast=1.1,focus=sharpen,resize=0.5,dilate=2 in out
+ * </pre>
+ * brightens, sharpens, halves and slows down every image in <code>in</code>, writing them to <code>out</code>.
+ * The edits are those of {@link EditStepType}; <code>focus</code> takes <code>sharpen</code>,
+ * <code>blur</code> or nine kernel values separated by semicolons.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class BatchMain {
+	private static final String USAGE = "usage: BatchMain [-threads n] [-dither none|ordered|error_diffusion] "
+										+ "<pipeline> <input dir> <output dir>\n"
+										+ "  pipeline: comma separated edits, such as contrast=1.1,focus=sharpen,resize=0.5,dilate=2";
+
+	/**
+	 * Runs a batch. Exits with 0 if every file was written, 1 if some file failed, and 2 if the
+	 * arguments are wrong or a directory can't be used.
+	 * @param args The options, the pipeline spec, the input directory and the output directory.
+	 */
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		DitherMode ditherMode = DitherMode.NONE;
+		int i = 0;
+		try {
+			for (; i < args.length && args[i].startsWith("-"); i += 2) {
+				if (i + 1 >= args.length) {
+					throw new IllegalArgumentException("Missing value for " + args[i] + ".");
+				}
+				if (args[i].equals("-threads")) {
+					threads = Integer.parseInt(args[i + 1]);
+				}
+				else if (args[i].equals("-dither")) {
+					ditherMode = DitherMode.valueOf(args[i + 1].toUpperCase());
+				}
+				else {
+					throw new IllegalArgumentException("Unknown option " + args[i] + ".");
+				}
+			}
+			if (args.length - i != 3) {
+				throw new IllegalArgumentException("Expected a pipeline, an input directory and an output directory.");
+			}
+
+			BatchProcessor processor = new BatchProcessor(EditPipeline.parse(args[i]), threads);
+			processor.setDitherMode(ditherMode);
+			System.out.println("pipeline: " + processor.getPipeline());
+			BatchReport report = processor.process(new File(args[i + 1]), new File(args[i + 2]));
+			report.print(System.out);
+			System.exit(report.getNumberFailed() == 0 ? 0 : 1);
+		}
+		catch (IllegalArgumentException e) { // also catches bad numbers and dither modes
+			System.err.println(e.getLocalizedMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+		catch (IOException e) {
+			System.err.println(e.getLocalizedMessage());
+			System.exit(2);
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package mainEditor.batch;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.ImageIO;
+
+import mainEditor.ImageContents;
+import mainEditor.quantizer.DitherMode;
+
+/**
+ * Runs an edit pipeline over every image in a directory, without any window: each file is opened
+ * into its own {@link ImageContents}, edited, and saved under the same name in another directory.
+ * <p>
+ * Files are worked on by a fixed number of worker threads, each holding one file at a time, so
+ * no more than that many files are ever in memory. Since the files are already worked on side by
+ * side, the frames of each file are encoded on its worker thread alone. A file that can't be
+ * opened, edited or saved is reported, and doesn't stop the others.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class BatchProcessor {
+	private final EditPipeline pipeline;	// the edits made to every file
+	private final int threads;				// the number of files worked on at once
+	private DitherMode ditherMode = DitherMode.NONE;	// how frames with too many colors are dithered on saving
+
+	/**
+	 * Constructs a batch processor.
+	 * @param pipeline The edits to make to every file.
+	 * @param threads The number of files to work on at once.
+	 */
+	public BatchProcessor(EditPipeline pipeline, int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("There must be at least one worker thread.");
+		}
+		this.pipeline = pipeline;
+		this.threads = threads;
+	}
+
+	//================================================================================
+	// Region: Processing
+	//================================================================================
+	/**
+	 * Edits every image in a directory, and writes the edited images to another directory.
+	 * @param inDir The directory of images to edit (only files ending in an image suffix are read).
+	 * @param outDir The directory to write the edited images to, which is made if needed.
+	 * @return The timings of every file and of the whole batch.
+	 * @throws IOException if a directory can't be read or made, or is the same as the other.
+	 */
+	public BatchReport process(File inDir, File outDir) throws IOException {
+		File[] files = listImages(inDir);
+		if (inDir.getCanonicalFile().equals(outDir.getCanonicalFile())) {
+			throw new IOException("The output directory cannot be the input directory.");
+		}
+		if (!outDir.isDirectory() && !outDir.mkdirs()) {
+			throw new IOException("Cannot make output directory " + outDir + ".");
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Batch worker");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		long start = System.nanoTime();
+		try {
+			List<Future<BatchReport.FileResult>> futures = new ArrayList<Future<BatchReport.FileResult>>(files.length);
+			for (final File file : files) {
+				final File outFile = new File(outDir, file.getName());
+				futures.add(pool.submit(new Callable<BatchReport.FileResult>() {
+					@Override
+					public BatchReport.FileResult call() {
+						return processFile(file, outFile);
+					}
+				}));
+			}
+
+			List<BatchReport.FileResult> results = new ArrayList<BatchReport.FileResult>(files.length);
+			for (Future<BatchReport.FileResult> f : futures) {
+				try {
+					results.add(f.get());
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while processing " + inDir + ".");
+				}
+				catch (ExecutionException e) { // processFile catches everything but errors
+					throw new IOException("Batch worker failed: " + e.getCause(), e.getCause());
+				}
+			}
+			return new BatchReport(results, System.nanoTime() - start, this.threads);
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Opens, edits and saves one file, timing each stage and noting the memory its document took up.
+	 * @param in The file to edit.
+	 * @param out Where to write the edited file.
+	 * @return What happened to the file.
+	 */
+	BatchReport.FileResult processFile(File in, File out) {
+		int numFrames = 0;
+		long openNanos = 0, editNanos = 0, saveNanos = 0;
+		ImageContents cont = new ImageContents();
+		try {
+			long t0 = System.nanoTime();
+			cont.open(in.toPath());
+			numFrames = cont.getNumberOfFrames();
+			long t1 = System.nanoTime();
+			openNanos = t1 - t0;
+
+			this.pipeline.applyTo(cont);
+			long t2 = System.nanoTime();
+			editNanos = t2 - t1;
+
+			cont.setEncodingThreads(1);
+			cont.setDitherMode(this.ditherMode);
+			OutputStream os = new BufferedOutputStream(new FileOutputStream(out));
+			try {
+				cont.save(os);
+			}
+			finally {
+				os.close();
+			}
+			saveNanos = System.nanoTime() - t2;
+			return new BatchReport.FileResult(in.getName(), numFrames, in.length(), out.length(), openNanos,
+												editNanos, saveNanos, cont.getMemoryReport(), null);
+		}
+		catch (Exception e) {
+			out.delete();
+			return new BatchReport.FileResult(in.getName(), numFrames, in.length(), 0, openNanos, editNanos,
+												saveNanos, null, e);
+		}
+		finally {
+			cont.close(); // frees the pixels of the file now, rather than when the worker's buffers are collected
+		}
+	}
+
+	/**
+	 * Lists the files of a directory whose names end in a suffix image I/O can read, by name.
+	 * @throws IOException if the directory can't be read.
+	 */
+	private static File[] listImages(File dir) throws IOException {
+		final Set<String> suffixes = new HashSet<String>();
+		for (String suffix : ImageIO.getReaderFileSuffixes()) {
+			suffixes.add(suffix.toLowerCase(Locale.ROOT));
+		}
+		File[] files = dir.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File f) {
+				String name = f.getName();
+				int dot = name.lastIndexOf('.');
+				return f.isFile() && dot >= 0 && suffixes.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+			}
+		});
+		if (files == null) {
+			throw new IOException("Cannot read directory " + dir + ".");
+		}
+		Arrays.sort(files);
+		return files;
+	}
+
+	//================================================================================
+	// Region: Getters and Setters
+	//================================================================================
+	/**
+	 * Sets how frames with more colors than a GIF frame can hold are dithered when saved.
+	 * @param mode The dither mode.
+	 */
+	public void setDitherMode(DitherMode mode) {
+		if (mode == null) {
+			throw new IllegalArgumentException("The dither mode cannot be null.");
+		}
+		this.ditherMode = mode;
+	}
+
+	/**
+	 * Returns how frames with more colors than a GIF frame can hold are dithered when saved.
+	 * @return The dither mode.
+	 */
+	public DitherMode getDitherMode() {
+		return this.ditherMode;
+	}
+
+	/**
+	 * Returns the edits made to every file.
+	 * @return The edit pipeline.
+	 */
+	public EditPipeline getPipeline() {
+		return this.pipeline;
+	}
+
+	/**
+	 * Returns the number of files worked on at once.
+	 * @return The number of worker threads.
+	 */
+	public int getThreads() {
+		return this.threads;
+	}
+}
@@ -0,0 +1,254 @@
+package mainEditor.batch;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import mainEditor.MemoryReport;
+
+/**
+ * The timings of a batch run: how long each file took to open, edit and save, how much memory
+ * its document took up once saved, and how many files, frames and bytes the whole run got
+ * through per second.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class BatchReport {
+
+	/**
+	 * What happened to one file of a batch.
+	 */
+	public static class FileResult {
+		private final String name;				// the name of the file
+		private final int numFrames;			// the number of frames in the file
+		private final long inBytes, outBytes;	// the size of the file, and of the file written
+		private final long openNanos, editNanos, saveNanos;	// how long each stage took
+		private final MemoryReport memory;		// the memory the document took up once saved (null if it wasn't)
+		private final Exception error;			// what went wrong (null if nothing did)
+
+		FileResult(String name, int numFrames, long inBytes, long outBytes, long openNanos, long editNanos,
+					long saveNanos, MemoryReport memory, Exception error) {
+			this.name = name;
+			this.numFrames = numFrames;
+			this.inBytes = inBytes;
+			this.outBytes = outBytes;
+			this.openNanos = openNanos;
+			this.editNanos = editNanos;
+			this.saveNanos = saveNanos;
+			this.memory = memory;
+			this.error = error;
+		}
+
+		/**
+		 * Returns the name of the file.
+		 * @return The file name.
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * Returns the number of frames in the file.
+		 * @return The number of frames (0 if the file could not be opened).
+		 */
+		public int getNumberOfFrames() {
+			return this.numFrames;
+		}
+
+		/**
+		 * Returns the size of the file read.
+		 * @return The number of bytes read.
+		 */
+		public long getInputBytes() {
+			return this.inBytes;
+		}
+
+		/**
+		 * Returns the size of the file written.
+		 * @return The number of bytes written (0 if nothing was written).
+		 */
+		public long getOutputBytes() {
+			return this.outBytes;
+		}
+
+		/**
+		 * Returns how long the file took to open.
+		 * @return The time spent opening, in nanoseconds.
+		 */
+		public long getOpenNanos() {
+			return this.openNanos;
+		}
+
+		/**
+		 * Returns how long the edits took.
+		 * @return The time spent editing, in nanoseconds.
+		 */
+		public long getEditNanos() {
+			return this.editNanos;
+		}
+
+		/**
+		 * Returns how long the file took to save.
+		 * @return The time spent saving, in nanoseconds.
+		 */
+		public long getSaveNanos() {
+			return this.saveNanos;
+		}
+
+		/**
+		 * Returns how long the file took from start to end.
+		 * @return The time spent opening, editing and saving the file, in nanoseconds.
+		 */
+		public long getTotalNanos() {
+			return this.openNanos + this.editNanos + this.saveNanos;
+		}
+
+		/**
+		 * Returns the memory the document of the file took up on and off the heap once saved.
+		 * @return The memory report, or null if the file was not written.
+		 */
+		public MemoryReport getMemoryReport() {
+			return this.memory;
+		}
+
+		/**
+		 * Returns what went wrong with the file, if anything did.
+		 * @return The error, or null if the file was written.
+		 */
+		public Exception getError() {
+			return this.error;
+		}
+	}
+
+	private final List<FileResult> results;	// what happened to each file, in the order of the file names
+	private final long wallNanos;			// how long the whole batch took
+	private final int threads;				// the number of files worked on at once
+
+	BatchReport(List<FileResult> results, long wallNanos, int threads) {
+		this.results = Collections.unmodifiableList(new ArrayList<FileResult>(results));
+		this.wallNanos = wallNanos;
+		this.threads = threads;
+	}
+
+	//================================================================================
+	// Region: Printing
+	//================================================================================
+	/**
+	 * Prints a line for every file, followed by the memory its document took up, and then the totals
+	 * and throughput of the batch.
+	 * @param out Where to print the report.
+	 */
+	public void print(PrintStream out) {
+		out.printf("%-32s %6s %9s %9s %9s %9s %11s%n", "file", "frames", "open ms", "edit ms", "save ms", "total ms", "out bytes");
+		for (FileResult r : this.results) {
+			if (r.getError() != null) {
+				out.printf("%-32s FAILED: %s%n", r.getName(), r.getError().getLocalizedMessage());
+				continue;
+			}
+			out.printf("%-32s %6d %9.1f %9.1f %9.1f %9.1f %11d%n", r.getName(), r.getNumberOfFrames(),
+						millis(r.getOpenNanos()), millis(r.getEditNanos()), millis(r.getSaveNanos()),
+						millis(r.getTotalNanos()), r.getOutputBytes());
+			if (r.getMemoryReport() != null) {
+				out.printf("    memory: %s%n", r.getMemoryReport());
+			}
+		}
+
+		double seconds = this.wallNanos / 1e9;
+		long busyNanos = 0;
+		for (FileResult r : this.results) {
+			busyNanos += r.getTotalNanos();
+		}
+		out.printf("%d files (%d failed), %d frames, %.1f MB in, %.1f MB out in %.2f s on %d threads%n",
+					this.results.size(), getNumberFailed(), getNumberOfFrames(), getInputBytes() / 1e6,
+					getOutputBytes() / 1e6, seconds, this.threads);
+		out.printf("throughput: %.2f files/s, %.1f frames/s, %.2f MB/s; %.2f files in flight on average%n",
+					getNumberSucceeded() / seconds, getNumberOfFrames() / seconds, getInputBytes() / 1e6 / seconds,
+					this.wallNanos == 0 ? 0 : (double) busyNanos / this.wallNanos);
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	//================================================================================
+	// Region: Getters
+	//================================================================================
+	/**
+	 * Returns what happened to each file.
+	 * @return The result of every file, in the order of the file names.
+	 */
+	public List<FileResult> getResults() {
+		return this.results;
+	}
+
+	/**
+	 * Returns how long the whole batch took.
+	 * @return The wall clock time of the batch, in nanoseconds.
+	 */
+	public long getWallNanos() {
+		return this.wallNanos;
+	}
+
+	/**
+	 * Returns the number of files that could not be edited and written.
+	 * @return The number of failed files.
+	 */
+	public int getNumberFailed() {
+		int failed = 0;
+		for (FileResult r : this.results) {
+			if (r.getError() != null) {
+				failed++;
+			}
+		}
+		return failed;
+	}
+
+	/**
+	 * Returns the number of files that were edited and written.
+	 * @return The number of files written.
+	 */
+	public int getNumberSucceeded() {
+		return this.results.size() - getNumberFailed();
+	}
+
+	/**
+	 * Returns the number of frames in the files written.
+	 * @return The number of frames.
+	 */
+	public long getNumberOfFrames() {
+		long frames = 0;
+		for (FileResult r : this.results) {
+			frames += r.getNumberOfFrames();
+		}
+		return frames;
+	}
+
+	/**
+	 * Returns the size of the files read.
+	 * @return The number of bytes read.
+	 */
+	public long getInputBytes() {
+		long bytes = 0;
+		for (FileResult r : this.results) {
+			bytes += r.getInputBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the size of the files written.
+	 * @return The number of bytes written.
+	 */
+	public long getOutputBytes() {
+		long bytes = 0;
+		for (FileResult r : this.results) {
+			bytes += r.getOutputBytes();
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,74 @@
+package mainEditor.batch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import mainEditor.ImageContents;
+
+/**
+ * A list of edits made one after another, parsed from a spec such as
+ * <code>contrast=1.1,focus=sharpen,resize=0.5,dilate=2</code>.
+ * A pipeline holds no state of its own, so one pipeline can be applied on any number of threads.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class EditPipeline {
+	private final List<EditStep> steps;		// the edits, in the order they are made
+
+	/**
+	 * Constructs a pipeline.
+	 * @param steps The edits, in the order they are made.
+	 */
+	public EditPipeline(List<EditStep> steps) {
+		this.steps = Collections.unmodifiableList(new ArrayList<EditStep>(steps));
+	}
+
+	/**
+	 * Parses a pipeline from its spec: the specs of its edits, separated by commas.
+	 * @param spec The spec of the pipeline (an empty spec makes no edits).
+	 * @return The pipeline.
+	 * @throws IllegalArgumentException if an edit can't be parsed.
+	 * @see EditStep#parse
+	 */
+	public static EditPipeline parse(String spec) {
+		List<EditStep> steps = new ArrayList<EditStep>();
+		for (String part : spec.split(",")) {
+			if (!part.trim().isEmpty()) {
+				steps.add(EditStep.parse(part));
+			}
+		}
+		return new EditPipeline(steps);
+	}
+
+	/**
+	 * Makes every edit of the pipeline to some image contents, in order.
+	 * @param cont The image contents to edit.
+	 */
+	public void applyTo(ImageContents cont) {
+		for (EditStep step : this.steps) {
+			step.applyTo(cont);
+		}
+	}
+
+	/**
+	 * Returns the edits of the pipeline.
+	 * @return The edits, in the order they are made.
+	 */
+	public List<EditStep> getSteps() {
+		return this.steps;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (EditStep step : this.steps) {
+			sb.append(sb.length() == 0 ? "" : ",").append(step);
+		}
+		return sb.toString();
+	}
+}
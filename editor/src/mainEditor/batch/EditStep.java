@@ -0,0 +1,118 @@
+package mainEditor.batch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import mainEditor.ImageContents;
+import mainEditor.ImageFrameData;
+
+/**
+ * One edit of a batch pipeline, such as <code>contrast=1.1</code> or <code>focus=sharpen</code>.
+ * An edit is applied the way the editor's actions apply it: a historical record is added to every
+ * frame, and then the contents are told of the change, so an edit made in a batch can be undone
+ * like any other.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class EditStep {
+	// the kernels of the editor's focus actions, which can be named instead of listing nine values
+	private static final float[] SHARPEN = { -1, -1, -1, -1, 9, -1, -1, -1, -1 };
+	private static final float[] BLUR = { 1f / 9f, 1f / 9f, 1f / 9f, 1f / 9f, 1f / 9f, 1f / 9f, 1f / 9f, 1f / 9f, 1f / 9f };
+
+	private final EditStepType type;	// which edit to make
+	private final float[] values;		// the values of the edit
+
+	/**
+	 * Constructs an edit.
+	 * @param type Which edit to make.
+	 * @param values The values of the edit.
+	 * @throws IllegalArgumentException if there is the wrong number of values, or a ratio isn't positive.
+	 */
+	public EditStep(EditStepType type, float[] values) {
+		if (values.length != type.getNumberOfValues()) {
+			throw new IllegalArgumentException(type.getName() + " takes " + type.getNumberOfValues()
+												+ " values, not " + values.length + ".");
+		}
+		if (type != EditStepType.FOCUS && !(values[0] > 0)) {
+			throw new IllegalArgumentException(type.getName() + " takes a positive ratio, not " + values[0] + ".");
+		}
+		this.type = type;
+		this.values = values.clone();
+	}
+
+	/**
+	 * Parses an edit from a pipeline spec: the name of the edit, an equals sign, and its values
+	 * separated by semicolons. The focus edit also takes <code>sharpen</code> or <code>blur</code>.
+	 * @param spec The spec of the edit, such as <code>resize=0.5</code>.
+	 * @return The edit.
+	 * @throws IllegalArgumentException if the spec can't be parsed.
+	 */
+	public static EditStep parse(String spec) {
+		int equals = spec.indexOf('=');
+		if (equals < 0) {
+			throw new IllegalArgumentException("Expected name=value, not \"" + spec + "\".");
+		}
+		EditStepType type = EditStepType.forName(spec.substring(0, equals).trim());
+		String value = spec.substring(equals + 1).trim();
+
+		if (type == EditStepType.FOCUS && value.equalsIgnoreCase("sharpen")) {
+			return new EditStep(type, SHARPEN);
+		}
+		if (type == EditStepType.FOCUS && value.equalsIgnoreCase("blur")) {
+			return new EditStep(type, BLUR);
+		}
+		String[] parts = value.split(";");
+		float[] values = new float[parts.length];
+		try {
+			for (int i = 0; i < parts.length; i++) {
+				values[i] = Float.parseFloat(parts[i].trim());
+			}
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Not a number in \"" + spec + "\".");
+		}
+		return new EditStep(type, values);
+	}
+
+	/**
+	 * Applies the edit to every frame of some image contents.
+	 * @param cont The image contents to edit.
+	 */
+	public void applyTo(ImageContents cont) {
+		ArrayList<ImageFrameData> imgData = cont.getData();
+		for (int i = 0; i < imgData.size(); i++) {
+			imgData.get(i).addChange(this.type.newHistory(this.values));
+		}
+		cont.changeDone(null, true);
+	}
+
+	/**
+	 * Returns which edit this is.
+	 * @return The type of edit.
+	 */
+	public EditStepType getType() {
+		return this.type;
+	}
+
+	@Override
+	public String toString() {
+		if (this.values.length == 1) {
+			return this.type.getName() + "=" + this.values[0];
+		}
+		if (Arrays.equals(this.values, SHARPEN)) {
+			return this.type.getName() + "=sharpen";
+		}
+		if (Arrays.equals(this.values, BLUR)) {
+			return this.type.getName() + "=blur";
+		}
+		StringBuilder sb = new StringBuilder(this.type.getName()).append('=');
+		for (int i = 0; i < this.values.length; i++) {
+			sb.append(i == 0 ? "" : ";").append(this.values[i]);
+		}
+		return sb.toString();
+	}
+}
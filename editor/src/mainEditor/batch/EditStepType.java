@@ -0,0 +1,98 @@
+package mainEditor.batch;
+
+import java.awt.image.ConvolveOp;
+import java.awt.image.Kernel;
+import java.awt.image.RescaleOp;
+
+import mainEditor.history.ImageFilterHistory;
+import mainEditor.history.ImageHistory;
+import mainEditor.history.ImageMetadataHistory;
+import mainEditor.history.ImageMetadataHistoryType;
+
+/**
+ * The enumeration of edits a batch pipeline can make, each with the name it has in a pipeline spec.
+ * Each edit records the same historical record on every frame as the matching editor action does.
+ * 
+ * Copyright 2017-2018 Joey Sun.
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public enum EditStepType {
+	/** Brightens (above 1) or darkens (below 1) every frame, like the contrast action. */
+	CONTRAST("contrast", 1) {
+		@Override
+		public ImageHistory newHistory(float[] values) {
+			float[] scales = {values[0], values[0], values[0], 1f};
+			return new ImageFilterHistory(null, new RescaleOp(scales, new float[4], null));
+		}
+	},
+	/** Convolves every frame with a 3x3 kernel, like the focus action. */
+	FOCUS("focus", 9) {
+		@Override
+		public ImageHistory newHistory(float[] values) {
+			return new ImageFilterHistory(null, new ConvolveOp(new Kernel(3, 3, values)));
+		}
+	},
+	/** Scales every frame and its offset by a ratio, like the resize action. */
+	RESIZE("resize", 1) {
+		@Override
+		public ImageHistory newHistory(float[] values) {
+			return new ImageMetadataHistory(null, values[0], ImageMetadataHistoryType.RESIZE);
+		}
+	},
+	/** Scales the delay time of every frame by a ratio, like the time dilation action. */
+	TIME_DILATION("dilate", 1) {
+		@Override
+		public ImageHistory newHistory(float[] values) {
+			return new ImageMetadataHistory(null, values[0], ImageMetadataHistoryType.RETIME);
+		}
+	};
+
+	private final String name;			// the name of the edit in a pipeline spec
+	private final int numValues;		// the number of values the edit takes
+
+	private EditStepType(String name, int numValues) {
+		this.name = name;
+		this.numValues = numValues;
+	}
+
+	/**
+	 * Builds the historical record of this edit for one frame. A new record is needed for every frame.
+	 * @param values The values of the edit, as many as {@link #getNumberOfValues()}.
+	 * @return The historical record to add to the frame.
+	 */
+	public abstract ImageHistory newHistory(float[] values);
+
+	/**
+	 * Returns the name of the edit in a pipeline spec.
+	 * @return The name of the edit.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the number of values the edit takes.
+	 * @return The number of values.
+	 */
+	public int getNumberOfValues() {
+		return this.numValues;
+	}
+
+	/**
+	 * Returns the edit with a given name.
+	 * @param name The name of the edit in a pipeline spec.
+	 * @return The edit.
+	 * @throws IllegalArgumentException if no edit has that name.
+	 */
+	public static EditStepType forName(String name) {
+		for (EditStepType type : values()) {
+			if (type.name.equalsIgnoreCase(name)) {
+				return type;
+			}
+		}
+		throw new IllegalArgumentException("Unknown edit \"" + name + "\".");
+	}
+}
@@ -0,0 +1,235 @@
+package mainEditor.frameStore;
+
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import mainEditor.BufferedImageHelper;
+import mainEditor.ImageFrameData;
+
+/**
+ * A frame source that produces independent frames for animations whose frames lie on top
+ * of each other (drawing over earlier frames). The nth frame is drawn from frames 0 to n in
+ * quick succession onto one buffered image, the first time it is needed.
+ * <p>
+ * Since frames are usually asked for in order, the nth frame is drawn on top of a copy of
+ * the closest earlier frame that is still cached, instead of always starting from frame 0.
+ * <p>
+ * While the frames drawn are 8-bit indexed images sharing one palette (as frames decoded from
+ * a GIF with a global color table are), they are drawn by copying indices, and the independent
+ * frames are kept as indexed images too, at a quarter of the memory of ARGB images. The first
+ * frame with another palette turns the independent frame into an ARGB image from then on.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class CompositeFrameSource implements FrameSource {
+	private final ArrayList<ImageFrameData> frames;		// the frames that are drawn over each other
+	private final FrameCache cache;						// the most recently used independent frames
+
+	/**
+	 * Constructs a frame source which draws the given frames over each other, with a default
+	 * sized cache.
+	 * @param frames The frames to draw over each other. The list is copied, but not the frames.
+	 */
+	public CompositeFrameSource(List<ImageFrameData> frames) {
+		this(frames, FrameCache.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs a frame source which draws the given frames over each other.
+	 * @param frames The frames to draw over each other. The list is copied, but not the frames.
+	 * @param cacheSize The max number of independent frames to keep around.
+	 */
+	public CompositeFrameSource(List<ImageFrameData> frames, int cacheSize) {
+		this.frames = new ArrayList<ImageFrameData>(frames);
+		this.cache = new FrameCache(cacheSize);
+	}
+
+	@Override
+	public synchronized BufferedImage getFrame(int n) throws IOException {
+		if (n < 0 || n >= this.frames.size()) {
+			throw new IndexOutOfBoundsException("Index provided to get an independent frame for is out of range.");
+		}
+
+		BufferedImage bi = this.cache.get(n);
+		if (bi != null) {
+			return bi;
+		}
+
+		// looks for the closest earlier independent frame that is still cached
+		BufferedImage base = null;
+		int start = n;
+		while (start > 0 && base == null) {
+			start--;
+			base = this.cache.get(start);
+		}
+
+		int from;
+		if (base != null) { // draws over a copy of the earlier frame (cached frames are never drawn on)
+			bi = BufferedImageHelper.deepCopy(base);
+			from = start + 1;
+		}
+		else { // draws every frame from the first one
+			bi = newCanvas(this.frames.get(0).getImage());
+			from = 0;
+		}
+
+		Graphics g = null;	// made once a frame can't be drawn by copying indices
+		for (int i = from; i <= n; i++) {
+			ImageFrameData frame = this.frames.get(i);
+			Point offset = frame.getOffset();
+			BufferedImage img = frame.getImage();
+			if (g == null && drawIndexed(bi, img, (int)offset.getX(), (int)offset.getY())) {
+				continue;
+			}
+			if (g == null) {
+				if (bi.getColorModel() instanceof IndexColorModel) { // true color from here on
+					bi = BufferedImageHelper.deepCopyARGB(bi);
+				}
+				g = bi.getGraphics();
+			}
+			g.drawImage(img, (int)offset.getX(), (int)offset.getY(), null);
+		}
+		if (g != null) {
+			g.dispose();
+		}
+
+		this.cache.put(n, bi);
+		return bi;
+	}
+
+	/**
+	 * Returns a blank independent frame the size of the first frame: indexed with the palette of
+	 * the first frame if it is a plain 8-bit indexed image with a transparent color, and ARGB otherwise.
+	 */
+	private static BufferedImage newCanvas(BufferedImage first) {
+		int[] palette = opaquePalette(first);
+		if (palette != null) {
+			for (int t = 0; t < palette.length; t++) {
+				if (palette[t] == 0) { // the canvas starts out transparent, as an ARGB one does
+					BufferedImage bi = new BufferedImage(first.getWidth(), first.getHeight(),
+															BufferedImage.TYPE_BYTE_INDEXED, (IndexColorModel) first.getColorModel());
+					Arrays.fill(((DataBufferByte) bi.getRaster().getDataBuffer()).getData(), (byte) t);
+					return bi;
+				}
+			}
+		}
+		return BufferedImageHelper.getNewImageARGB(first);
+	}
+
+	/**
+	 * Draws a frame onto an independent frame by copying its indices, skipping transparent ones,
+	 * if both are plain 8-bit indexed images with the same palette.
+	 * @return Whether the frame was drawn.
+	 */
+	private static boolean drawIndexed(BufferedImage canvas, BufferedImage img, int x, int y) {
+		int[] canvasPalette = opaquePalette(canvas);
+		int[] palette = canvasPalette != null ? opaquePalette(img) : null;
+		if (palette == null || !Arrays.equals(palette, canvasPalette)) {
+			return false;
+		}
+
+		byte[] dest = ((DataBufferByte) canvas.getRaster().getDataBuffer()).getData();
+		byte[] src = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+		int canvasWidth = canvas.getWidth(), width = img.getWidth();
+		int fromX = Math.max(0, -x), toX = Math.min(width, canvasWidth - x);
+		int fromY = Math.max(0, -y), toY = Math.min(img.getHeight(), canvas.getHeight() - y);
+		for (int row = fromY; row < toY; row++) {
+			int s = row * width, d = (row + y) * canvasWidth + x;
+			for (int col = fromX; col < toX; col++) {
+				byte p = src[s + col];
+				if ((palette[p & 0xff] >>> 24) != 0) {
+					dest[d + col] = p;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the ARGB palette of a plain 8-bit indexed image whose colors are each either fully
+	 * opaque or fully transparent (as GIF colors are), or null for any other image.
+	 */
+	private static int[] opaquePalette(BufferedImage img) {
+		if (img.getType() != BufferedImage.TYPE_BYTE_INDEXED) {
+			return null;
+		}
+		WritableRaster raster = img.getRaster();
+		IndexColorModel cm = (IndexColorModel) img.getColorModel();
+		if (!(raster.getDataBuffer() instanceof DataBufferByte) || raster.getParent() != null
+				|| raster.getDataBuffer().getSize() != img.getWidth() * img.getHeight()
+				|| raster.getDataBuffer().getOffset() != 0 || cm.getMapSize() != 256) {
+			return null;
+		}
+		int[] palette = new int[256];
+		cm.getRGBs(palette);
+		for (int c : palette) {
+			int alpha = c >>> 24;
+			if (alpha != 0 && alpha != 0xff) {
+				return null;
+			}
+		}
+		return palette;
+	}
+
+	@Override
+	public int getNumberOfFrames() {
+		return this.frames.size();
+	}
+
+	@Override
+	public synchronized long getCachedBytes() {
+		return this.cache.getBytes();
+	}
+
+	@Override
+	public synchronized long evictCache() {
+		long bytes = this.cache.getBytes();
+		this.cache.clear();
+		return bytes;
+	}
+
+	/**
+	 * Returns every frame source the given frames are produced from, along with the sources
+	 * the composite frame sources among them draw from in turn.
+	 * @param frames The frames whose sources are returned.
+	 * @return The frame sources, each once.
+	 */
+	public static Set<FrameSource> getSources(Iterable<ImageFrameData> frames) {
+		Set<FrameSource> sources = Collections.newSetFromMap(new IdentityHashMap<FrameSource, Boolean>());
+		ArrayDeque<Iterable<ImageFrameData>> toVisit = new ArrayDeque<Iterable<ImageFrameData>>();
+		toVisit.add(frames);
+		while (!toVisit.isEmpty()) {
+			for (ImageFrameData frame : toVisit.poll()) {
+				FrameSource source = frame.getFrameSource();
+				if (source != null && sources.add(source) && source instanceof CompositeFrameSource) {
+					toVisit.add(((CompositeFrameSource) source).frames);
+				}
+			}
+		}
+		return sources;
+	}
+
+	/**
+	 * Returns the frames drawn over each other, whose images must stay available for as long as this source is used.
+	 * @return The frames (read-only).
+	 */
+	List<ImageFrameData> getFrames() {
+		return Collections.unmodifiableList(this.frames);
+	}
+}
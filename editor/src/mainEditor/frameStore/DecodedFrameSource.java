@@ -0,0 +1,75 @@
+package mainEditor.frameStore;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import mainEditor.GIFInputOutput.GIFSequenceReader;
+
+/**
+ * A frame source that decodes frames from a GIF sequence reader the first time they are needed.
+ * Only a bounded number of decoded frames are kept around; any other frame is decoded again
+ * when it is asked for.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class DecodedFrameSource implements FrameSource {
+	private final GIFSequenceReader gifReader;	// the GIF reader the frames are decoded from
+	private final int numFrames;				// the number of frames that can be decoded
+	private final FrameCache cache;				// the most recently used decoded frames
+
+	/**
+	 * Constructs a frame source over a GIF reader, with a default sized cache.
+	 * @param gifReader The GIF reader to decode frames from.
+	 * @param numFrames The number of frames in the GIF.
+	 */
+	public DecodedFrameSource(GIFSequenceReader gifReader, int numFrames) {
+		this(gifReader, numFrames, FrameCache.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs a frame source over a GIF reader.
+	 * @param gifReader The GIF reader to decode frames from.
+	 * @param numFrames The number of frames in the GIF.
+	 * @param cacheSize The max number of decoded frames to keep around.
+	 */
+	public DecodedFrameSource(GIFSequenceReader gifReader, int numFrames, int cacheSize) {
+		this.gifReader = gifReader;
+		this.numFrames = numFrames;
+		this.cache = new FrameCache(cacheSize);
+	}
+
+	@Override
+	public synchronized BufferedImage getFrame(int index) throws IOException {
+		if (index < 0 || index >= this.numFrames) {
+			throw new IndexOutOfBoundsException("No frame " + index + " to decode.");
+		}
+
+		BufferedImage frame = this.cache.get(index);
+		if (frame == null) { // the frame has not been decoded, or was dropped from the cache
+			frame = this.gifReader.read(index);
+			this.cache.put(index, frame);
+		}
+		return frame;
+	}
+
+	@Override
+	public int getNumberOfFrames() {
+		return this.numFrames;
+	}
+
+	@Override
+	public synchronized long getCachedBytes() {
+		return this.cache.getBytes();
+	}
+
+	@Override
+	public synchronized long evictCache() {
+		long bytes = this.cache.getBytes();
+		this.cache.clear();
+		return bytes;
+	}
+}
@@ -0,0 +1,121 @@
+package mainEditor.frameStore;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import mainEditor.BufferedImageHelper;
+
+/**
+ * A bounded cache of frame images, keyed by frame index. Once the cache holds more
+ * frames than its capacity, or its frames take up more bytes than its byte budget, the
+ * least recently used frames are dropped (though the last frame put is always kept).
+ * <p>
+ * Not thread-safe; the frame sources using it synchronize access themselves.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+@SuppressWarnings("serial")
+public class FrameCache extends LinkedHashMap<Integer, BufferedImage> {
+
+	public static final int DEFAULT_CAPACITY = 32;	// default number of frames kept in a cache
+	public static final long DEFAULT_MAX_BYTES = Runtime.getRuntime().maxMemory() / 8;	// default bytes of frames kept in a cache
+
+	private final int capacity;						// the max number of frames kept in the cache
+	private final long maxBytes;					// the max bytes of frames kept in the cache
+	private long bytes;								// the bytes of the frames in the cache
+
+	/**
+	 * Constructs a frame cache with the default capacity.
+	 */
+	public FrameCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs a frame cache which keeps at most the given number of frames, and at most
+	 * the default number of bytes of frames.
+	 * @param capacity The max number of frames kept; at least one frame is always kept.
+	 */
+	public FrameCache(int capacity) {
+		this(capacity, DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * Constructs a frame cache which keeps at most the given number of frames and bytes of frames.
+	 * @param capacity The max number of frames kept; at least one frame is always kept.
+	 * @param maxBytes The max bytes of frames kept.
+	 */
+	public FrameCache(int capacity, long maxBytes) {
+		super(16, 0.75f, true);		// access order, so the eldest entry is the least recently used
+		this.capacity = Math.max(1, capacity);
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the max number of frames kept in the cache.
+	 * @return The capacity of the cache.
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * Returns the max bytes of frames kept in the cache.
+	 * @return The byte budget of the cache.
+	 */
+	public long getMaxBytes() {
+		return this.maxBytes;
+	}
+
+	/**
+	 * Returns the bytes of the frames in the cache.
+	 * @return The bytes cached.
+	 */
+	public long getBytes() {
+		return this.bytes;
+	}
+
+	@Override
+	public BufferedImage put(Integer index, BufferedImage img) {
+		BufferedImage old = super.put(index, img);
+		this.bytes += BufferedImageHelper.getByteSize(img) - (old == null ? 0 : BufferedImageHelper.getByteSize(old));
+
+		// drops the least recently used frames while over budget, but never the frame just put
+		Iterator<BufferedImage> it = values().iterator();
+		while (this.bytes > this.maxBytes && size() > 1) {
+			this.bytes -= BufferedImageHelper.getByteSize(it.next());
+			it.remove();
+		}
+		return old;
+	}
+
+	@Override
+	public BufferedImage remove(Object index) {
+		BufferedImage old = super.remove(index);
+		if (old != null) {
+			this.bytes -= BufferedImageHelper.getByteSize(old);
+		}
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		this.bytes = 0;
+	}
+
+	@Override
+	protected boolean removeEldestEntry(Map.Entry<Integer, BufferedImage> eldest) {
+		if (size() > this.capacity) {
+			this.bytes -= BufferedImageHelper.getByteSize(eldest.getValue());
+			return true;
+		}
+		return false;
+	}
+}
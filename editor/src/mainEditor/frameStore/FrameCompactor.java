@@ -0,0 +1,124 @@
+package mainEditor.frameStore;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compresses the idle frames of off-heap frame stores in the background, so that the frames of
+ * documents left open, but not being played or edited, take up a fraction of their size.
+ * <p>
+ * Every so often, each registered store is asked to compress the frames that have gone unused for
+ * the compactor's idle time (see {@link OffHeapFrameStore#compactIdle}). Stores are only weakly
+ * held, and are dropped once closed, so they needn't be unregistered. The work is done on one
+ * low priority thread shared by every store, which is made when the first store is registered.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class FrameCompactor {
+	public static final long DEFAULT_IDLE_MILLIS = 2000;	// how long frames go unused before the default compactor compresses them
+	private static FrameCompactor defaultCompactor;			// the compactor shared by the editor, made when first needed
+
+	private final long idleMillis;			// how long a frame must go unused to be compressed
+	private final ArrayList<WeakReference<OffHeapFrameStore>> stores = new ArrayList<WeakReference<OffHeapFrameStore>>();	// the stores compacted
+	private ScheduledExecutorService executor;	// the thread stores are compacted on (null until a store is registered)
+
+	/**
+	 * Constructs a compactor, which does nothing until a store is registered.
+	 * @param idleMillis How long a frame must go unused before it is compressed.
+	 */
+	public FrameCompactor(long idleMillis) {
+		if (idleMillis < 1) {
+			throw new IllegalArgumentException("The idle time must be positive.");
+		}
+		this.idleMillis = idleMillis;
+	}
+
+	/**
+	 * Returns the compactor shared by the editor, which compresses frames left unused for two seconds.
+	 * @return The default compactor.
+	 */
+	public static synchronized FrameCompactor getDefault() {
+		if (defaultCompactor == null) {
+			defaultCompactor = new FrameCompactor(DEFAULT_IDLE_MILLIS);
+		}
+		return defaultCompactor;
+	}
+
+	//================================================================================
+	// Region: Compacting
+	//================================================================================
+	/**
+	 * Adds a store to those compacted in the background, starting the background thread if needed.
+	 * @param store The store to compact until it is closed.
+	 */
+	public synchronized void register(OffHeapFrameStore store) {
+		this.stores.add(new WeakReference<OffHeapFrameStore>(store));
+		if (this.executor == null) {
+			this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "Frame compactor");
+					t.setDaemon(true);
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				}
+			});
+			long period = Math.max(1, this.idleMillis / 2);
+			this.executor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					compactNow();
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Compresses the idle frames of every registered store now, on the calling thread.
+	 * @return The number of frames compressed.
+	 */
+	public int compactNow() {
+		ArrayList<OffHeapFrameStore> live = new ArrayList<OffHeapFrameStore>();
+		synchronized (this) {
+			for (Iterator<WeakReference<OffHeapFrameStore>> it = this.stores.iterator(); it.hasNext(); ) {
+				OffHeapFrameStore store = it.next().get();
+				if (store == null || store.isClosed()) {
+					it.remove();
+				}
+				else {
+					live.add(store);
+				}
+			}
+		}
+
+		int compressed = 0;
+		for (OffHeapFrameStore store : live) {
+			try {
+				compressed += store.compactIdle(this.idleMillis);
+			}
+			catch (RuntimeException e) { // a store that can't be compacted keeps its frames as they are
+			}
+		}
+		return compressed;
+	}
+
+	//================================================================================
+	// Region: Getters
+	//================================================================================
+	/**
+	 * Returns how long a frame must go unused before it is compressed.
+	 * @return The idle time in milliseconds.
+	 */
+	public long getIdleMillis() {
+		return this.idleMillis;
+	}
+}
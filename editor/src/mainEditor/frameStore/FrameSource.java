@@ -0,0 +1,47 @@
+package mainEditor.frameStore;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Interface for anything that can produce the image of a frame on demand, given the index
+ * of the frame. Lets an image frame data object hold on to where its image comes from,
+ * instead of holding on to the decoded image itself.
+ * <p>
+ * Images returned by a frame source may be shared with other callers, so they
+ * must be treated as read-only; copy them before drawing on them.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public interface FrameSource {
+
+	/**
+	 * Returns the image of the frame at the given index, producing it if needed.
+	 * @param index The index of the frame.
+	 * @return The image of the frame (read-only).
+	 * @throws IOException if the frame cannot be produced.
+	 */
+	public BufferedImage getFrame(int index) throws IOException;
+
+	/**
+	 * Returns the number of frames this source can produce.
+	 * @return The number of frames.
+	 */
+	public int getNumberOfFrames();
+
+	/**
+	 * Returns the bytes of the frame images this source keeps on the heap so they needn't be produced again.
+	 * @return The bytes cached.
+	 */
+	public long getCachedBytes();
+
+	/**
+	 * Drops every frame image this source keeps on the heap, so they are produced again when next needed.
+	 * @return The bytes dropped.
+	 */
+	public long evictCache();
+}
@@ -0,0 +1,197 @@
+package mainEditor.frameStore;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import com.sun.management.VMOption;
+
+/**
+ * The bytes of frames every off-heap frame store of the JVM may keep off the heap between them.
+ * The direct buffers of every store come out of the one pool of direct memory the JVM allows (as
+ * large as the max heap, unless set with -XX:MaxDirectMemorySize), so a budget for each store alone
+ * would let a few documents run it out between them.
+ * <p>
+ * Stores register themselves when made, and are only weakly held. Once a store has stored a frame,
+ * the bytes every store holds off the heap are weighed against the shared limit, and if they are
+ * over it the stores holding the most spill their least recently used frames until they fit (see
+ * {@link OffHeapFrameStore#spillDownTo}). The default limit is half the direct memory of the JVM,
+ * which leaves room for the buffers of compression, file channels and the rest of the editor.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class OffHeapBudget {
+	public static final long MAX_DIRECT_MEMORY = maxDirectMemory();	// the bytes of direct buffers the JVM allows
+	public static final long DEFAULT_LIMIT = MAX_DIRECT_MEMORY / 2;	// default bytes of frames kept off the heap by every store together
+	private static OffHeapBudget defaultBudget;						// the budget shared by every store, made when first needed
+
+	private final ArrayList<WeakReference<OffHeapFrameStore>> stores = new ArrayList<WeakReference<OffHeapFrameStore>>();	// the stores sharing the budget
+	private long limit;				// the bytes of frames kept off the heap by every store together
+	private int overLimitEvents;	// the times the stores were over the limit, and spilled frames to fit it
+	private long spilledBytes;		// the bytes the stores let go of off the heap when asked to spill
+
+	/**
+	 * Constructs a budget shared by no store yet.
+	 * @param limit The bytes of frames kept off the heap by every store together.
+	 */
+	public OffHeapBudget(long limit) {
+		setLimit(limit);
+	}
+
+	/**
+	 * Returns the budget shared by every store, whose limit is half the direct memory of the JVM.
+	 * @return The default off-heap budget.
+	 */
+	public static synchronized OffHeapBudget getDefault() {
+		if (defaultBudget == null) {
+			defaultBudget = new OffHeapBudget(DEFAULT_LIMIT);
+		}
+		return defaultBudget;
+	}
+
+	/**
+	 * Returns the bytes of direct buffers the JVM allows, which is the max heap size unless set otherwise.
+	 */
+	private static long maxDirectMemory() {
+		try {
+			VMOption option = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class).getVMOption("MaxDirectMemorySize");
+			long bytes = Long.parseLong(option.getValue());
+			if (bytes > 0) {
+				return bytes;
+			}
+		}
+		catch (RuntimeException e) { // not a HotSpot JVM, so the usual default is assumed
+		}
+		return Runtime.getRuntime().maxMemory();
+	}
+
+	//================================================================================
+	// Region: Sharing
+	//================================================================================
+	/**
+	 * Adds a store to those sharing the budget.
+	 * @param store The store, which shares the budget until it is closed.
+	 */
+	public synchronized void register(OffHeapFrameStore store) {
+		this.stores.add(new WeakReference<OffHeapFrameStore>(store));
+	}
+
+	/**
+	 * Returns the stores sharing the budget that are still open.
+	 */
+	private synchronized ArrayList<OffHeapFrameStore> getStores() {
+		ArrayList<OffHeapFrameStore> live = new ArrayList<OffHeapFrameStore>();
+		for (Iterator<WeakReference<OffHeapFrameStore>> it = this.stores.iterator(); it.hasNext(); ) {
+			OffHeapFrameStore store = it.next().get();
+			if (store == null || store.isClosed()) {
+				it.remove();
+			}
+			else {
+				live.add(store);
+			}
+		}
+		return live;
+	}
+
+	/**
+	 * Returns the bytes held off the heap by every store sharing the budget.
+	 * @return The bytes held off the heap.
+	 */
+	public long getOffHeapBytes() {
+		long bytes = 0;
+		for (OffHeapFrameStore store : getStores()) { // the stores are asked outside the lock, so it is never held while waiting for a store
+			bytes += store.getOffHeapBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Spills frames of the stores holding the most off the heap, if every store together holds more than the limit.
+	 * Called by a store once it has stored a frame, without holding its own lock.
+	 * @return The bytes no longer held off the heap.
+	 */
+	public long balance() {
+		long excess = getOffHeapBytes() - getLimit();
+		if (excess <= 0) {
+			return 0;
+		}
+		synchronized (this) {
+			this.overLimitEvents++;
+		}
+		return spill(excess);
+	}
+
+	/**
+	 * Spills the least recently used frames of the stores, those holding the most off the heap first,
+	 * until the given bytes are no longer held off the heap or every store has spilled what it can.
+	 * @param bytes The bytes to let go of off the heap.
+	 * @return The bytes no longer held off the heap.
+	 */
+	public long spill(long bytes) {
+		ArrayList<OffHeapFrameStore> stores = getStores();
+		long spilled = 0;
+		while (!stores.isEmpty() && spilled < bytes) {
+			OffHeapFrameStore largest = null;
+			long largestBytes = -1;
+			for (OffHeapFrameStore store : stores) {
+				long held = store.getOffHeapBytes();
+				if (held > largestBytes) {
+					largest = store;
+					largestBytes = held;
+				}
+			}
+			spilled += largest.spillDownTo(Math.max(0, largestBytes - (bytes - spilled)));
+			stores.remove(largest);
+		}
+		synchronized (this) {
+			this.spilledBytes += spilled;
+		}
+		return spilled;
+	}
+
+	//================================================================================
+	// Region: Getters and Setters
+	//================================================================================
+	/**
+	 * Returns the bytes of frames kept off the heap by every store together.
+	 * @return The limit.
+	 */
+	public synchronized long getLimit() {
+		return this.limit;
+	}
+
+	/**
+	 * Sets the bytes of frames kept off the heap by every store together. Stores over the new limit
+	 * spill frames once one of them next stores a frame, or when {@link #balance} is called.
+	 * @param limit The limit.
+	 */
+	public synchronized void setLimit(long limit) {
+		if (limit < 0) {
+			throw new IllegalArgumentException("The off-heap limit cannot be negative.");
+		}
+		this.limit = limit;
+	}
+
+	/**
+	 * Returns the number of times the stores were over the limit, and spilled frames to fit it.
+	 * @return The number of times the limit was passed.
+	 */
+	public synchronized int getOverLimitEvents() {
+		return this.overLimitEvents;
+	}
+
+	/**
+	 * Returns the bytes the stores have let go of off the heap when asked to spill, whether to fit the
+	 * limit or because direct memory ran out.
+	 * @return The bytes spilled.
+	 */
+	public synchronized long getSpilledBytes() {
+		return this.spilledBytes;
+	}
+}
@@ -0,0 +1,836 @@
+package mainEditor.frameStore;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import mainEditor.ImageFrameData;
+
+/**
+ * A frame source that keeps the pixels of frames outside the Java heap, in direct byte buffers,
+ * so that the frames of large animations neither fill the heap nor lengthen garbage collections.
+ * An image is copied into the store once, and copied back onto the heap as an image whenever it
+ * is needed; only a few recently used images are kept on the heap.
+ * <p>
+ * A store belongs to one document, and lives as long as the document's frames do: frames no longer
+ * used by the document are released with {@link #retainOnly}, and every frame is released when the
+ * store is closed. While the store is pinned (by a save reading its frames, say), released frames
+ * are kept until the last pin is dropped.
+ * <p>
+ * Stored pixels are never changed, so they are shared: storing an image with the same pixels and colors
+ * as a frame already in the store returns the index of that frame rather than storing the pixels again.
+ * Animations that repeat frames, and edits that turn several frames into the same image, then take
+ * up the room of one frame each.
+ * <p>
+ * Frames are kept in three tiers: the few most recently used as images on the heap, then as many
+ * as fit in the store's off-heap budget in direct buffers, and the rest in a temporary spill file.
+ * Once the frames off the heap take up more than the budget, the least recently used are written to
+ * the spill file and their buffers dropped; a spilled frame is read back from the file whenever it
+ * is needed. Every store also shares the {@link OffHeapBudget} of the JVM, so the stores of several
+ * documents spill once they hold too much between them, and if direct memory runs out anyway while
+ * a frame is stored, the stores spill what they can and the frame is stored again.
+ * <p>
+ * Frames off the heap that have not been used for a while are compressed (with deflate at its
+ * fastest setting, which inflates far faster than a frame is shown) by {@link #compactIdle}, which
+ * a {@link FrameCompactor} calls in the background. Compressed frames stay compressed, are inflated
+ * each time they are needed, and are spilled compressed. The spill file is made when the first frame is spilled, and deleted when the store is
+ * closed. If it can't be written, frames stay off the heap regardless of the budget.
+ * <p>
+ * Only images whose pixels are in a single bank of bytes or ints can be stored, which covers the
+ * indexed frames of GIFs and the ARGB frames of edits. Every method is thread-safe.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class OffHeapFrameStore implements FrameSource {
+	public static final int DEFAULT_HOT_FRAMES = 8;	// default number of stored frames kept on the heap
+	public static final long DEFAULT_OFF_HEAP_BUDGET = OffHeapBudget.DEFAULT_LIMIT;	// default bytes kept off the heap by one store before spilling
+
+	/**
+	 * The pixels of one stored frame, and what is needed to make an image of them again.
+	 */
+	private static class StoredFrame {
+		final ColorModel colorModel;		// shared with the image the frame was stored from
+		final SampleModel sampleModel;		// the layout of the pixels in the bank
+		final int dataType;					// DataBuffer.TYPE_BYTE or DataBuffer.TYPE_INT
+		final int size;						// the number of elements in the bank
+		final int bytes;					// the number of bytes in the bank
+		final long hash;					// the hash of the pixels, which frames are looked up by
+		ByteBuffer pixels;					// the bank, outside the heap (null once compressed or spilled)
+		ByteBuffer compressed;				// the deflated bank, outside the heap (null unless compressed and not spilled)
+		boolean incompressible;				// whether deflating the bank saved too little to keep
+		long lastUsed = System.nanoTime();	// when the frame was last stored or produced
+		long spillOffset = -1;				// where the bank is in the spill file (-1 if not spilled)
+		int spillLength;					// the bytes of the bank in the spill file
+		boolean spillCompressed;			// whether the bank in the spill file is deflated
+
+		StoredFrame(ColorModel colorModel, SampleModel sampleModel, int dataType, int size, ByteBuffer pixels, long hash) {
+			this.colorModel = colorModel;
+			this.sampleModel = sampleModel;
+			this.dataType = dataType;
+			this.size = size;
+			this.bytes = pixels.capacity();
+			this.pixels = pixels;
+			this.hash = hash;
+		}
+
+		/**
+		 * Returns the bytes the frame takes up off the heap, which is none once spilled.
+		 */
+		int footprint() {
+			return this.pixels != null ? this.bytes : this.compressed != null ? this.compressed.capacity() : 0;
+		}
+	}
+
+	private final ArrayList<StoredFrame> frames = new ArrayList<StoredFrame>();	// stored frames by index (null once released)
+	private final HashMap<Long, ArrayList<Integer>> byHash = new HashMap<Long, ArrayList<Integer>>();	// stored frames by pixel hash
+	private final FrameCache hot;				// the most recently used frames, as images on the heap
+	private final LinkedHashMap<Integer, StoredFrame> resident = new LinkedHashMap<Integer, StoredFrame>(16, 0.75f, true);	// unspilled frames, least recently used first
+	private long offHeapBudget;					// the bytes kept off the heap before frames are spilled
+	private final BitSet pendingRelease = new BitSet();	// frames released while the store was pinned
+	private int pins;							// the number of readers that need released frames kept
+	private boolean closing;					// whether the store is closed once the last pin is dropped
+	private boolean closed;						// whether every frame has been released for good
+	private long storedBytes;					// the bytes of every frame stored, off the heap or spilled
+	private long offHeapBytes;					// the bytes the frames that are not spilled take up, some compressed
+	private long spilledBytes;					// the bytes the spilled frames take up in the spill file
+	private FileChannel spillFile;				// where frames are spilled (null until the first is)
+	private long spillEnd;						// the end of the spilled bytes in the file
+	private boolean spillFailed;				// whether the spill file could not be made or written
+	private int spillWrites, spillReads;		// the frames written to and read back from the spill file
+	private int compressions;					// the frames compressed by compactIdle
+	private int sharedPuts;						// frames stored by sharing the pixels of an earlier one
+	private long sharedBytes;					// the bytes those frames would otherwise have taken up
+
+	/**
+	 * Constructs an empty store, which keeps a default number of frames on the heap, and
+	 * spills frames once they take up more than the shared off-heap limit.
+	 */
+	public OffHeapFrameStore() {
+		this(DEFAULT_HOT_FRAMES, DEFAULT_OFF_HEAP_BUDGET);
+	}
+
+	/**
+	 * Constructs an empty store.
+	 * @param hotFrames The max number of recently used frames kept on the heap as images.
+	 * @param offHeapBudget The bytes of frames kept off the heap before the least recently used are spilled.
+	 */
+	public OffHeapFrameStore(int hotFrames, long offHeapBudget) {
+		if (offHeapBudget < 0) {
+			throw new IllegalArgumentException("The off-heap budget cannot be negative.");
+		}
+		this.hot = new FrameCache(hotFrames);
+		this.offHeapBudget = offHeapBudget;
+		OffHeapBudget.getDefault().register(this);
+	}
+
+	//================================================================================
+	// Region: Storing and Producing Frames
+	//================================================================================
+	/**
+	 * Returns whether the pixels of an image can be stored.
+	 * @param img The image.
+	 * @return True if the image is a whole image with a single bank of bytes or ints.
+	 */
+	public static boolean canStore(BufferedImage img) {
+		WritableRaster raster = img.getRaster();
+		DataBuffer db = raster.getDataBuffer();
+		return (db instanceof DataBufferByte || db instanceof DataBufferInt) && db.getNumBanks() == 1
+				&& db.getOffset() == 0 && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0;
+	}
+
+	/**
+	 * Copies the pixels of an image into the store, unless a frame with the same pixels and colors is
+	 * already stored. The image is not kept, and may be changed afterwards.
+	 * @param img The image to store.
+	 * @return The index the frame is produced at, which is that of the earlier frame if there is one.
+	 * @throws IllegalArgumentException if the image can't be stored.
+	 * @throws IllegalStateException if the store is closed.
+	 */
+	public int put(BufferedImage img) {
+		int index;
+		try {
+			index = store(img);
+		}
+		catch (OutOfMemoryError e) { // direct memory ran out even once this store spilled, so every store spills
+			OffHeapBudget.getDefault().spill(Long.MAX_VALUE);
+			index = store(img);
+		}
+		// the other stores are spilled without holding the lock of this one, as they may be storing frames too
+		OffHeapBudget.getDefault().balance();
+		return index;
+	}
+
+	private synchronized int store(BufferedImage img) {
+		if (!canStore(img)) {
+			throw new IllegalArgumentException("Only images with a single bank of bytes or ints can be stored.");
+		}
+		checkOpen();
+
+		WritableRaster raster = img.getRaster();
+		DataBuffer db = raster.getDataBuffer();
+		int size = db.getSize();
+		long hash = hash(db, size);
+		
+		// shares an equal frame, if one is stored
+		ArrayList<Integer> candidates = this.byHash.get(hash);
+		if (candidates != null) {
+			for (int index : candidates) {
+				StoredFrame frame = this.frames.get(index);
+				if (isSame(frame, img, db, size)) {
+					this.pendingRelease.clear(index); // used again, so kept even if it was dropped while pinned
+					this.resident.get(index);
+					frame.lastUsed = System.nanoTime();
+					this.sharedPuts++;
+					this.sharedBytes += frame.bytes;
+					return index;
+				}
+			}
+		}
+		
+		ByteBuffer pixels;
+		if (db instanceof DataBufferInt) {
+			pixels = allocate(size * 4).order(ByteOrder.nativeOrder());
+			pixels.asIntBuffer().put(((DataBufferInt) db).getData(), 0, size);
+		}
+		else {
+			pixels = allocate(size);
+			pixels.put(((DataBufferByte) db).getData(), 0, size);
+		}
+		StoredFrame frame = new StoredFrame(img.getColorModel(), raster.getSampleModel(), db.getDataType(), size, pixels, hash);
+		this.frames.add(frame);
+		this.storedBytes += frame.bytes;
+		this.offHeapBytes += frame.bytes;
+		
+		int index = this.frames.size() - 1;
+		this.resident.put(index, frame);
+		if (candidates == null) {
+			candidates = new ArrayList<Integer>(1);
+			this.byHash.put(hash, candidates);
+		}
+		candidates.add(index);
+		
+		spillOverBudget();
+		return index;
+	}
+	
+	/**
+	 * Allocates a direct buffer for a frame, spilling every frame of the store first if direct memory has run out.
+	 * @throws OutOfMemoryError if direct memory runs out even so.
+	 */
+	private ByteBuffer allocate(int bytes) {
+		try {
+			return ByteBuffer.allocateDirect(bytes);
+		}
+		catch (OutOfMemoryError e) { // the buffers of spilled frames are freed by the collection the next allocation runs
+			spillDownTo(0);
+			return ByteBuffer.allocateDirect(bytes);
+		}
+	}
+
+	/**
+	 * Hashes the elements of a bank (FNV-1a over each element).
+	 */
+	private static long hash(DataBuffer db, int size) {
+		long h = 0xcbf29ce484222325L;
+		if (db instanceof DataBufferInt) {
+			int[] data = ((DataBufferInt) db).getData();
+			for (int i = 0; i < size; i++) {
+				h = (h ^ data[i]) * 0x100000001b3L;
+			}
+		}
+		else {
+			byte[] data = ((DataBufferByte) db).getData();
+			for (int i = 0; i < size; i++) {
+				h = (h ^ (data[i] & 0xFF)) * 0x100000001b3L;
+			}
+		}
+		return h;
+	}
+	
+	/**
+	 * Returns whether a stored frame has the same pixels, layout and colors as an image.
+	 */
+	private boolean isSame(StoredFrame frame, BufferedImage img, DataBuffer db, int size) {
+		if (frame.dataType != db.getDataType() || frame.size != size || !frame.sampleModel.equals(img.getSampleModel())
+				|| !isSameColors(frame.colorModel, img.getColorModel())) {
+			return false;
+		}
+		ByteBuffer pixels;
+		try {
+			pixels = readPixels(frame);
+		}
+		catch (IOException e) { // a frame that can't be read back is not shared
+			return false;
+		}
+		if (db instanceof DataBufferInt) {
+			return pixels.asIntBuffer().equals(IntBuffer.wrap(((DataBufferInt) db).getData(), 0, size));
+		}
+		return pixels.equals(ByteBuffer.wrap(((DataBufferByte) db).getData(), 0, size));
+	}
+	
+	/**
+	 * Returns whether two color models turn pixels into the same colors (index color models
+	 * don't compare their palettes when compared for equality).
+	 */
+	private static boolean isSameColors(ColorModel a, ColorModel b) {
+		if (a == b) {
+			return true;
+		}
+		if (!a.equals(b)) {
+			return false;
+		}
+		if (a instanceof IndexColorModel && b instanceof IndexColorModel) {
+			IndexColorModel ia = (IndexColorModel) a, ib = (IndexColorModel) b;
+			if (ia.getMapSize() != ib.getMapSize() || ia.getTransparentPixel() != ib.getTransparentPixel()) {
+				return false;
+			}
+			int[] pa = new int[ia.getMapSize()], pb = new int[ib.getMapSize()];
+			ia.getRGBs(pa);
+			ib.getRGBs(pb);
+			return Arrays.equals(pa, pb);
+		}
+		return true;
+	}
+
+	@Override
+	public synchronized BufferedImage getFrame(int index) throws IOException {
+		if (this.closed) {
+			throw new IOException("The frame store is closed.");
+		}
+		if (index < 0 || index >= this.frames.size()) {
+			throw new IndexOutOfBoundsException("No stored frame " + index + ".");
+		}
+
+		BufferedImage img = this.hot.get(index);
+		if (img != null) {
+			return img;
+		}
+		StoredFrame frame = this.frames.get(index);
+		if (frame == null) {
+			throw new IOException("Stored frame " + index + " was released.");
+		}
+		this.resident.get(index); // marks the frame as most recently used, if it is not spilled
+		frame.lastUsed = System.nanoTime();
+
+		DataBuffer db;
+		ByteBuffer pixels = readPixels(frame);
+		if (frame.dataType == DataBuffer.TYPE_INT) {
+			int[] data = new int[frame.size];
+			pixels.asIntBuffer().get(data);
+			db = new DataBufferInt(data, frame.size);
+		}
+		else {
+			byte[] data = new byte[frame.size];
+			pixels.get(data);
+			db = new DataBufferByte(data, frame.size);
+		}
+		WritableRaster raster = Raster.createWritableRaster(frame.sampleModel, db, null);
+		img = new BufferedImage(frame.colorModel, raster, frame.colorModel.isAlphaPremultiplied(), null);
+		this.hot.put(index, img);
+		return img;
+	}
+
+	@Override
+	public synchronized int getNumberOfFrames() {
+		return this.frames.size();
+	}
+
+	@Override
+	public synchronized long getCachedBytes() {
+		return this.hot.getBytes();
+	}
+
+	@Override
+	public synchronized long evictCache() {
+		long bytes = this.hot.getBytes();
+		this.hot.clear();
+		return bytes;
+	}
+
+	//================================================================================
+	// Region: Spilling
+	//================================================================================
+	/**
+	 * Returns the bank of a frame, from its buffer or from the spill file, in native byte order.
+	 * @throws IOException if the frame can't be read back from the spill file.
+	 */
+	private ByteBuffer readPixels(StoredFrame frame) throws IOException {
+		if (frame.pixels != null) {
+			ByteBuffer pixels = frame.pixels.duplicate().order(ByteOrder.nativeOrder());
+			pixels.clear();
+			return pixels;
+		}
+		if (frame.compressed != null) {
+			ByteBuffer compressed = frame.compressed.duplicate();
+			compressed.clear();
+			return inflate(compressed, frame.bytes);
+		}
+		
+		ByteBuffer stored = ByteBuffer.allocate(frame.spillLength);
+		while (stored.hasRemaining()) {
+			if (this.spillFile.read(stored, frame.spillOffset + stored.position()) < 0) {
+				throw new IOException("The spill file ended early.");
+			}
+		}
+		stored.flip();
+		this.spillReads++;
+		return frame.spillCompressed ? inflate(stored, frame.bytes) : stored.order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Spills the least recently used frames until the frames off the heap fit in the budget.
+	 */
+	private void spillOverBudget() {
+		spillDownTo(this.offHeapBudget);
+	}
+
+	/**
+	 * Spills the least recently used frames, whatever the budget, until the frames off the heap
+	 * take up no more than the given bytes. Lets the memory of the frames go when it runs short.
+	 * @param bytes The bytes of frames to keep off the heap.
+	 * @return The bytes no longer held off the heap.
+	 */
+	public synchronized long spillDownTo(long bytes) {
+		long before = this.offHeapBytes;
+		Iterator<StoredFrame> it = this.resident.values().iterator();
+		while (this.offHeapBytes > bytes && !this.spillFailed && it.hasNext()) {
+			StoredFrame frame = it.next();
+			int footprint = frame.footprint();
+			try {
+				spill(frame);
+			}
+			catch (IOException e) { // keeps the frames off the heap, rather than failing to store them
+				this.spillFailed = true;
+				break;
+			}
+			it.remove();
+			this.offHeapBytes -= footprint;
+			this.spilledBytes += frame.spillLength;
+		}
+		return before - this.offHeapBytes;
+	}
+
+	/**
+	 * Writes the bank of a frame at the end of the spill file, and drops its buffer.
+	 */
+	private void spill(StoredFrame frame) throws IOException {
+		if (this.spillFile == null) {
+			this.spillFile = FileChannel.open(Files.createTempFile("frames", ".spill"), StandardOpenOption.READ,
+												StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+		}
+		ByteBuffer pixels = (frame.compressed != null ? frame.compressed : frame.pixels).duplicate();
+		pixels.clear();
+		long offset = this.spillEnd;
+		while (pixels.hasRemaining()) {
+			this.spillFile.write(pixels, offset + pixels.position());
+		}
+		this.spillEnd += pixels.capacity();
+		frame.spillOffset = offset;
+		frame.spillLength = pixels.capacity();
+		frame.spillCompressed = frame.compressed != null;
+		frame.pixels = null;
+		frame.compressed = null;
+		this.spillWrites++;
+	}
+
+	//================================================================================
+	// Region: Compression
+	//================================================================================
+	/**
+	 * Compresses the frames off the heap that have not been stored or produced for a while, and
+	 * are not among the frames kept on the heap. Frames are compressed one at a time, without
+	 * holding the store's lock, so frames can still be produced meanwhile.
+	 * @param idleMillis How long a frame must have gone unused to be compressed.
+	 * @return The number of frames compressed.
+	 */
+	public int compactIdle(long idleMillis) {
+		long idleSince = System.nanoTime() - idleMillis * 1000000L;
+		int compressed = 0;
+		while (true) {
+			int index = -1;
+			StoredFrame frame = null;
+			ByteBuffer pixels;
+			synchronized (this) {
+				if (this.closed || this.closing) {
+					break;
+				}
+				// least recently used first, so the search stops at the first frame used since
+				for (Map.Entry<Integer, StoredFrame> e : this.resident.entrySet()) {
+					StoredFrame f = e.getValue();
+					if (f.lastUsed - idleSince > 0) {
+						break;
+					}
+					if (f.pixels != null && !f.incompressible && !this.hot.containsKey(e.getKey())) {
+						index = e.getKey();
+						frame = f;
+						break;
+					}
+				}
+				if (frame == null) {
+					break;
+				}
+				pixels = frame.pixels.duplicate();
+				pixels.clear();
+			}
+			
+			// stored pixels never change, so they can be read without the lock
+			ByteBuffer packed = deflate(pixels);
+			
+			synchronized (this) {
+				if (this.closed || index >= this.frames.size() || this.frames.get(index) != frame || frame.pixels == null) {
+					continue; // released, spilled or closed meanwhile
+				}
+				if (packed == null) {
+					frame.incompressible = true;
+					continue;
+				}
+				frame.compressed = packed;
+				frame.pixels = null;
+				this.offHeapBytes -= frame.bytes - packed.capacity();
+				this.compressions++;
+				compressed++;
+			}
+		}
+		return compressed;
+	}
+
+	/**
+	 * Deflates a bank into a direct buffer of its own.
+	 * @return The deflated bank, or null if it isn't at least a tenth smaller.
+	 */
+	private static ByteBuffer deflate(ByteBuffer pixels) {
+		byte[] in = new byte[pixels.remaining()];
+		pixels.get(in);
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(in);
+			deflater.finish();
+			byte[] out = new byte[in.length - in.length / 10];
+			int length = 0;
+			while (!deflater.finished() && length < out.length) {
+				length += deflater.deflate(out, length, out.length - length);
+			}
+			if (!deflater.finished()) {
+				return null;
+			}
+			ByteBuffer packed = ByteBuffer.allocateDirect(length);
+			packed.put(out, 0, length);
+			return packed;
+		}
+		finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Inflates a deflated bank onto the heap, in native byte order.
+	 * @throws IOException if the deflated bank is corrupt.
+	 */
+	private static ByteBuffer inflate(ByteBuffer packed, int bytes) throws IOException {
+		byte[] in;
+		if (packed.hasArray() && packed.arrayOffset() == 0 && packed.remaining() == packed.array().length) {
+			in = packed.array();
+		}
+		else {
+			in = new byte[packed.remaining()];
+			packed.get(in);
+		}
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(in);
+			byte[] out = new byte[bytes];
+			int length = 0;
+			while (length < bytes && !inflater.finished()) {
+				int n = inflater.inflate(out, length, bytes - length);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				length += n;
+			}
+			if (length != bytes) {
+				throw new IOException("A compressed frame is shorter than it should be.");
+			}
+			return ByteBuffer.wrap(out).order(ByteOrder.nativeOrder());
+		}
+		catch (DataFormatException e) {
+			throw new IOException("A compressed frame is corrupt.", e);
+		}
+		finally {
+			inflater.end();
+		}
+	}
+
+	//================================================================================
+	// Region: Lifetime
+	//================================================================================
+	/**
+	 * Releases every stored frame that is not produced for one of the given frames, or for one
+	 * of the frames a composite frame source they use draws from.
+	 * @param used The frames whose images must still be produced; frames of other sources are ignored.
+	 */
+	public synchronized void retainOnly(Iterable<ImageFrameData> used) {
+		BitSet keep = new BitSet(this.frames.size());
+		ArrayDeque<Iterable<ImageFrameData>> toVisit = new ArrayDeque<Iterable<ImageFrameData>>();
+		Set<FrameSource> visited = Collections.newSetFromMap(new IdentityHashMap<FrameSource, Boolean>());
+		toVisit.add(used);
+		while (!toVisit.isEmpty()) {
+			for (ImageFrameData frame : toVisit.poll()) {
+				FrameSource source = frame.getFrameSource();
+				if (source == this) {
+					keep.set(frame.getSourceIndex());
+				}
+				else if (source instanceof CompositeFrameSource && visited.add(source)) {
+					toVisit.add(((CompositeFrameSource) source).getFrames());
+				}
+			}
+		}
+		for (int i = 0; i < this.frames.size(); i++) {
+			if (!keep.get(i) && this.frames.get(i) != null) {
+				this.pendingRelease.set(i);
+			}
+		}
+		if (this.pins == 0) {
+			releasePending();
+		}
+	}
+
+	/**
+	 * Keeps released frames until {@link #unpin} is called, so that a reader can go on producing
+	 * frames the document has since dropped.
+	 */
+	public synchronized void pin() {
+		this.pins++;
+	}
+
+	/**
+	 * Drops a pin taken by {@link #pin}, releasing the frames released meanwhile once no pins are left.
+	 */
+	public synchronized void unpin() {
+		if (this.pins > 0 && --this.pins == 0) {
+			releasePending();
+			if (this.closing) {
+				close();
+			}
+		}
+	}
+
+	/**
+	 * Releases every stored frame; afterwards no frame can be produced or stored. If the store is
+	 * pinned, the frames are released once the last pin is dropped.
+	 */
+	public synchronized void close() {
+		if (this.pins > 0) {
+			this.closing = true;
+			return;
+		}
+		this.frames.clear();
+		this.byHash.clear();
+		this.hot.clear();
+		this.resident.clear();
+		this.pendingRelease.clear();
+		this.storedBytes = 0;
+		this.offHeapBytes = 0;
+		this.spilledBytes = 0;
+		if (this.spillFile != null) {
+			try {
+				this.spillFile.close(); // deletes the file
+			}
+			catch (IOException e) { // nothing is read from it again anyway
+			}
+			this.spillFile = null;
+		}
+		this.closed = true;
+	}
+
+	private void releasePending() {
+		for (int i = this.pendingRelease.nextSetBit(0); i >= 0; i = this.pendingRelease.nextSetBit(i + 1)) {
+			StoredFrame frame = this.frames.set(i, null);
+			if (frame != null) {
+				this.storedBytes -= frame.bytes;
+				if (frame.spillOffset < 0) {
+					this.offHeapBytes -= frame.footprint();
+				}
+				else { // the room in the spill file is not reused, though the file goes when the store is closed
+					this.spilledBytes -= frame.spillLength;
+				}
+				this.resident.remove(i);
+				ArrayList<Integer> candidates = this.byHash.get(frame.hash);
+				candidates.remove(Integer.valueOf(i));
+				if (candidates.isEmpty()) {
+					this.byHash.remove(frame.hash);
+				}
+			}
+			this.hot.remove(i);
+		}
+		this.pendingRelease.clear();
+	}
+
+	private void checkOpen() {
+		if (this.closed || this.closing) {
+			throw new IllegalStateException("The frame store is closed.");
+		}
+	}
+
+	//================================================================================
+	// Region: Getters
+	//================================================================================
+	/**
+	 * Returns the number of bytes of pixels stored, whether held off the heap or spilled.
+	 * @return The bytes stored.
+	 */
+	public synchronized long getStoredBytes() {
+		return this.storedBytes;
+	}
+
+	/**
+	 * Returns the number of bytes held outside the heap by frames that are not spilled, some of which
+	 * may be compressed.
+	 * @return The bytes held off the heap.
+	 */
+	public synchronized long getOffHeapBytes() {
+		return this.offHeapBytes;
+	}
+
+	/**
+	 * Returns the number of bytes the spilled frames take up in the spill file, some of which may be compressed.
+	 * @return The bytes spilled.
+	 */
+	public synchronized long getSpilledBytes() {
+		return this.spilledBytes;
+	}
+
+	/**
+	 * Returns the number of times a frame was written to the spill file.
+	 * @return The frames spilled.
+	 */
+	public synchronized int getSpillWrites() {
+		return this.spillWrites;
+	}
+
+	/**
+	 * Returns the number of times a spilled frame was read back from the spill file.
+	 * @return The frames read back.
+	 */
+	public synchronized int getSpillReads() {
+		return this.spillReads;
+	}
+
+	/**
+	 * Returns the bytes of frames kept off the heap before the least recently used are spilled.
+	 * @return The off-heap budget.
+	 */
+	public synchronized long getOffHeapBudget() {
+		return this.offHeapBudget;
+	}
+
+	/**
+	 * Sets the bytes of frames kept off the heap before the least recently used are spilled,
+	 * spilling frames now if they no longer fit.
+	 * @param offHeapBudget The off-heap budget.
+	 */
+	public synchronized void setOffHeapBudget(long offHeapBudget) {
+		if (offHeapBudget < 0) {
+			throw new IllegalArgumentException("The off-heap budget cannot be negative.");
+		}
+		this.offHeapBudget = offHeapBudget;
+		spillOverBudget();
+	}
+
+	/**
+	 * Returns the number of bytes of pixels stored for a frame.
+	 * @param index The index of the frame.
+	 * @return The bytes of the frame, or 0 if it was released.
+	 */
+	public synchronized long getFrameBytes(int index) {
+		StoredFrame frame = index >= 0 && index < this.frames.size() ? this.frames.get(index) : null;
+		return frame == null ? 0 : frame.bytes;
+	}
+
+	/**
+	 * Returns the number of bytes a stored frame takes up where it is kept: off the heap or in
+	 * the spill file, compressed or not.
+	 * @param index The index of the frame.
+	 * @return The bytes the frame takes up, or 0 if it was released.
+	 */
+	public synchronized long getFootprint(int index) {
+		StoredFrame frame = index >= 0 && index < this.frames.size() ? this.frames.get(index) : null;
+		if (frame == null) {
+			return 0;
+		}
+		return frame.spillOffset >= 0 ? frame.spillLength : frame.footprint();
+	}
+
+	/**
+	 * Returns the number of frames compressed by {@link #compactIdle}.
+	 * @return The frames compressed.
+	 */
+	public synchronized int getCompressions() {
+		return this.compressions;
+	}
+
+	/**
+	 * Returns whether a stored frame is spilled to the spill file, rather than held off the heap.
+	 * @param index The index of the frame.
+	 * @return True if the frame is spilled; false if it is not, or was released.
+	 */
+	public synchronized boolean isSpilled(int index) {
+		StoredFrame frame = index >= 0 && index < this.frames.size() ? this.frames.get(index) : null;
+		return frame != null && frame.spillOffset >= 0;
+	}
+
+	/**
+	 * Returns the number of frames stored by sharing the pixels of a frame stored earlier.
+	 * @return The number of shared frames stored.
+	 */
+	public synchronized int getSharedPuts() {
+		return this.sharedPuts;
+	}
+
+	/**
+	 * Returns the bytes that frames stored by sharing the pixels of an earlier frame would
+	 * otherwise have taken up.
+	 * @return The bytes not stored thanks to sharing.
+	 */
+	public synchronized long getSharedBytes() {
+		return this.sharedBytes;
+	}
+
+	/**
+	 * Returns whether the store has been closed.
+	 * @return True if no more frames can be stored.
+	 */
+	public synchronized boolean isClosed() {
+		return this.closed || this.closing;
+	}
+}
@@ -32,7 +32,7 @@ public class BlankFrameHistory extends ImageHistory {
 	
 	@Override
 	public ImageFrameData apply(ImageFrameData img) {
-		return img.noHistoryDeepCopy();
+		return img.noHistoryCopy();
 	}
 
 	/**
@@ -2,9 +2,12 @@ package mainEditor.history;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.BufferedImageOp;
+import java.awt.image.ConvolveOp;
+import java.awt.image.RescaleOp;
 
 import mainEditor.BufferedImageHelper;
 import mainEditor.ImageFrameData;
+import mainEditor.ImagePool;
 
 /**
  * Class that extends the image history class to guarantee that records are buffered image filters.
@@ -32,18 +35,32 @@ public class ImageFilterHistory extends ImageHistory {
 	
 	@Override
 	public ImageFrameData apply(ImageFrameData imgData) {
-		BufferedImage changedFrame = BufferedImageHelper.deepCopyARGB(imgData.getImage());
+		if(isEmpty()) { // if no filter, returns a copy sharing the image, or still producing it only when needed
+			return imgData.noHistoryCopy();
+		}
+		
+		// filters need true color, so frames kept indexed are converted first; ARGB frames are
+		// not copied, since a filter writes into an image of its own and leaves its source alone
+		BufferedImage source = imgData.getImage();
+		BufferedImage converted = null;	// the true color copy of an indexed frame, dropped once filtered
+		if (source.getType() != BufferedImage.TYPE_INT_ARGB) {
+			converted = BufferedImageHelper.deepCopyARGB(source);
+			source = converted;
+		}
 		//System.err.println("Applying changes...");
-		BufferedImage temp = null;
 		
-		if(isEmpty()) {} // if no filter, returns image copy
-		else { // if there is actually a filter, apply filter to image
-			 temp= filterRecord.filter(changedFrame, null);
-			 changedFrame = temp;
+		// the filters the editor makes write an image like their source, so it can come from the image pool
+		BufferedImage changedFrame = null;
+		if (filterRecord instanceof RescaleOp || filterRecord instanceof ConvolveOp) {
+			changedFrame = BufferedImageHelper.getNewImageARGB(source);
+		}
+		changedFrame = filterRecord.filter(source, changedFrame);
+		if (converted != null && converted != changedFrame) {
+			ImagePool.getDefault().release(converted);
 		}
 		
-		// copies the image frame data deeply and returns it
-		ImageFrameData newData = imgData.noHistoryDeepCopy();
+		// copies the image frame data, without the image it is about to replace, and returns it
+		ImageFrameData newData = imgData.noHistoryCopy();
 		newData.setImage(changedFrame);
 		
 		return newData;
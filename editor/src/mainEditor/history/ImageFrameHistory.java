@@ -32,11 +32,15 @@ public class ImageFrameHistory extends ImageHistory {
 	
 	@Override
 	public ImageFrameData apply(ImageFrameData imgData) {
-		BufferedImage changedFrame = BufferedImageHelper.deepCopy(imgData.getImage());
+		// copies the image frame data, sharing its image until it is drawn on
+		ImageFrameData newData = imgData.noHistoryCopy();
 		
 		if(isEmpty()) {} // if no image record, returns passed image data copy
 		else { // if there is actually an image record, draw it over passed image copy
 			
+			// the copy gets a true color image of its own here, since the image is shared, or
+			// indexed (where drawing would snap colors to its palette)
+			BufferedImage changedFrame = newData.getWritableImage();
 			Graphics g = changedFrame.getGraphics();
 
 			// this is a new buffered image obtained from drawing the image record
@@ -46,10 +50,6 @@ public class ImageFrameHistory extends ImageHistory {
 			g.dispose();
 		}
 		
-		// copies the image frame data deeply and returns it
-		ImageFrameData newData = imgData.noHistoryDeepCopy();
-		newData.setImage(changedFrame);
-		
 		return newData;
 	}
 
@@ -73,4 +73,9 @@ public class ImageFrameHistory extends ImageHistory {
 		return this.frameRecord == null;
 	}
 
+	@Override
+	public long getRecordBytes() {
+		return isEmpty() ? 0 : BufferedImageHelper.getByteSize(this.frameRecord);
+	}
+
 }
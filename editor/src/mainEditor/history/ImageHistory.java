@@ -126,5 +126,14 @@ public abstract class ImageHistory implements History {
 	 * @return True if the current record is empty; false otherwise.
 	 */
 	public abstract boolean isEmpty();
+	
+	/**
+	 * Returns the bytes of image data the current historical record holds on the heap.
+	 * Records which hold no images of their own take up no bytes.
+	 * @return The bytes held by the current record.
+	 */
+	public long getRecordBytes() {
+		return 0;
+	}
 
 }
@@ -32,8 +32,8 @@ public class ImageMetadataHistory extends ImageHistory {
 	
 	@Override
 	public ImageFrameData apply(ImageFrameData imgData) {
-		// copies the image frame data deeply
-		ImageFrameData newData = imgData.noHistoryDeepCopy();
+		// copies the image frame data, sharing its image (a resize makes a new one, and a retime keeps it)
+		ImageFrameData newData = imgData.noHistoryCopy();
 		
 		
 		if(isEmpty()) {} // if no metadata record, returns passed image data copy
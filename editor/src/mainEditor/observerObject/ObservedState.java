@@ -11,5 +11,5 @@ package mainEditor.observerObject;
  */
 
 public enum ObservedState {
-	OPEN, CLOSE, WRITE, SAVE, CHANGED_ADD, CHANGED_UNDO;
+	OPEN, CLOSE, WRITE, SAVE, CHANGED_ADD, CHANGED_UNDO, OPEN_PROGRESS, SAVE_PROGRESS, CANCEL;
 }
\ No newline at end of file
@@ -23,6 +23,8 @@ public class ObserverNotice {
 	private Window win;					// the window where the change originated from
 	private boolean inverseChange;		// indicates that the frames of indices given are to
 										// not be changed while everything else is changed; default is false
+	private int progress;				// the number of frames done so far, for progress notices
+	private int total;					// the number of frames to do, for progress notices
 	
 	static final int [] DEFAULT_INDICES = {};	// default frame indices to change
 	
@@ -92,6 +94,20 @@ public class ObserverNotice {
 		this.win = win;
 	}
 	
+    /**
+     * Creates an Observer Notice which reports how far an open or save in the background has got.
+     * No frame indices provided. No window origin. No inverse change.
+     * @param os Observed state change (usually {@link ObservedState#OPEN_PROGRESS} or
+     * 		{@link ObservedState#SAVE_PROGRESS}).
+     * @param progress The number of frames done so far.
+     * @param total The number of frames to do.
+     */
+	public ObserverNotice(ObservedState os, int progress, int total) {
+		this(os, DEFAULT_INDICES, null, false);
+		this.progress = progress;
+		this.total = total;
+	}
+	
 	/**
 	 * Returns observed state change.
 	 * @return Observed state change.
@@ -133,7 +149,21 @@ public class ObserverNotice {
 	public boolean inverseChange() {
 		return this.inverseChange;
 	}
+	
+	/**
+	 * Returns the number of frames done so far, for progress notices.
+	 * @return Frames done.
+	 */
+	public int getProgress() {
+		return this.progress;
+	}
+	
+	/**
+	 * Returns the number of frames to do, for progress notices.
+	 * @return Frames to do; 0 for other notices.
+	 */
+	public int getTotal() {
+		return this.total;
+	}
 
 }
-
-
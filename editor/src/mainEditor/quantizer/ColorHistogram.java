@@ -0,0 +1,228 @@
+package mainEditor.quantizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A histogram of the opaque colors of an image. Colors are counted in bins made of the top bits
+ * of each channel, and each bin also keeps the sum of the colors counted in it, so that the bin
+ * can stand for the average of its colors rather than the center of the bin.
+ * <p>
+ * Large images are counted in horizontal stripes on the common fork/join pool, each stripe into
+ * its own counts, which are then added up. A histogram reuses its arrays when it is counted again.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class ColorHistogram {
+	public static final int ALPHA_THRESHOLD = 128;		// pixels less opaque than this are not counted
+
+	private static final int PARALLEL_THRESHOLD = 1 << 17;	// images with fewer pixels are counted on one thread
+	private static final int MIN_STRIPE = 1 << 16;			// the least number of pixels in a stripe
+	private static final int MAX_STRIPE = 1 << 22;			// the most pixels in a stripe, so stripe sums fit in an int
+
+	private final int bits;				// bits per channel of a bin
+	private final int[] counts;			// the number of pixels in each bin
+	private final long[] sums;			// the red, green and blue sums of the pixels in each bin
+	private int[] usedBins = new int[0];	// the bins with pixels in them, in increasing order
+	private int numUsed;				// the number of bins with pixels in them
+	private Stripe[] stripes = new Stripe[0];	// the partial counts of each stripe, kept for reuse
+
+	/**
+	 * The counts of one stripe of an image.
+	 */
+	private static class Stripe {
+		final int[] counts;
+		final int[] sums;
+
+		Stripe(int bins) {
+			this.counts = new int[bins];
+			this.sums = new int[3 * bins];
+		}
+	}
+
+	/**
+	 * Constructs an empty histogram.
+	 * @param bits The number of bits per channel colors are counted at (1 to 8).
+	 */
+	public ColorHistogram(int bits) {
+		if (bits < 1 || bits > 8) {
+			throw new IllegalArgumentException("A histogram counts 1 to 8 bits per channel, not " + bits + ".");
+		}
+		this.bits = bits;
+		this.counts = new int[1 << (3 * bits)];
+		this.sums = new long[3 * this.counts.length];
+	}
+
+	//================================================================================
+	// Region: Counting
+	//================================================================================
+	/**
+	 * Counts the opaque colors of an image, replacing anything counted before.
+	 * @param argb The ARGB value of every pixel.
+	 * @param numPixels The number of pixels.
+	 */
+	public void count(final int[] argb, int numPixels) {
+		int numStripes = 1;
+		if (numPixels >= PARALLEL_THRESHOLD) {
+			int processors = Runtime.getRuntime().availableProcessors();
+			numStripes = Math.max(1, Math.min(processors, numPixels / MIN_STRIPE));
+		}
+		numStripes = Math.max(numStripes, (numPixels + MAX_STRIPE - 1) / MAX_STRIPE);
+		if (this.stripes.length < numStripes) {
+			Stripe[] grown = Arrays.copyOf(this.stripes, numStripes);
+			for (int i = this.stripes.length; i < numStripes; i++) {
+				grown[i] = new Stripe(this.counts.length);
+			}
+			this.stripes = grown;
+		}
+
+		if (numStripes == 1 || Runtime.getRuntime().availableProcessors() == 1) {
+			for (int i = 0; i < numStripes; i++) {
+				countStripe(argb, (int) ((long) i * numPixels / numStripes),
+							(int) ((long) (i + 1) * numPixels / numStripes), this.stripes[i]);
+			}
+		}
+		else {
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(numStripes);
+			for (int i = 0; i < numStripes; i++) {
+				final int from = (int) ((long) i * numPixels / numStripes);
+				final int to = (int) ((long) (i + 1) * numPixels / numStripes);
+				final Stripe stripe = this.stripes[i];
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() {
+						countStripe(argb, from, to, stripe);
+						return null;
+					}
+				});
+			}
+			for (Future<Void> f : ForkJoinPool.commonPool().invokeAll(tasks)) {
+				try {
+					f.get();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while counting colors.", e);
+				}
+				catch (ExecutionException e) {
+					throw new IllegalStateException("Could not count colors.", e.getCause());
+				}
+			}
+		}
+		merge(numStripes);
+	}
+
+	/**
+	 * Counts the opaque colors of one stripe of an image into the stripe's own counts.
+	 */
+	private void countStripe(int[] argb, int from, int to, Stripe stripe) {
+		int[] counts = stripe.counts;
+		int[] sums = stripe.sums;
+		Arrays.fill(counts, 0);
+		Arrays.fill(sums, 0);
+
+		int shift = 8 - this.bits;
+		for (int p = from; p < to; p++) {
+			int c = argb[p];
+			if ((c >>> 24) < ALPHA_THRESHOLD) {
+				continue;
+			}
+			int r = (c >> 16) & 0xFF, g = (c >> 8) & 0xFF, b = c & 0xFF;
+			int bin = ((r >> shift) << (2 * this.bits)) | ((g >> shift) << this.bits) | (b >> shift);
+			counts[bin]++;
+			sums[3 * bin] += r;
+			sums[3 * bin + 1] += g;
+			sums[3 * bin + 2] += b;
+		}
+	}
+
+	/**
+	 * Adds up the counts of the stripes, and lists the bins that have pixels in them.
+	 */
+	private void merge(int numStripes) {
+		Arrays.fill(this.counts, 0);
+		Arrays.fill(this.sums, 0);
+		for (int s = 0; s < numStripes; s++) {
+			int[] counts = this.stripes[s].counts;
+			int[] sums = this.stripes[s].sums;
+			for (int bin = 0; bin < counts.length; bin++) {
+				if (counts[bin] != 0) {
+					this.counts[bin] += counts[bin];
+					this.sums[3 * bin] += sums[3 * bin];
+					this.sums[3 * bin + 1] += sums[3 * bin + 1];
+					this.sums[3 * bin + 2] += sums[3 * bin + 2];
+				}
+			}
+		}
+
+		int used = 0;
+		for (int bin = 0; bin < this.counts.length; bin++) {
+			if (this.counts[bin] != 0) {
+				if (used == this.usedBins.length) {
+					this.usedBins = Arrays.copyOf(this.usedBins, Math.max(256, 2 * used));
+				}
+				this.usedBins[used++] = bin;
+			}
+		}
+		this.numUsed = used;
+	}
+
+	//================================================================================
+	// Region: Getters
+	//================================================================================
+	/**
+	 * Returns how many bits of each channel colors are counted at.
+	 * @return The number of bits per channel of a bin.
+	 */
+	public int getBits() {
+		return this.bits;
+	}
+
+	/**
+	 * Returns the number of bins that have pixels in them.
+	 * @return The number of bins in use.
+	 */
+	public int getNumberOfColors() {
+		return this.numUsed;
+	}
+
+	/**
+	 * Returns one of the bins that have pixels in them.
+	 * @param i Which of the bins in use to return, from 0 to {@link #getNumberOfColors()} - 1.
+	 * @return The bin.
+	 */
+	public int getUsedBin(int i) {
+		return this.usedBins[i];
+	}
+
+	/**
+	 * Returns the number of pixels counted in a bin.
+	 * @param bin The bin.
+	 * @return The number of pixels in the bin.
+	 */
+	public int getCount(int bin) {
+		return this.counts[bin];
+	}
+
+	/**
+	 * Returns the average color of the pixels counted in a bin.
+	 * @param bin The bin, which must have pixels in it.
+	 * @return The average RGB color of the bin.
+	 */
+	public int getColor(int bin) {
+		long n = this.counts[bin];
+		int r = (int) ((this.sums[3 * bin] + n / 2) / n);
+		int g = (int) ((this.sums[3 * bin + 1] + n / 2) / n);
+		int b = (int) ((this.sums[3 * bin + 2] + n / 2) / n);
+		return (r << 16) | (g << 8) | b;
+	}
+}
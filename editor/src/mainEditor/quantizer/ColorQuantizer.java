@@ -0,0 +1,23 @@
+package mainEditor.quantizer;
+
+/**
+ * A color quantizer, which picks a small palette of colors to stand for all the colors of an image.
+ * Quantizers work from a color histogram of the image rather than from its pixels, and keep no
+ * state between calls, so one quantizer can be shared by any number of threads.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public interface ColorQuantizer {
+
+	/**
+	 * Builds a palette for the colors counted in a histogram.
+	 * @param histogram The colors to build a palette for.
+	 * @param maxColors The maximum number of colors in the palette.
+	 * @return The palette, as RGB colors (with no alpha); it is empty if the histogram is.
+	 */
+	int[] buildPalette(ColorHistogram histogram, int maxColors);
+}
@@ -0,0 +1,19 @@
+package mainEditor.quantizer;
+
+/**
+ * The enumeration of ways pixels can be dithered when they are mapped onto a quantized palette.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public enum DitherMode {
+	/** Maps each pixel to its closest palette color. */
+	NONE,
+	/** Nudges each pixel by an 8x8 Bayer matrix before mapping it, which is fast but leaves a fine pattern. */
+	ORDERED,
+	/** Spreads the error of each pixel onto the pixels after it (Floyd-Steinberg), which looks smoothest. */
+	ERROR_DIFFUSION;
+}
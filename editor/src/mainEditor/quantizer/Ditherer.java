@@ -0,0 +1,222 @@
+package mainEditor.quantizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Maps the pixels of an image onto a quantized palette with dithering, so that smooth gradients
+ * come out as a mix of nearby palette colors instead of bands of one color.
+ * <p>
+ * Images are dithered in horizontal stripes of a fixed number of rows, which are run on the common
+ * fork/join pool for large images. Ordered dithering treats every pixel on its own, so stripes are
+ * no different from the whole image. Error diffusion runs each stripe on its own, from left to right
+ * and right to left on alternate rows, and no error is carried from one stripe into the next; since
+ * the stripes don't depend on the number of threads, neither does the dithered image.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class Ditherer {
+	private static final int ALPHA_THRESHOLD = ColorHistogram.ALPHA_THRESHOLD;	// pixels less opaque than this are transparent
+	private static final int PARALLEL_THRESHOLD = 1 << 17;	// images with fewer pixels are dithered on one thread
+	private static final int STRIPE_ROWS = 64;				// the number of rows in a stripe
+
+	// the 8x8 Bayer matrix, holding each threshold from 0 to 63 once
+	private static final int[] BAYER = {
+		 0, 32,  8, 40,  2, 34, 10, 42,
+		48, 16, 56, 24, 50, 18, 58, 26,
+		12, 44,  4, 36, 14, 46,  6, 38,
+		60, 28, 52, 20, 62, 30, 54, 22,
+		 3, 35, 11, 43,  1, 33,  9, 41,
+		51, 19, 59, 27, 49, 17, 57, 25,
+		15, 47,  7, 39, 13, 45,  5, 37,
+		63, 31, 55, 23, 61, 29, 53, 21
+	};
+
+	private final DitherMode mode;		// how pixels are dithered
+
+	/**
+	 * Constructs a ditherer.
+	 * @param mode How pixels are dithered.
+	 */
+	public Ditherer(DitherMode mode) {
+		if (mode == null) {
+			throw new IllegalArgumentException("The dither mode cannot be null.");
+		}
+		this.mode = mode;
+	}
+
+	//================================================================================
+	// Region: Dithering
+	//================================================================================
+	/**
+	 * Maps every pixel of an image onto a palette.
+	 * @param argb The ARGB value of every pixel of the image, row by row.
+	 * @param width The width of the image.
+	 * @param height The height of the image.
+	 * @param map The inverse color map of the palette, whose palette has been set.
+	 * @param palette The RGB colors of the palette, as given to the inverse color map.
+	 * @param transparentIndex The palette index of transparent pixels.
+	 * @param indices Where to put the palette index of every pixel.
+	 */
+	public void dither(final int[] argb, final int width, int height, final InverseColorMap map, final int[] palette,
+						final byte transparentIndex, final byte[] indices) {
+		int numStripes = (height + STRIPE_ROWS - 1) / STRIPE_ROWS;
+		final int spread = spread(map);
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(numStripes);
+		for (int i = 0; i < numStripes; i++) {
+			final int from = i * STRIPE_ROWS;
+			final int to = Math.min(height, from + STRIPE_ROWS);
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					if (mode == DitherMode.ERROR_DIFFUSION) {
+						diffuseStripe(argb, width, from, to, map, palette, transparentIndex, indices);
+					}
+					else {
+						orderStripe(argb, width, from, to, map, spread, transparentIndex, indices);
+					}
+					return null;
+				}
+			});
+		}
+
+		if (numStripes == 1 || (long) width * height < PARALLEL_THRESHOLD
+				|| Runtime.getRuntime().availableProcessors() == 1) {
+			for (Callable<Void> task : tasks) {
+				try {
+					task.call();
+				}
+				catch (Exception e) { // the stripes throw nothing checked
+					throw new IllegalStateException("Could not dither image.", e);
+				}
+			}
+			return;
+		}
+
+		for (Future<Void> f : ForkJoinPool.commonPool().invokeAll(tasks)) {
+			try {
+				f.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while dithering.", e);
+			}
+			catch (ExecutionException e) {
+				throw new IllegalStateException("Could not dither image.", e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Dithers the rows of one stripe with the Bayer matrix: each channel of each pixel is nudged
+	 * up or down by up to half the spread before it is looked up.
+	 */
+	private static void orderStripe(int[] argb, int width, int from, int to, InverseColorMap map, int spread,
+									byte transparentIndex, byte[] indices) {
+		for (int y = from; y < to; y++) {
+			int row = y * width;
+			int matrixRow = (y & 7) << 3;
+			for (int x = 0; x < width; x++) {
+				int c = argb[row + x];
+				if ((c >>> 24) < ALPHA_THRESHOLD) {
+					indices[row + x] = transparentIndex;
+					continue;
+				}
+				int d = ((2 * BAYER[matrixRow | (x & 7)] - 63) * spread) >> 7;
+				int r = clamp(((c >> 16) & 0xFF) + d), g = clamp(((c >> 8) & 0xFF) + d), b = clamp((c & 0xFF) + d);
+				indices[row + x] = (byte) map.lookup((r << 16) | (g << 8) | b);
+			}
+		}
+	}
+
+	/**
+	 * Dithers the rows of one stripe by Floyd-Steinberg error diffusion, in a serpentine order.
+	 * Errors are kept in sixteenths, with a spare column on each side so no edge needs checking.
+	 * Transparent pixels take no error and pass none on.
+	 */
+	private static void diffuseStripe(int[] argb, int width, int from, int to, InverseColorMap map, int[] palette,
+										byte transparentIndex, byte[] indices) {
+		int[] current = new int[3 * (width + 2)];	// the error carried into each pixel of this row
+		int[] next = new int[3 * (width + 2)];		// the error carried into each pixel of the next row
+
+		for (int y = from; y < to; y++) {
+			int row = y * width;
+			boolean forward = ((y - from) & 1) == 0;
+			int dir = forward ? 1 : -1;
+			int x = forward ? 0 : width - 1;
+			for (int n = 0; n < width; n++, x += dir) {
+				int c = argb[row + x];
+				if ((c >>> 24) < ALPHA_THRESHOLD) {
+					indices[row + x] = transparentIndex;
+					continue;
+				}
+				int e = 3 * (x + 1);
+				int r = clamp(((c >> 16) & 0xFF) + ((current[e] + 8) >> 4));
+				int g = clamp(((c >> 8) & 0xFF) + ((current[e + 1] + 8) >> 4));
+				int b = clamp((c & 0xFF) + ((current[e + 2] + 8) >> 4));
+
+				int index = map.lookup((r << 16) | (g << 8) | b);
+				indices[row + x] = (byte) index;
+				int p = palette[index];
+				int er = r - ((p >> 16) & 0xFF), eg = g - ((p >> 8) & 0xFF), eb = b - (p & 0xFF);
+
+				// 7/16 to the next pixel, and 3/16, 5/16 and 1/16 to the pixels below
+				int ahead = e + 3 * dir, behind = e - 3 * dir;
+				current[ahead] += 7 * er;
+				current[ahead + 1] += 7 * eg;
+				current[ahead + 2] += 7 * eb;
+				next[behind] += 3 * er;
+				next[behind + 1] += 3 * eg;
+				next[behind + 2] += 3 * eb;
+				next[e] += 5 * er;
+				next[e + 1] += 5 * eg;
+				next[e + 2] += 5 * eb;
+				next[ahead] += er;
+				next[ahead + 1] += eg;
+				next[ahead + 2] += eb;
+			}
+
+			int[] swap = current;
+			current = next;
+			next = swap;
+			Arrays.fill(next, 0);
+		}
+	}
+
+	/**
+	 * Returns how far ordered dithering may nudge a channel: a bit over a third of the distance
+	 * between neighbouring colors of a palette spread evenly over the color cube (more shows up as
+	 * noise on palettes that fit the image well), but no finer than a cell of the map.
+	 */
+	private static int spread(InverseColorMap map) {
+		int cell = 1 << (8 - map.getBits());
+		int numColors = Math.max(2, map.getNumberOfColors());
+		int even = (int) Math.round(96 / Math.cbrt(numColors));
+		return Math.max(cell, Math.min(64, even));
+	}
+
+	private static int clamp(int v) {
+		return v < 0 ? 0 : v > 255 ? 255 : v;
+	}
+
+	//================================================================================
+	// Region: Getters
+	//================================================================================
+	/**
+	 * Returns how pixels are dithered.
+	 * @return The dither mode.
+	 */
+	public DitherMode getMode() {
+		return this.mode;
+	}
+}
@@ -0,0 +1,113 @@
+package mainEditor.quantizer;
+
+import java.util.Arrays;
+
+/**
+ * An inverse color map, which maps any RGB color to the closest entry of a palette.
+ * Colors are looked up by the top bits of each channel in a table that is filled in lazily:
+ * the first time a cell of the table is looked up, the palette entry closest to the center of
+ * the cell is found and kept, so each cell is only searched for once per palette.
+ * Once its palette is set, an inverse color map may be looked up from several threads at once:
+ * a cell that two threads fill in at the same time gets the same entry from both.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class InverseColorMap {
+	private static final short UNKNOWN = -1;	// a cell whose closest entry has not been found yet
+
+	private final int bits;				// bits per channel of a cell
+	private final short[] table;		// the closest palette entry of each cell, or UNKNOWN
+	private int[] palette = new int[0];	// the RGB colors of the palette
+	private int from, to;				// the range of palette entries colors are mapped to
+
+	/**
+	 * Constructs an inverse color map with no palette.
+	 * @param bits The number of bits per channel of a cell of the table (1 to 8).
+	 */
+	public InverseColorMap(int bits) {
+		if (bits < 1 || bits > 8) {
+			throw new IllegalArgumentException("An inverse color map uses 1 to 8 bits per channel, not " + bits + ".");
+		}
+		this.bits = bits;
+		this.table = new short[1 << (3 * bits)];
+	}
+
+	/**
+	 * Sets the palette colors are mapped to, forgetting every lookup done so far.
+	 * @param palette The RGB colors of the palette (any alpha is ignored). The array is not copied.
+	 * @param from The first palette entry colors can be mapped to.
+	 * @param to One past the last palette entry colors can be mapped to.
+	 */
+	public void setPalette(int[] palette, int from, int to) {
+		if (from < 0 || to > palette.length || from >= to || to > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("Invalid palette range " + from + " to " + to + ".");
+		}
+		this.palette = palette;
+		this.from = from;
+		this.to = to;
+		Arrays.fill(this.table, UNKNOWN);
+	}
+
+	/**
+	 * Returns the palette entry closest to a color.
+	 * @param rgb The color to look up (any alpha is ignored).
+	 * @return The index of the closest palette entry.
+	 */
+	public int lookup(int rgb) {
+		int shift = 8 - this.bits;
+		int r = (rgb >> 16) & 0xFF, g = (rgb >> 8) & 0xFF, b = rgb & 0xFF;
+		int cell = ((r >> shift) << (2 * this.bits)) | ((g >> shift) << this.bits) | (b >> shift);
+
+		int index = this.table[cell];
+		if (index == UNKNOWN) {
+			int half = (1 << shift) >> 1;
+			index = closest(((r >> shift) << shift) + half, ((g >> shift) << shift) + half, ((b >> shift) << shift) + half);
+			this.table[cell] = (short) index;
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the palette entry closest to a color, by searching the whole palette.
+	 * @param r The red of the color.
+	 * @param g The green of the color.
+	 * @param b The blue of the color.
+	 * @return The index of the closest palette entry.
+	 */
+	public int closest(int r, int g, int b) {
+		int best = this.from, bestDistance = Integer.MAX_VALUE;
+		for (int i = this.from; i < this.to; i++) {
+			int e = this.palette[i];
+			int dr = ((e >> 16) & 0xFF) - r, dg = ((e >> 8) & 0xFF) - g, db = (e & 0xFF) - b;
+			int distance = dr * dr + dg * dg + db * db;
+			if (distance < bestDistance) {
+				bestDistance = distance;
+				best = i;
+				if (distance == 0) {
+					break;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the number of palette entries colors are mapped to.
+	 * @return The size of the range of palette entries.
+	 */
+	public int getNumberOfColors() {
+		return this.to - this.from;
+	}
+
+	/**
+	 * Returns how many bits of each channel a cell of the table is made of.
+	 * @return The number of bits per channel of a cell.
+	 */
+	public int getBits() {
+		return this.bits;
+	}
+}
@@ -0,0 +1,186 @@
+package mainEditor.quantizer;
+
+import java.util.Arrays;
+
+/**
+ * A color quantizer which starts from one box holding every color, and keeps splitting boxes in two
+ * until there are as many boxes as colors wanted. The box split next is the one whose pixels are
+ * furthest from its average (by squared distance), and it is cut across its longest side where the
+ * two halves are closest to their own averages, rather than at the plain median, which keeps small
+ * clusters of distinct colors from being swallowed by large smooth areas. Each box is then a
+ * palette color, the average of the pixels in it.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class MedianCutQuantizer implements ColorQuantizer {
+
+	/**
+	 * A box of colors, made of a range of the colors being quantized.
+	 */
+	private static class Box {
+		final int from, to;			// the range of colors in the box
+		long count;					// the number of pixels in the box
+		double error;				// the squared distance of the pixels in the box from its average
+		int longestChannel;			// the channel the box is longest along (0 red, 1 green, 2 blue)
+		int longestSide;			// the length of the box along that channel
+
+		Box(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+	}
+
+	@Override
+	public int[] buildPalette(ColorHistogram histogram, int maxColors) {
+		int numColors = histogram.getNumberOfColors();
+		int[] colors = new int[numColors];
+		int[] counts = new int[numColors];
+		for (int i = 0; i < numColors; i++) {
+			int bin = histogram.getUsedBin(i);
+			colors[i] = histogram.getColor(bin);
+			counts[i] = histogram.getCount(bin);
+		}
+		if (numColors == 0) {
+			return new int[0];
+		}
+
+		Box[] boxes = new Box[Math.min(maxColors, numColors)];
+		boxes[0] = shrink(new Box(0, numColors), colors, counts);
+		int numBoxes = 1;
+		long[] keys = new long[numColors];
+		int[] scratch = new int[2 * numColors];
+
+		while (numBoxes < boxes.length) {
+			// picks the box whose pixels are furthest from its average
+			int best = -1;
+			double bestScore = 0;
+			for (int i = 0; i < numBoxes; i++) {
+				Box box = boxes[i];
+				double score = box.error;
+				if (box.to - box.from > 1 && score > bestScore) {
+					bestScore = score;
+					best = i;
+				}
+			}
+			if (best < 0) { // every box is down to one color
+				break;
+			}
+
+			Box box = boxes[best];
+			int split = cut(box, colors, counts, keys, scratch);
+			boxes[best] = shrink(new Box(box.from, split), colors, counts);
+			boxes[numBoxes++] = shrink(new Box(split, box.to), colors, counts);
+		}
+
+		int[] palette = new int[numBoxes];
+		for (int i = 0; i < numBoxes; i++) {
+			palette[i] = average(boxes[i], colors, counts);
+		}
+		return palette;
+	}
+
+	/**
+	 * Measures a box: its number of pixels, its squared error and its longest side.
+	 */
+	private static Box shrink(Box box, int[] colors, int[] counts) {
+		int minR = 255, minG = 255, minB = 255, maxR = 0, maxG = 0, maxB = 0;
+		long count = 0;
+		double sr = 0, sg = 0, sb = 0, sq = 0;
+		for (int i = box.from; i < box.to; i++) {
+			int c = colors[i];
+			int r = (c >> 16) & 0xFF, g = (c >> 8) & 0xFF, b = c & 0xFF;
+			minR = Math.min(minR, r);
+			maxR = Math.max(maxR, r);
+			minG = Math.min(minG, g);
+			maxG = Math.max(maxG, g);
+			minB = Math.min(minB, b);
+			maxB = Math.max(maxB, b);
+			count += counts[i];
+			sr += (double) r * counts[i];
+			sg += (double) g * counts[i];
+			sb += (double) b * counts[i];
+			sq += (double) (r * r + g * g + b * b) * counts[i];
+		}
+		box.count = count;
+		box.error = sq - (sr * sr + sg * sg + sb * sb) / count;
+		box.longestChannel = 0;
+		box.longestSide = maxR - minR;
+		if (maxG - minG > box.longestSide) {
+			box.longestChannel = 1;
+			box.longestSide = maxG - minG;
+		}
+		if (maxB - minB > box.longestSide) {
+			box.longestChannel = 2;
+			box.longestSide = maxB - minB;
+		}
+		return box;
+	}
+
+	/**
+	 * Sorts the colors of a box along its longest side, and finds where to cut it.
+	 * @return The first color of the upper half, which leaves at least one color in each half.
+	 */
+	private static int cut(Box box, int[] colors, int[] counts, long[] keys, int[] scratch) {
+		// sorts by the channel value, with the position of the color in the low bits
+		int shift = 16 - 8 * box.longestChannel;
+		for (int i = box.from; i < box.to; i++) {
+			keys[i] = ((long) ((colors[i] >> shift) & 0xFF) << 32) | i;
+		}
+		Arrays.sort(keys, box.from, box.to);
+		int n = box.to - box.from;
+		for (int i = 0; i < n; i++) {
+			int j = (int) keys[box.from + i];
+			scratch[2 * i] = colors[j];
+			scratch[2 * i + 1] = counts[j];
+		}
+		for (int i = 0; i < n; i++) {
+			colors[box.from + i] = scratch[2 * i];
+			counts[box.from + i] = scratch[2 * i + 1];
+		}
+
+		// finds the cut that leaves the least squared error along the side
+		double total = 0;
+		for (int i = box.from; i < box.to; i++) {
+			total += (double) ((colors[i] >> shift) & 0xFF) * counts[i];
+		}
+		double sum = 0;
+		long count = 0;
+		int split = box.from + 1;
+		double bestError = Double.MAX_VALUE;
+		for (int i = box.from; i < box.to - 1; i++) {
+			double v = (colors[i] >> shift) & 0xFF;
+			sum += v * counts[i];
+			count += counts[i];
+			double error = -sum * sum / count - (total - sum) * (total - sum) / (box.count - count);
+			if (error < bestError) {
+				bestError = error;
+				split = i + 1;
+			}
+		}
+		return split;
+	}
+
+	/**
+	 * Returns the average color of the pixels in a box.
+	 */
+	private static int average(Box box, int[] colors, int[] counts) {
+		long r = 0, g = 0, b = 0;
+		for (int i = box.from; i < box.to; i++) {
+			int c = colors[i];
+			r += (long) ((c >> 16) & 0xFF) * counts[i];
+			g += (long) ((c >> 8) & 0xFF) * counts[i];
+			b += (long) (c & 0xFF) * counts[i];
+		}
+		long n = box.count;
+		return (int) ((r + n / 2) / n) << 16 | (int) ((g + n / 2) / n) << 8 | (int) ((b + n / 2) / n);
+	}
+
+	@Override
+	public String toString() {
+		return "Median cut";
+	}
+}
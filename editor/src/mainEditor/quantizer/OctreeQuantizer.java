@@ -0,0 +1,164 @@
+package mainEditor.quantizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A color quantizer which sorts colors into an octree, where each level splits the color cube in
+ * eight by the next bit of each channel. While there are more leaves than colors wanted, the
+ * deepest node whose children are leaves and which holds the fewest pixels is merged into a
+ * single leaf. Each leaf left over is a palette color, the average of the pixels under it.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class OctreeQuantizer implements ColorQuantizer {
+	private static final int MAX_DEPTH = 6;		// leaves are never deeper than this
+
+	/**
+	 * A node of the octree. A node is a leaf until a color is added below it.
+	 */
+	private static class Node {
+		final Node[] children = new Node[8];	// the children of the node (null where there are none)
+		long count;								// the number of pixels under the node
+		long r, g, b;							// the sums of the pixels under the node
+		boolean leaf = true;					// whether the node is a leaf
+		boolean merged;							// whether the node has been merged into a leaf
+	}
+
+	/**
+	 * The work of building one palette.
+	 */
+	private static class Tree {
+		final Node root = new Node();
+		final ArrayList<ArrayList<Node>> reducible = new ArrayList<ArrayList<Node>>(MAX_DEPTH);	// the inner nodes at each level
+		int leaves;
+
+		Tree() {
+			for (int i = 0; i < MAX_DEPTH; i++) {
+				this.reducible.add(new ArrayList<Node>());
+			}
+		}
+
+		/**
+		 * Adds a color, counted some number of times, to the tree.
+		 */
+		void add(int rgb, long count) {
+			int r = (rgb >> 16) & 0xFF, g = (rgb >> 8) & 0xFF, b = rgb & 0xFF;
+			Node node = this.root;
+			for (int level = 0; level < MAX_DEPTH && !node.merged; level++) {
+				if (node.leaf) { // the node gets children, so it is no longer a leaf
+					node.leaf = false;
+					this.reducible.get(level).add(node);
+					if (level > 0) {
+						this.leaves--;
+					}
+				}
+				int shift = 7 - level;
+				int child = (((r >> shift) & 1) << 2) | (((g >> shift) & 1) << 1) | ((b >> shift) & 1);
+				if (node.children[child] == null) {
+					node.children[child] = new Node();
+					this.leaves++;
+				}
+				node = node.children[child];
+			}
+			node.count += count;
+			node.r += r * count;
+			node.g += g * count;
+			node.b += b * count;
+		}
+
+		/**
+		 * Merges the deepest, least used inner node into a leaf.
+		 */
+		void reduce() {
+			int level = MAX_DEPTH - 1;
+			while (level > 0 && this.reducible.get(level).isEmpty()) {
+				level--;
+			}
+			ArrayList<Node> nodes = this.reducible.get(level);
+
+			// only nodes whose children are all leaves can be merged
+			int best = -1;
+			long bestCount = Long.MAX_VALUE;
+			for (int i = 0; i < nodes.size(); i++) {
+				Node node = nodes.get(i);
+				long count = 0;
+				boolean mergeable = true;
+				for (Node child : node.children) {
+					if (child != null) {
+						mergeable &= child.leaf;
+						count += child.count;
+					}
+				}
+				if (mergeable && count < bestCount) {
+					bestCount = count;
+					best = i;
+				}
+			}
+			Node node = nodes.get(best);
+			nodes.set(best, nodes.get(nodes.size() - 1));
+			nodes.remove(nodes.size() - 1);
+
+			for (int i = 0; i < 8; i++) {
+				Node child = node.children[i];
+				if (child != null) {
+					node.count += child.count;
+					node.r += child.r;
+					node.g += child.g;
+					node.b += child.b;
+					node.children[i] = null;
+					this.leaves--;
+				}
+			}
+			node.leaf = true;
+			node.merged = true;
+			this.leaves++;
+		}
+
+		/**
+		 * Collects the average color of every leaf with pixels under it.
+		 */
+		int collect(Node node, int[] palette, int n) {
+			if (node.leaf) {
+				if (node.count > 0) {
+					palette[n++] = (int) ((node.r + node.count / 2) / node.count) << 16
+									| (int) ((node.g + node.count / 2) / node.count) << 8
+									| (int) ((node.b + node.count / 2) / node.count);
+				}
+				return n;
+			}
+			for (Node child : node.children) {
+				if (child != null) {
+					n = collect(child, palette, n);
+				}
+			}
+			return n;
+		}
+	}
+
+	@Override
+	public int[] buildPalette(ColorHistogram histogram, int maxColors) {
+		Tree tree = new Tree();
+		int numColors = histogram.getNumberOfColors();
+		for (int i = 0; i < numColors; i++) {
+			int bin = histogram.getUsedBin(i);
+			tree.add(histogram.getColor(bin), histogram.getCount(bin));
+		}
+		while (tree.leaves > maxColors) {
+			tree.reduce();
+		}
+
+		int[] palette = new int[Math.max(0, tree.leaves)];
+		int n = tree.collect(tree.root, palette, 0);
+		return Arrays.copyOf(palette, n);
+	}
+
+	@Override
+	public String toString() {
+		return "Octree";
+	}
+}
@@ -0,0 +1,45 @@
+package mainEditor.quantizer;
+
+/**
+ * The enumeration of speed/quality trade-offs for color quantization.
+ * A mode sets how finely colors are counted when a palette is built, and how finely the
+ * inverse color map that maps pixels onto the palette is divided.
+ * <p>
+ * Copyright 2017-2018 Joey Sun.<p>
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public enum QuantizerMode {
+	/** Counts colors at 4 bits per channel, and maps pixels at 5 bits per channel. */
+	FAST(4, 5),
+	/** Counts colors at 5 bits per channel, and maps pixels at 6 bits per channel. */
+	BALANCED(5, 6),
+	/** Counts colors at 6 bits per channel, and maps pixels at 7 bits per channel. */
+	QUALITY(6, 7);
+
+	private final int histogramBits;	// bits per channel colors are counted at
+	private final int lookupBits;		// bits per channel of the inverse color map
+
+	private QuantizerMode(int histogramBits, int lookupBits) {
+		this.histogramBits = histogramBits;
+		this.lookupBits = lookupBits;
+	}
+
+	/**
+	 * Returns how many bits of each channel colors are counted at when a palette is built.
+	 * @return The number of bits per channel of the color histogram.
+	 */
+	public int getHistogramBits() {
+		return this.histogramBits;
+	}
+
+	/**
+	 * Returns how many bits of each channel the inverse color map is divided at.
+	 * @return The number of bits per channel of the inverse color map.
+	 */
+	public int getLookupBits() {
+		return this.lookupBits;
+	}
+}
@@ -0,0 +1,191 @@
+package references;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageOutputStream;
+
+import mainEditor.GIFInputOutput.GIFDecoder;
+import mainEditor.GIFInputOutput.GIFSequenceWriter;
+import mainEditor.GIFInputOutput.GIFWriterBackend;
+
+/**
+ * Rough benchmark of the GIF codecs, run over a directory of GIF animations.
+ * Compares decoding every frame through the image I/O GIF reader with decoding every frame
+ * through the GIF decoder, and checks that both give the same pixels. Then compares encoding
+ * every frame through the image I/O GIF writer with encoding every frame through the GIF LZW encoder.
+ * <p>
+ * Usage: <tt>java references.GIFCodecBenchmark [directory] [iterations]</tt>
+ * (defaults to <tt>src/images</tt> and 5 iterations).
+ *
+ * Copyright 2017-2018 Joey Sun.
+ *  This work is licensed under the Creative Commons Attribution 3.0 Unported
+ *  License. To view a copy of this license, visit
+ *  http://creativecommons.org/licenses/by/3.0/ or send a letter to Creative
+ *  Commons, 171 Second Street, Suite 300, San Francisco, California, 94105, USA
+ */
+public class GIFCodecBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		File dir = new File(args.length > 0 ? args[0] : "src/images");
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		File[] files = dir.listFiles();
+		if (files == null) {
+			System.err.println("No such directory: " + dir);
+			return;
+		}
+
+		long totalImageIO = 0, totalDecoder = 0;
+		System.out.printf("%-24s %7s %12s %12s %7s %s%n", "file", "frames", "imageio ms", "decoder ms", "speedup", "same pixels");
+
+		for (File f : files) {
+			if (!f.getName().toLowerCase().endsWith(".gif")) {
+				continue;
+			}
+			byte[] bytes = Files.readAllBytes(f.toPath());
+
+			// warms up both paths once, and checks they decode the same pixels
+			boolean same = samePixels(bytes);
+
+			long imageIO = Long.MAX_VALUE, decoder = Long.MAX_VALUE;
+			int frames = 0;
+			for (int i = 0; i < iterations; i++) {
+				long start = System.nanoTime();
+				frames = decodeImageIO(bytes);
+				imageIO = Math.min(imageIO, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				decodeDecoder(bytes);
+				decoder = Math.min(decoder, System.nanoTime() - start);
+			}
+			totalImageIO += imageIO;
+			totalDecoder += decoder;
+
+			System.out.printf("%-24s %7d %12.2f %12.2f %6.1fx %s%n", f.getName(), frames,
+								imageIO / 1e6, decoder / 1e6, (double)imageIO / decoder, same);
+		}
+
+		System.out.printf("%-24s %7s %12.2f %12.2f %6.1fx%n", "total (best of each)", "",
+							totalImageIO / 1e6, totalDecoder / 1e6, (double)totalImageIO / totalDecoder);
+
+		System.out.println();
+		long totalImageIOWrite = 0, totalNativeWrite = 0;
+		System.out.printf("%-24s %7s %12s %12s %7s %10s %10s%n", "file", "frames", "imageio ms", "native ms", "speedup", "imageio B", "native B");
+
+		for (File f : files) {
+			if (!f.getName().toLowerCase().endsWith(".gif")) {
+				continue;
+			}
+			GIFDecoder decoder = new GIFDecoder(ByteBuffer.wrap(Files.readAllBytes(f.toPath())));
+			BufferedImage[] frames = new BufferedImage[decoder.getNumberOfFrames()];
+			for (int i = 0; i < frames.length; i++) {
+				frames[i] = decoder.readFrame(i);
+			}
+
+			long imageIO = Long.MAX_VALUE, encoder = Long.MAX_VALUE;
+			int imageIOSize = 0, encoderSize = 0;
+			for (int i = 0; i < iterations; i++) {
+				long start = System.nanoTime();
+				imageIOSize = encode(frames, GIFWriterBackend.IMAGE_IO);
+				imageIO = Math.min(imageIO, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				encoderSize = encode(frames, GIFWriterBackend.NATIVE);
+				encoder = Math.min(encoder, System.nanoTime() - start);
+			}
+			totalImageIOWrite += imageIO;
+			totalNativeWrite += encoder;
+
+			System.out.printf("%-24s %7d %12.2f %12.2f %6.1fx %10d %10d%n", f.getName(), frames.length,
+								imageIO / 1e6, encoder / 1e6, (double)imageIO / encoder, imageIOSize, encoderSize);
+		}
+
+		System.out.printf("%-24s %7s %12.2f %12.2f %6.1fx%n", "total (best of each)", "",
+							totalImageIOWrite / 1e6, totalNativeWrite / 1e6, (double)totalImageIOWrite / totalNativeWrite);
+	}
+
+	/**
+	 * Decodes every frame through the image I/O GIF reader.
+	 * @return The number of frames decoded.
+	 */
+	private static int decodeImageIO(byte[] bytes) throws IOException {
+		ImageReader ir = ImageIO.getImageReadersByFormatName("gif").next();
+		ir.setInput(ImageIO.createImageInputStream(new ByteArrayInputStream(bytes)));
+		int n = ir.getNumImages(true);
+		for (int i = 0; i < n; i++) {
+			ir.read(i);
+		}
+		ir.dispose();
+		return n;
+	}
+
+	/**
+	 * Decodes every frame through the GIF decoder.
+	 * @return The number of frames decoded.
+	 */
+	private static int decodeDecoder(byte[] bytes) throws IOException {
+		GIFDecoder decoder = new GIFDecoder(ByteBuffer.wrap(bytes));
+		int n = decoder.getNumberOfFrames();
+		for (int i = 0; i < n; i++) {
+			decoder.readFrame(i);
+		}
+		return n;
+	}
+
+	/**
+	 * Encodes every frame as a looping animation through a GIF sequence writer.
+	 * @return The size of the encoded GIF in bytes.
+	 */
+	private static int encode(BufferedImage[] frames, GIFWriterBackend backend) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageOutputStream ios = ImageIO.createImageOutputStream(out);
+		GIFSequenceWriter writer = new GIFSequenceWriter(ios, BufferedImage.TYPE_INT_ARGB, "none", true, backend);
+		for (BufferedImage frame : frames) {
+			writer.writeToSequence(frame);
+		}
+		writer.close();
+		ios.close();
+		return out.size();
+	}
+
+	/**
+	 * Returns whether both decoders give the same frames, treating all transparent pixels as equal.
+	 */
+	private static boolean samePixels(byte[] bytes) throws IOException {
+		ImageReader ir = ImageIO.getImageReadersByFormatName("gif").next();
+		ir.setInput(ImageIO.createImageInputStream(new ByteArrayInputStream(bytes)));
+		GIFDecoder decoder = new GIFDecoder(ByteBuffer.wrap(bytes));
+
+		int n = ir.getNumImages(true);
+		if (n != decoder.getNumberOfFrames()) {
+			return false;
+		}
+		for (int i = 0; i < n; i++) {
+			BufferedImage a = ir.read(i);
+			BufferedImage b = decoder.readFrame(i);
+			if (a.getWidth() != b.getWidth() || a.getHeight() != b.getHeight()) {
+				return false;
+			}
+			int w = a.getWidth(), h = a.getHeight();
+			int[] pa = a.getRGB(0, 0, w, h, null, 0, w);
+			int[] pb = b.getRGB(0, 0, w, h, null, 0, w);
+			for (int p = 0; p < pa.length; p++) {
+				int ca = (pa[p] >>> 24) < 128 ? 0 : pa[p];
+				int cb = (pb[p] >>> 24) < 128 ? 0 : pb[p];
+				if (ca != cb) {
+					return false;
+				}
+			}
+		}
+		ir.dispose();
+		return true;
+	}
+}